@@ -0,0 +1,265 @@
+/*
+ * A native client for fr.wonder.argparser.CommandServer, it behaves like
+ * CommandClient.main without starting a jvm. The wire format is described in
+ * DaemonProtocol.java.
+ *
+ * Build:  cc -O2 -o argparser-client argparser-client.c
+ * Usage:  ARGPARSER_DAEMON=<port|host:port|socket path> argparser-client [args...]
+ *
+ * The exit status is the one of the command, or 2 if the server cannot be
+ * reached or closes the connection before the command exits.
+ */
+
+#define _POSIX_C_SOURCE 200809L
+
+#include <errno.h>
+#include <netdb.h>
+#include <poll.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/socket.h>
+#include <sys/types.h>
+#include <sys/un.h>
+#include <unistd.h>
+
+#define MAGIC 0x41524744
+#define TAG_STDIN 'I'
+#define TAG_STDOUT 'O'
+#define TAG_STDERR 'E'
+#define TAG_EXIT 'X'
+#define BUFFER_SIZE 8192
+
+extern char **environ;
+
+static void fail(const char *message) {
+	fprintf(stderr, "argparser-client: %s: %s\n", message, strerror(errno));
+	exit(2);
+}
+
+static void fail_protocol(const char *message) {
+	fprintf(stderr, "argparser-client: %s\n", message);
+	exit(2);
+}
+
+/* Opens a connection to "port" or "host:port", or to a unix domain socket path */
+static int connect_server(const char *address) {
+	const char *separator = strrchr(address, ':');
+	const char *port = separator ? separator+1 : address;
+	int numeric = *port != '\0';
+	for(const char *c = port; *c; c++) {
+		if(*c < '0' || *c > '9')
+			numeric = 0;
+	}
+
+	if(!numeric) {
+		struct sockaddr_un sun;
+		memset(&sun, 0, sizeof(sun));
+		sun.sun_family = AF_UNIX;
+		if(strlen(address) >= sizeof(sun.sun_path))
+			fail_protocol("socket path too long");
+		strcpy(sun.sun_path, address);
+		int fd = socket(AF_UNIX, SOCK_STREAM, 0);
+		if(fd < 0 || connect(fd, (struct sockaddr *) &sun, sizeof(sun)) < 0)
+			fail("unable to reach the command server");
+		return fd;
+	}
+
+	char host[256] = "127.0.0.1";
+	if(separator) {
+		size_t length = (size_t) (separator - address);
+		if(length >= sizeof(host))
+			fail_protocol("host name too long");
+		memcpy(host, address, length);
+		host[length] = '\0';
+	}
+	struct addrinfo hints, *addresses;
+	memset(&hints, 0, sizeof(hints));
+	hints.ai_family = AF_UNSPEC;
+	hints.ai_socktype = SOCK_STREAM;
+	if(getaddrinfo(host, port, &hints, &addresses) != 0)
+		fail_protocol("unable to resolve the command server address");
+	int fd = -1;
+	for(struct addrinfo *a = addresses; a && fd < 0; a = a->ai_next) {
+		fd = socket(a->ai_family, a->ai_socktype, a->ai_protocol);
+		if(fd >= 0 && connect(fd, a->ai_addr, a->ai_addrlen) < 0) {
+			close(fd);
+			fd = -1;
+		}
+	}
+	freeaddrinfo(addresses);
+	if(fd < 0)
+		fail("unable to reach the command server");
+	return fd;
+}
+
+/* A growable buffer of bytes waiting to be sent to the server */
+struct output {
+	unsigned char *bytes;
+	size_t length, capacity;
+};
+
+static void put_bytes(struct output *out, const void *bytes, size_t length) {
+	if(out->length + length > out->capacity) {
+		size_t capacity = out->capacity ? out->capacity : BUFFER_SIZE;
+		while(capacity < out->length + length)
+			capacity *= 2;
+		if(!(out->bytes = realloc(out->bytes, capacity)))
+			fail("out of memory");
+		out->capacity = capacity;
+	}
+	memcpy(out->bytes + out->length, bytes, length);
+	out->length += length;
+}
+
+static void put_int(struct output *out, uint32_t i) {
+	unsigned char b[4] = { i >> 24, i >> 16, i >> 8, i };
+	put_bytes(out, b, 4);
+}
+
+static void put_string(struct output *out, const char *s) {
+	size_t length = strlen(s);
+	put_int(out, (uint32_t) length);
+	put_bytes(out, s, length);
+}
+
+static void read_fully(int fd, void *bytes, size_t length) {
+	unsigned char *b = bytes;
+	while(length > 0) {
+		ssize_t r = read(fd, b, length);
+		if(r < 0 && errno == EINTR)
+			continue;
+		if(r <= 0)
+			fail_protocol("the command server closed the connection");
+		b += r;
+		length -= (size_t) r;
+	}
+}
+
+static void write_fully(int fd, const void *bytes, size_t length) {
+	const unsigned char *b = bytes;
+	while(length > 0) {
+		ssize_t w = write(fd, b, length);
+		if(w < 0 && errno == EINTR)
+			continue;
+		if(w < 0)
+			return; /* the standard stream was closed, keep reading frames */
+		b += w;
+		length -= (size_t) w;
+	}
+}
+
+static uint32_t read_int(int fd) {
+	unsigned char b[4];
+	read_fully(fd, b, 4);
+	return (uint32_t) b[0] << 24 | (uint32_t) b[1] << 16 | (uint32_t) b[2] << 8 | b[3];
+}
+
+/* Reads one frame sent by the server, returns 1 once the exit frame was read */
+static int read_frame(int socket_fd, int *status) {
+	unsigned char tag;
+	read_fully(socket_fd, &tag, 1);
+	int32_t length = (int32_t) read_int(socket_fd);
+	if(length < 0)
+		fail_protocol("invalid frame length");
+	if(tag == TAG_EXIT) {
+		*status = (int32_t) read_int(socket_fd);
+		return 1;
+	}
+	if(tag != TAG_STDOUT && tag != TAG_STDERR)
+		fail_protocol("unexpected frame");
+	int target = tag == TAG_STDERR ? STDERR_FILENO : STDOUT_FILENO;
+	unsigned char buffer[BUFFER_SIZE];
+	while(length > 0) {
+		size_t chunk = (size_t) length < sizeof(buffer) ? (size_t) length : sizeof(buffer);
+		read_fully(socket_fd, buffer, chunk);
+		write_fully(target, buffer, chunk);
+		length -= (int32_t) chunk;
+	}
+	return 0;
+}
+
+int main(int argc, char **argv) {
+	const char *address = getenv("ARGPARSER_DAEMON");
+	if(!address) {
+		fprintf(stderr, "argparser-client: no command server address, set the ARGPARSER_DAEMON variable\n");
+		return 2;
+	}
+	int socket_fd = connect_server(address);
+
+	char *cwd = getcwd(NULL, 0);
+	if(!cwd)
+		fail("unable to read the working directory");
+	struct output out = { 0 };
+	put_int(&out, MAGIC);
+	put_int(&out, (uint32_t) (argc - 1));
+	for(int i = 1; i < argc; i++)
+		put_string(&out, argv[i]);
+	put_string(&out, cwd);
+	free(cwd);
+	uint32_t variables = 0;
+	for(char **e = environ; *e; e++) {
+		if(strchr(*e, '='))
+			variables++;
+	}
+	put_int(&out, variables);
+	for(char **e = environ; *e; e++) {
+		char *equals = strchr(*e, '=');
+		if(!equals)
+			continue;
+		put_int(&out, (uint32_t) (equals - *e));
+		put_bytes(&out, *e, (size_t) (equals - *e));
+		put_string(&out, equals + 1);
+	}
+
+	/*
+	 * Standard input is only read once the previous frames were sent, so that a
+	 * command that does not read its input never blocks the client while it
+	 * prints its output.
+	 */
+	size_t sent = 0;
+	int input_open = 1;
+	int status;
+	while(1) {
+		struct pollfd fds[2] = {
+			{ socket_fd, POLLIN | (sent < out.length ? POLLOUT : 0), 0 },
+			{ STDIN_FILENO, POLLIN, 0 },
+		};
+		int watch_input = input_open && sent == out.length;
+		if(poll(fds, watch_input ? 2 : 1, -1) < 0) {
+			if(errno == EINTR)
+				continue;
+			fail("poll");
+		}
+		if(fds[0].revents & (POLLIN | POLLHUP | POLLERR)) {
+			if(read_frame(socket_fd, &status))
+				break;
+		}
+		if(sent < out.length && (fds[0].revents & POLLOUT)) {
+			ssize_t w = send(socket_fd, out.bytes + sent, out.length - sent, MSG_NOSIGNAL | MSG_DONTWAIT);
+			if(w < 0 && errno != EAGAIN && errno != EWOULDBLOCK && errno != EINTR)
+				input_open = 0, sent = out.length; /* the command exited, wait for its status */
+			else if(w > 0)
+				sent += (size_t) w;
+			if(sent == out.length)
+				out.length = sent = 0;
+		}
+		if(watch_input && (fds[1].revents & (POLLIN | POLLHUP | POLLERR))) {
+			unsigned char buffer[BUFFER_SIZE];
+			ssize_t r = read(STDIN_FILENO, buffer, sizeof(buffer));
+			if(r < 0 && errno == EINTR)
+				continue;
+			if(r <= 0)
+				input_open = 0; /* an empty frame marks the end of the input */
+			unsigned char tag = TAG_STDIN;
+			put_bytes(&out, &tag, 1);
+			put_int(&out, r > 0 ? (uint32_t) r : 0);
+			if(r > 0)
+				put_bytes(&out, buffer, (size_t) r);
+		}
+	}
+	close(socket_fd);
+	free(out.bytes);
+	return status;
+}
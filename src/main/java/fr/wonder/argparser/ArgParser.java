@@ -1,30 +1,34 @@
 package fr.wonder.argparser;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.lang.reflect.Array;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import fr.wonder.argparser.annotations.Argument;
 import fr.wonder.argparser.annotations.EntryPoint;
-import fr.wonder.argparser.annotations.Option;
 import fr.wonder.argparser.annotations.OptionClass;
 import fr.wonder.argparser.annotations.ProcessDoc;
 import fr.wonder.argparser.utils.ArrayOperator;
+import fr.wonder.argparser.utils.CommandTokenizer;
 import fr.wonder.argparser.utils.ErrorWrapper;
 import fr.wonder.argparser.utils.ErrorWrapper.WrappedException;
 import fr.wonder.argparser.utils.ReflectUtils;
@@ -38,9 +42,11 @@ import fr.wonder.argparser.utils.StringUtils;
  *  to run the right one with user-supplied arguments and options.
  *
  * <p>
- * Note that reflection is heavily used, impacting performances. This utility is
- * not meant to be used often! It can still be used to run user commands on the
- * fly in a shell-like interface and not only as a CLI.
+ * Reflection only runs once, when the {@link CommandSchema} is built, or not at
+ * all when the {@link CommandBinder} generated by the declaration processor is
+ * found. Running a command calls the entry point and sets option fields through
+ * precompiled handles or the generated binder, so a schema can be reused to run
+ * many commands, in a shell-like interface as well as a CLI.
  * 
  * <p>
  * <h2>Anatomy of a command</h2>
@@ -60,9 +66,9 @@ import fr.wonder.argparser.utils.StringUtils;
  * <ul>
  * <li>Boolean options do not take argument ({@code -a} instead of {@code -a true})</li>
  * <li>Boolean short options can be combined ({@code -a -b} can be shortened to {@code -ab}).</li>
- * <li>It's currently impossible to have two option classes with options that have the same
- *     name but only one is boolean, because we cannot know if the next argument is the value of
- *     the option or not.</li>
+ * <li>Two option classes can declare options with the same name, one being boolean and the
+ *     other not. Such an option must then be given after the entry point path, before that
+ *     we cannot know if the next argument is the value of the option or not.</li>
  * </ul>
  * 
  * <p>
@@ -76,8 +82,12 @@ import fr.wonder.argparser.utils.StringUtils;
  * <ul>
  * <li>See {@link EntryPoint} and {@link Argument} annotations.</li>
  * <li>Supported argument types are {@code String}, all native types (int,
- *     float...), all wrapped native types (Integer, Float...), {@code File} and any
- *     {@code enum} type.</li>
+ *     float...), all wrapped native types (Integer, Float...), {@code File},
+ *     {@code Path}, any {@code enum} type (by name, ignoring case) and the types
+ *     supported by {@link ValueConverters}.</li>
+ * <li>The last parameter can receive the remaining arguments, either as an array (or
+ *     varargs) or as an {@code Iterable<T>}, {@code Iterator<T>} or {@code Stream<T>}
+ *     which elements are converted as they are consumed.</li>
  * </ul>
  * 
  * <p>
@@ -126,19 +136,32 @@ import fr.wonder.argparser.utils.StringUtils;
  * option fields must be {@code public} and not {@code final}. When working with
  * modules make sure that your packages are {@code open}. If any of these is not
  * respected reflection will fail and error messages can be a bit cryptic.
+ * 
+ * <p>
+ * <h2>Thread safety</h2>
+ * The declaration of a command line interface is compiled into an immutable
+ * {@link CommandSchema} that can be shared between threads. An {@code ArgParser}
+ * is a cheap view of a schema with its own streams and callee instance, running
+ * commands does not modify it so it can be used by several threads as long as it
+ * is not reconfigured meanwhile. To run commands for independent callers, for
+ * example one per request of a server, create one parser per caller from a
+ * shared schema with {@link #ArgParser(CommandSchema, Object)}.
  */
 public class ArgParser {
 
-	private final Class<?> entryPointClass;
-	private final String progName;
+	private static final Set<String> FILTERED_TRACE_CLASSES = Set.of(
+			ArgParser.class.getName(),
+			EntryPointFunction.class.getName());
+
+	private final CommandSchema schema;
+	private final Branch treeRoot;
 	private final Object calleeInstance;
 	
-	private final Branch treeRoot = new Branch("");
-	private final Map<Class<?>, ProcessOptions> optionClasses = new HashMap<>();
-	private final Map<String, Boolean> optionsTakingArguments = new HashMap<>();
-	
 	private PrintStream outputStream = System.out;
 	private PrintStream errorStream = System.err;
+	private boolean allowAbbreviations = false;
+	private ArgumentFileMode argumentFileMode = ArgumentFileMode.DISABLED;
+	private boolean failFast = false;
 	
 	/**
 	 * Finds an entry point method in the calling class and executes it.
@@ -176,10 +199,44 @@ public class ArgParser {
 	}
 	
 	public ArgParser(String progName, Class<?> entryPointClass, Object calleeInstance) throws InvalidDeclarationError {
-		this.progName = Objects.requireNonNull(progName);
-		this.entryPointClass = Objects.requireNonNull(entryPointClass);
+		this.schema = new CommandSchema(progName, entryPointClass);
+		this.treeRoot = schema.treeRoot;
 		this.calleeInstance = calleeInstance;
-		populateEntryPoints();
+		try {
+			schema.validateCalleeInstance(calleeInstance);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidDeclarationError(e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Creates a parser running the entry points of an already compiled schema,
+	 * creating a parser this way is cheap.
+	 * 
+	 * @throws IllegalArgumentException if the schema has non-static entry points
+	 */
+	public ArgParser(CommandSchema schema) {
+		this(schema, null);
+	}
+	
+	/**
+	 * Creates a parser running the entry points of an already compiled schema on
+	 * {@code calleeInstance}, creating a parser this way is cheap.
+	 * 
+	 * @param calleeInstance an instance of the entry point class, may be
+	 *        {@code null} if all entry points are static
+	 * @throws IllegalArgumentException if the callee instance is missing or is not
+	 *         an instance of the entry point class
+	 */
+	public ArgParser(CommandSchema schema, Object calleeInstance) {
+		this.schema = Objects.requireNonNull(schema);
+		this.treeRoot = schema.treeRoot;
+		this.calleeInstance = calleeInstance;
+		schema.validateCalleeInstance(calleeInstance);
+	}
+	
+	public CommandSchema getSchema() {
+		return schema;
 	}
 
 	public ArgParser setOutputStream(PrintStream stream) {
@@ -196,12 +253,99 @@ public class ArgParser {
 		return this;
 	}
 	
+	/**
+	 * Allows entry point paths to be abbreviated, a word of a path can be replaced
+	 * by any of its prefixes that no other word of the same branch starts with. For
+	 * example {@code git st} would run {@code git status} as long as there is no
+	 * {@code git stash}. Disabled by default.
+	 */
+	public ArgParser setAllowAbbreviations(boolean allowAbbreviations) {
+		this.allowAbbreviations = allowAbbreviations;
+		return this;
+	}
+	
+	/**
+	 * Enables the expansion of {@code @path} arguments, each one is replaced by the
+	 * arguments read from the file at {@code path}. This is useful to pass more
+	 * arguments than the system allows on a command line. An argument starting with
+	 * {@code @@} is passed with its first {@code @} removed. Disabled by default.
+	 * 
+	 * @see ArgumentFileMode
+	 */
+	public ArgParser setArgumentFileMode(ArgumentFileMode mode) {
+		this.argumentFileMode = Objects.requireNonNull(mode);
+		return this;
+	}
+	
+	/**
+	 * Stops parsing a command at its first error instead of reporting all of its
+	 * errors, to reject invalid commands as cheaply as possible. Disabled by default.
+	 */
+	public ArgParser setFailFast(boolean failFast) {
+		this.failFast = failFast;
+		return this;
+	}
+	
+	/**
+	 * Returns the candidates for the token under the cursor of a partially typed
+	 * command: sub paths, option names, enum constants or file paths depending on
+	 * what the previous tokens lead to, sorted. The candidates replace the whole
+	 * token, an empty list is returned if nothing can be completed.
+	 * <p>
+	 * Candidates are read from prefix indexes built with the schema, completion is
+	 * meant to be called on each keystroke of an interactive console. File paths
+	 * are resolved against the working directory of the current
+	 * {@link CommandContext}.
+	 * 
+	 * @param partialLine the command line, without the program name
+	 * @param cursor the position of the cursor in the line, only the text before it
+	 *        is considered
+	 */
+	public List<String> complete(String partialLine, int cursor) {
+		Objects.checkFromIndexSize(0, cursor, partialLine.length());
+		return new CommandCompleter(treeRoot, allowAbbreviations).complete(partialLine, cursor);
+	}
+	
 	/**
 	 * Calls {@link #run(String[])} after having split the given arguments.
-	 * @see StringUtils#splitCLIArgs(String, String)
+	 * @see CommandTokenizer
 	 */
 	public boolean run(String args) {
-		return run(StringUtils.splitCLIArgs(args));
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		tokenizer.tokenize(args);
+		return run(tokenizer);
+	}
+	
+	/**
+	 * Calls {@link #run(String[])} after having split the UTF-8 encoded command
+	 * contained between the position and the limit of {@code command}. The bytes
+	 * are tokenized directly and the whole command is never decoded: path words
+	 * and option names are matched against the bytes, only the values of options
+	 * and arguments are decoded.
+	 * @see CommandTokenizer#tokenize(ByteBuffer)
+	 */
+	public boolean run(ByteBuffer command) {
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		tokenizer.tokenize(command);
+		return run(tokenizer);
+	}
+	
+	/**
+	 * Calls {@link #run(String[])} after having split the UTF-8 encoded command
+	 * {@code command[offset..offset+length]}.
+	 * @see #run(ByteBuffer)
+	 */
+	public boolean run(byte[] command, int offset, int length) {
+		return run(ByteBuffer.wrap(command, offset, length));
+	}
+	
+	/**
+	 * Calls {@link #run(String[])} with the tokens of the last line read by
+	 * {@code tokenizer}. Shell-like interfaces can keep a single tokenizer and reuse
+	 * it for every line they read.
+	 */
+	public boolean run(CommandTokenizer tokenizer) {
+		return run(new ArgumentCursor(tokenizer), newErrors("Invalid arguments"));
 	}
 	
 	/**
@@ -210,128 +354,199 @@ public class ArgParser {
 	 * @see ArgParser
 	 */
 	public boolean run(String[] args) {
-		EntryPointFunction entry;
-		Object[] argsArray;
-		
-		try {
-			ErrorWrapper errors = new ErrorWrapper("Invalid arguments", false);
-			
-			List<OptionKeyValuePair> options = new ArrayList<>();
-			List<String> entryArguments = new ArrayList<>();
-			
-			List<String> arguments = args == null ? Collections.emptyList() : new ArrayList<>(Arrays.asList(args));
-			boolean isHelpPrint = !arguments.isEmpty() && ArgParserHelper.isHelpPrint(arguments.get(0));
-			if(isHelpPrint) arguments.remove(0);
-			
-			
-			// read arguments, options and find the entry point
-			Branch entryPointBranch = readArguments(errors, arguments, options, entryArguments);
-			
-			if(entryPointBranch == treeRoot && (treeRoot.entryPoint == null || isHelpPrint)) {
-				printRootHelp();
-				return true;
-			}
-			
-			entry = entryPointBranch.entryPoint;
-			
-			if(isHelpPrint) {
-				if(entry == null)
-					outputStream.println(getUnfinishedPathUsage(entryPointBranch));
-				else
-					printEntryPointHelp(entry);
-				return true;
-			}
-			
-			// validate that the entry point is valid and that there are enough arguments to match
-			if(entry == null) {
-				errors.addAndThrow(getUnfinishedPathUsage(entryPointBranch));
-			} else if(entryArguments.size() + entry.optionalParamCount() < entry.normalParamCount()) {
-				for(int i = entryArguments.size(); i < entry.normalParamCount() - entry.optionalParamCount(); i++)
-					errors.add("Missing argument for <" + entry.getParamName(i+(entry.usesOptions()?1:0)) + ">");
-				errors.addAndThrow(getEntryUsage(entry));
-			} else if(entryArguments.size() > entry.normalParamCount() && !entry.acceptsVarArgs()) {
-				errors.addAndThrow("Too many arguments given\n" + getEntryUsage(entry));
-			}
-			
-			argsArray = createArgsArray(errors, entry, options, entryArguments);
-			
-		} catch (WrappedException e) {
-			e.errors.dump(errorStream);
-			return false;
+		return run(new ArgumentCursor(args), newErrors("Invalid arguments"));
+	}
+	
+	/**
+	 * Runs every command of a script, one command per line. Blank lines and lines
+	 * starting with {@code #} are ignored, a line ending with a backslash continues
+	 * on the next line.
+	 * <p>
+	 * The script is streamed, a single command is kept in memory at a time. Commands
+	 * that cannot be parsed are reported on the error stream along with their line
+	 * number and the script continues, exceptions thrown by entry points are not
+	 * caught and stop the script.
+	 * 
+	 * @return the number of commands that could not be parsed
+	 * @throws IOException if the script cannot be read
+	 */
+	public int runScript(Reader script) throws IOException {
+		CommandScriptReader reader = new CommandScriptReader(script);
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		int failures = 0;
+		CharSequence command;
+		while((command = reader.nextCommand()) != null) {
+			tokenizer.tokenize(command);
+			ErrorWrapper errors = newErrors("Invalid command at line " + reader.getCommandLineNumber());
+			if(!run(new ArgumentCursor(tokenizer), errors))
+				failures++;
 		}
-		
-		runCommand(entry, argsArray);
-		return true;
+		return failures;
 	}
 	
-	private void populateEntryPoints() throws InvalidDeclarationError {
-		for(Method m : entryPointClass.getDeclaredMethods()) {
-			EntryPoint annotation = m.getAnnotation(EntryPoint.class);
-			if(annotation == null)
-				continue;
-			
-			String path = annotation.path();
-			
+	/**
+	 * Runs every command of an UTF-8 encoded script.
+	 * @see #runScript(Reader)
+	 */
+	public int runScript(InputStream script) throws IOException {
+		return runScript(new InputStreamReader(script, StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Runs every command of an UTF-8 encoded script file.
+	 * @see #runScript(Reader)
+	 */
+	public int runScript(Path script) throws IOException {
+		try (Reader reader = Files.newBufferedReader(script, StandardCharsets.UTF_8)) {
+			return runScript(reader);
+		}
+	}
+	
+	/**
+	 * Runs each command concurrently on virtual threads, see
+	 * {@link #runAll(Collection, Executor)}.
+	 */
+	public List<CommandResult> runAll(Collection<String[]> commands) {
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			return runAll(commands, executor);
+		}
+	}
+	
+	/**
+	 * Parses and runs each command on the given executor and waits for all of them
+	 * to complete. Commands are independent, their order of execution is not
+	 * specified.
+	 * <p>
+	 * The results are listed in the order of {@code commands}. Unlike
+	 * {@link #run(String[])} errors are not printed, they are captured in the
+	 * results along with exceptions thrown by entry points. Help requests still
+	 * print to the output stream. A {@link VirtualMachineError} thrown by an entry
+	 * point is rethrown once all commands completed.
+	 * <p>
+	 * The parser must not be reconfigured while commands are running and entry
+	 * points must be safe to call concurrently, see {@link ArgParser} for thread
+	 * safety.
+	 */
+	public List<CommandResult> runAll(Collection<String[]> commands, Executor executor) {
+		List<CompletableFuture<CommandResult>> futures = new ArrayList<>(commands.size());
+		for(String[] command : commands)
+			futures.add(CompletableFuture.supplyAsync(() -> execute(command), executor));
+		List<CommandResult> results = new ArrayList<>(futures.size());
+		VirtualMachineError fatal = null;
+		for(CompletableFuture<CommandResult> future : futures) {
 			try {
-				Branch branch = getEntrylessBranch(path);
-				ArgParserHelper.validateEntryMethodParameters(m, calleeInstance);
-				ProcessOptions opt = getOrCreateOptionClass(m);
-				branch.entryPoint = EntryPointFunction.createEntryPointFunction(m, opt);
-			} catch (NoSuchMethodException | SecurityException | IllegalArgumentException e) {
-				throw new InvalidDeclarationError("Cannot register branch '" + path + "' for method " + m, e);
+				results.add(future.join());
+			} catch (CompletionException e) {
+				if(!(e.getCause() instanceof VirtualMachineError))
+					throw e;
+				if(fatal == null)
+					fatal = (VirtualMachineError) e.getCause();
 			}
 		}
-		if(treeRoot.subBranches.isEmpty() && treeRoot.entryPoint == null)
-			throw new InvalidDeclarationError("Class " + entryPointClass + " contains no entry points");
+		if(fatal != null)
+			throw fatal;
+		return results;
 	}
 	
-	private Branch getEntrylessBranch(String path) throws InvalidDeclarationError {
-		String[] parts = path.split(" ");
-		Branch current = treeRoot;
-		int pl = 0;
-		
-		if(!ArgParserHelper.isRootBranch(path)) {
-			for(String p : parts) {
-				if(!ArgParserHelper.canBeBranchName(p))
-					throw new InvalidDeclarationError("Name '" + p + "' cannot be used as a branch path");
-				
-				if(current.entryPoint != null)
-					throw new InvalidDeclarationError("Branch '" + path.substring(0, pl) + "' has a declared entry point, it cannot have sub-paths");
-				current = current.subBranches.computeIfAbsent(p, _p -> new Branch(_p));
-				pl += p.length()+1;
+	/**
+	 * Finds the entry point to run and executes it with the given arguments, like
+	 * {@link #run(String[])} does. Errors are captured in the returned result instead
+	 * of being printed, exceptions thrown by the entry point are caught except for
+	 * {@link VirtualMachineError}s, the jvm cannot be relied upon after them.
+	 */
+	public CommandResult execute(String[] args) {
+		ParsedCommand command;
+		try {
+			command = parse(new ArgumentCursor(args), newErrors("Invalid arguments"));
+		} catch (WrappedException e) {
+			return new CommandResult(args, e.errors, null);
+		}
+		if(command != null) {
+			try {
+				command.entry.invoke(calleeInstance, command.arguments);
+			} catch (VirtualMachineError e) {
+				throw e;
+			} catch (Throwable t) {
+				// entry points may throw checked exceptions, invokeExact declares Throwable
+				cleanStackTrace(t);
+				return new CommandResult(args, null, t);
 			}
 		}
-		
-		if(current.entryPoint != null)
-			throw new InvalidDeclarationError("Branch '" + path + "' already has an entry point");
-		if(!current.subBranches.isEmpty())
-			throw new InvalidDeclarationError("Branch '" + path + "' already has sub-paths, it cannot be an entry point");
-		return current;
+		return new CommandResult(args, null, null);
+	}
+	
+	private ErrorWrapper newErrors(String header) {
+		return new ErrorWrapper(header, false).setFailFast(failFast);
+	}
+	
+	private boolean run(ArgumentCursor args, ErrorWrapper errors) {
+		ParsedCommand command;
+		try {
+			command = parse(args, errors);
+		} catch (WrappedException e) {
+			e.errors.dump(errorStream);
+			return false;
+		}
+		if(command != null)
+			runCommand(command.entry, command.arguments);
+		return true;
 	}
 	
-	private ProcessOptions getOrCreateOptionClass(Method method) throws InvalidDeclarationError {
-		if(!ArgParserHelper.doesMethodUseOptions(method))
+	/**
+	 * Reads the arguments and finds the entry point to run.
+	 * 
+	 * @return the entry point and its arguments, or {@code null} if help was
+	 *         printed instead
+	 */
+	private ParsedCommand parse(ArgumentCursor arguments, ErrorWrapper errors) throws WrappedException {
+		List<OptionKeyValuePair> options = new ArrayList<>();
+		List<String> entryArguments = new ArrayList<>();
+		TokenIndices argumentIndices = new TokenIndices();
+		
+		if(argumentFileMode != ArgumentFileMode.DISABLED) {
+			arguments = new ArgumentCursor(ArgumentFiles.expand(arguments.toArray(), argumentFileMode, errors));
+			errors.assertNoErrors();
+		}
+		
+		boolean isHelpPrint = arguments.hasNext() && ArgParserHelper.isHelpPrint(arguments.peekText());
+		if(isHelpPrint) arguments.next();
+		
+		// read arguments, options and find the entry point
+		Branch entryPointBranch = readArguments(errors, arguments, options, entryArguments, argumentIndices);
+		
+		if(isHelpPrint || (entryPointBranch == treeRoot && treeRoot.entryPoint == null)) {
+			outputStream.print(schema.help.getHelp(entryPointBranch));
 			return null;
-		Class<?> optionsType = method.getParameterTypes()[0];
-		ProcessOptions optionsClass = optionClasses.get(optionsType);
-		if(optionsClass != null)
-			return optionsClass;
+		}
 		
-		optionsClass = ProcessOptions.createOptionsClass(optionsType);
-		optionClasses.put(optionsType, optionsClass);
-		for(Entry<String, Field> option : optionsClass.getOptionFields().entrySet()) {
-			String optName = option.getKey();
-			Boolean alreadyDefinedTakesArg = optionsTakingArguments.get(optName);
-			boolean takesArg = OptionsHelper.doesOptionTakeArgument(option.getValue().getType());
-			if(alreadyDefinedTakesArg != null && takesArg != alreadyDefinedTakesArg)
-				throw new InvalidDeclarationError("Option '" + optName + "' was defined in two option classes,"
-						+ " only one taking an argument: second occurence" + option.getValue());
-			optionsTakingArguments.put(optName, takesArg);
+		EntryPointFunction entry = entryPointBranch.entryPoint;
+		
+		// validate that the entry point is valid and that there are enough arguments to match
+		if(entry == null) {
+			errors.addAndThrow(new Diagnostic(Diagnostic.Code.INCOMPLETE_COMMAND, -1, entryPointBranch.path, null,
+					() -> StringUtils.join("|", entryPointBranch.getSubBranchNames()),
+					() -> schema.help.getPathUsage(entryPointBranch)));
+		} else if(entryArguments.size() + entry.optionalParamCount() < entry.normalParamCount()) {
+			for(int i = entryArguments.size(); i < entry.normalParamCount() - entry.optionalParamCount(); i++) {
+				ParameterDescriptor parameter = entry.getParameter(i+(entry.usesOptions()?1:0));
+				errors.add(new Diagnostic(Diagnostic.Code.MISSING_ARGUMENT, -1, parameter.name, null,
+						Diagnostic.describeType(parameter.type, parameter.converter),
+						() -> "Missing argument for <" + parameter.name + ">"));
+				errors.checkFailFast();
+			}
+			errors.addAndThrow(() -> schema.help.getEntryUsage(entry));
+		} else if(entryArguments.size() > entry.normalParamCount() && !entry.acceptsVarArgs()) {
+			int extra = entry.normalParamCount();
+			errors.add(new Diagnostic(Diagnostic.Code.TOO_MANY_ARGUMENTS, argumentIndices.get(extra), entryPointBranch.path,
+					entryArguments.get(extra), null, () -> "Too many arguments given"));
+			errors.addAndThrow(() -> schema.help.getEntryUsage(entry));
 		}
-		return optionsClass;
+		
+		return new ParsedCommand(entry, createArgsArray(errors, entry, options, entryArguments, argumentIndices));
 	}
 	
-	private static Object[] createArgsArray(ErrorWrapper errors, EntryPointFunction entry, List<OptionKeyValuePair> options, List<String> argumentsStrings) throws WrappedException {
+	private static Object[] createArgsArray(ErrorWrapper errors, EntryPointFunction entry, List<OptionKeyValuePair> options,
+			List<String> argumentsStrings, TokenIndices argumentIndices) throws WrappedException {
 		
 		Object[] arguments = new Object[entry.totalParameterCount()];
 		int argIdx = 0;
@@ -344,36 +559,47 @@ public class ArgParser {
 		if(entry.usesOptions())
 			arguments[argIdx++] = OptionsHelper.createOptionsInstance(options, entry.getOptions(), errors);
 		else if(!options.isEmpty())
-			errors.addAndThrow("Unexpected options: " + StringUtils.join(", ", options, t -> t.name));
+			errors.addAndThrow(new Diagnostic(Diagnostic.Code.UNEXPECTED_OPTION, options.get(0).tokenIndex, options.get(0).name, null, null,
+					() -> "Unexpected options: " + StringUtils.join(", ", options, t -> t.name)));
 		
 		for(int i = 0; i < argumentsStrings.size(); i++) {
 			if(argIdx == entry.totalParameterCount()-1 && entry.acceptsVarArgs()) {
+				if(entry.getLazyElementType() != null) {
+					// the remaining arguments are converted when the entry point consumes them
+					arguments[argIdx++] = entry.createLazyArgument(argumentsStrings.subList(i, argumentsStrings.size()));
+					break;
+				}
 				// consume remaing arguments into an array for varargs
-				Class<?> varargsType = entry.getParamType(argIdx).componentType();
+				ParameterDescriptor varargs = entry.getParameter(argIdx);
+				Class<?> varargsType = varargs.type.componentType();
 				Object varargsArray = Array.newInstance(varargsType, argumentsStrings.size()-i);
 				for(int j = 0; i < argumentsStrings.size(); i++,j++) {
 					try {
-						Array.set(varargsArray, j, OptionsHelper.parseOptionValue(
+						OptionsHelper.setArrayElement(
+								varargsArray, j,
 								argumentsStrings.get(i),
 								varargsType,
-								entry.getParamName(argIdx)));
+								varargs.converter,
+								varargs.name);
 					} catch (ArgumentError e) {
-						errors.add(e.getMessage());
+						errors.add(Diagnostic.invalidValue(e, argumentIndices.get(i), varargs.name,
+								argumentsStrings.get(i), varargsType, varargs.converter));
+						errors.checkFailFast();
 					}
 				}
 				arguments[argIdx++] = varargsArray;
 				break;
 			}
 			
+			// read a normal argument
+			ParameterDescriptor parameter = entry.getParameter(argIdx);
 			try {
-				// read a normal argument
-				arguments[argIdx] = OptionsHelper.parseOptionValue(
-						argumentsStrings.get(i),
-						entry.getParamType(argIdx),
-						entry.getParamName(argIdx));
+				arguments[argIdx] = parameter.converter.convert(argumentsStrings.get(i), parameter.name);
 				argIdx++;
 			} catch (ArgumentError e) {
-				errors.add(e.getMessage());
+				errors.add(Diagnostic.invalidValue(e, argumentIndices.get(i), parameter.name,
+						argumentsStrings.get(i), parameter.type, parameter.converter));
+				errors.checkFailFast();
 			}
 		}
 		
@@ -382,27 +608,19 @@ public class ArgParser {
 		// fail-safe, should be unreachable
 		for(int i = 0; i < arguments.length; i++)
 			if(arguments[i] == null)
-				throw new IllegalStateException("Did not fill argument " + i + " for " + entry.getMethod());
+				throw new IllegalStateException("Did not fill argument " + i + " for " + entry.getDescription());
 		
 		return arguments;
 	}
 	
 	private void runCommand(EntryPointFunction entry, Object[] argsArray) {
 		try {
-			if (Modifier.isStatic(entry.getMethod().getModifiers()))
-				entry.getMethod().invoke(null, argsArray);
-			else
-				entry.getMethod().invoke(calleeInstance, argsArray);
-		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-			if(e.getCause() instanceof Error) {
-				cleanStackTrace(e.getCause());
-				throw (Error) e.getCause();
-			}
-			if(e.getCause() instanceof RuntimeException) {
-				cleanStackTrace(e.getCause());
-				throw (RuntimeException) e.getCause();
-			}
-			throw new IllegalStateException("Unable to invoke method " + entry.getMethod(), e);
+			entry.invoke(calleeInstance, argsArray);
+		} catch (RuntimeException | Error e) {
+			cleanStackTrace(e);
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException("Unable to invoke method " + entry.getDescription(), t);
 		}
 	}
 	
@@ -410,68 +628,79 @@ public class ArgParser {
 	 * Clean stack trace of uncaught exceptions thrown by the entry point method.
 	 * 
 	 * <p>
-	 * This method removes stack trace elements that come from this class, the
-	 * Method class and some jdk internal classes responsible for method invocations
-	 * through the reflect api.
+	 * This method removes stack trace elements that come from this class, from
+	 * {@link EntryPointFunction} and from the generated {@link CommandBinder}, frames
+	 * of the method handle used to invoke the entry point are hidden by the jvm
+	 * already.
 	 * 
 	 * <p>
 	 * It is used by the {@code run} functions of this class to make the trace
 	 * clearer, the trace won't contain references to this class but the first call
 	 * to a {@code run} function will still appear.
-	 * 
-	 * <p>
-	 * This method may have undesired results if the entry point method uses the
-	 * reflect api and does not catch invocation errors, as this method will also
-	 * remove these calls from the final stack trace.
 	 */
 	private static void cleanStackTrace(Throwable t) {
 		StackTraceElement[] trace = t.getStackTrace();
-		Set<String> filteredClassNames = Set.of(
-				ArgParser.class.getName(),
-				Method.class.getName(),
-				"jdk.internal.reflect.NativeMethodAccessorImpl",      // filter out inaccessible classes, might be
-				"jdk.internal.reflect.DelegatingMethodAccessorImpl"); // ineffective based on JDK implementations
 		
 		// do not alter the stack trace if the exception was raised by us
-		if (filteredClassNames.contains(trace[trace.length - 1].getClassName()))
+		if (trace.length == 0 || isFilteredTraceClass(trace[0].getClassName()))
 			return;
 		
-		t.setStackTrace(ArrayOperator.filter(trace, el -> !filteredClassNames.contains(el.getClassName())));
+		t.setStackTrace(ArrayOperator.filter(trace, el -> !isFilteredTraceClass(el.getClassName())));
 	}
 	
-	private Branch readArguments(ErrorWrapper errors, List<String> args, List<OptionKeyValuePair> outOptions, List<String> outArguments) throws WrappedException {
+	private static boolean isFilteredTraceClass(String className) {
+		return FILTERED_TRACE_CLASSES.contains(className) || className.endsWith(CommandBinder.BINDER_SUFFIX);
+	}
+	
+	private Branch readArguments(ErrorWrapper errors, ArgumentCursor args, List<OptionKeyValuePair> outOptions,
+			List<String> outArguments, TokenIndices outArgumentIndices) throws WrappedException {
 		
 		Branch currentBranch = treeRoot;
 		
 		boolean loggedPathError = false;
 		boolean foundOptionsEnd = false;
 		
-		while (!args.isEmpty()) {
-			String arg = args.get(0);
+		while (args.hasNext()) {
+			CharSequence text = args.peekText();
 			
-			if(arg.startsWith("-") && !foundOptionsEnd) {
-				if (arg.equals("--")) {
-					args.remove(0);
+			if(isOption(text) && !foundOptionsEnd) {
+				if (text.length() == 2 && text.charAt(1) == '-') {
+					args.next();
 					foundOptionsEnd = true;
 				} else {
 					// read and consume an option (with or without value)
-					readOptionArg(args, outOptions, errors);
+					readOptionArg(currentBranch.options, args, outOptions, errors);
 				}
 				
 			} else if(currentBranch.entryPoint == null) {
 				// search for the entry point
-				args.remove(0);
-				if(currentBranch.subBranches.containsKey(arg)) {
-					currentBranch = currentBranch.subBranches.get(arg);
+				int argIndex = args.position();
+				args.next();
+				Branch subBranch = currentBranch.getSubBranch(text, allowAbbreviations);
+				if(subBranch != null) {
+					currentBranch = subBranch;
 				} else if(!loggedPathError) {
-					errors.add("Unknown usage - " + arg + "\n" + getUnfinishedPathUsage(currentBranch));
+					String arg = text.toString();
+					String[] candidates = allowAbbreviations ? currentBranch.getSubBranchNames(arg) : null;
+					Branch branch = currentBranch;
+					if(candidates != null && candidates.length > 1)
+						errors.add(new Diagnostic(Diagnostic.Code.AMBIGUOUS_COMMAND, argIndex, branch.path, arg,
+								() -> StringUtils.join("|", candidates),
+								() -> "Ambiguous usage - " + arg + " can be any of " + StringUtils.join("|", candidates)));
+					else
+						errors.add(new Diagnostic(Diagnostic.Code.UNKNOWN_COMMAND, argIndex, branch.path, arg,
+								() -> StringUtils.join("|", branch.getSubBranchNames()),
+								() -> branch.suggestSubBranchNames(arg),
+								() -> "Unknown usage - " + arg + Suggestions.format(branch.suggestSubBranchNames(arg))
+										+ "\n" + schema.help.getPathUsage(branch)));
+					errors.checkFailFast();
 					loggedPathError = true;
 				}
 				
 			} else {
-				// read an argument
-				args.remove(0);
-				outArguments.add(arg);
+				// read an argument, only values are decoded
+				outArgumentIndices.add(args.position());
+				outArguments.add(args.next());
 			}
 		}
 		
@@ -479,159 +708,163 @@ public class ArgParser {
 		return currentBranch;
 	}
 	
-	private void readOptionArg(List<String> args, List<OptionKeyValuePair> outOptions, ErrorWrapper errors) {
-		String option = args.remove(0);
+	/**
+	 * Reads an option and its value if it takes one. Whether the option takes a value
+	 * is given by the options table of the current branch, options that take a value
+	 * in some of the entry points of the branch and not in others can only be given
+	 * after the entry point path.
+	 */
+	private static void readOptionArg(OptionTable table, ArgumentCursor args, List<OptionKeyValuePair> outOptions, ErrorWrapper errors) throws WrappedException {
+		int optionIndex = args.position();
+		CharSequence option = args.nextText();
 		
 		// read combined notation -abc
-		if(!option.startsWith("--")) {
-			char[] chars = option.toCharArray();
-			for(int i = 1; i < chars.length-1; i++) {
-				String opt = "-" + chars[i];
-				Boolean takesArgument = optionsTakingArguments.get(option);
-				if(takesArgument != null && takesArgument) {
-					errors.add("Option " + opt + " requires a value");
-				} else {
-					outOptions.add(new OptionKeyValuePair(opt));
+		if(option.length() > 2 && option.charAt(1) != '-') {
+			String cluster = option.toString();
+			int last = option.length()-1;
+			if(table.areAllFlags(option, 1, last)) {
+				for(int i = 1; i < last; i++)
+					outOptions.add(new OptionKeyValuePair(OptionTable.getShortName(option.charAt(i)), optionIndex));
+			} else {
+				for(int i = 1; i < last; i++) {
+					String opt = getShortName(option.charAt(i));
+					if((table.getShortKind(option.charAt(i)) & OptionTable.TAKES_VALUE) != 0) {
+						errors.add(new Diagnostic(Diagnostic.Code.MISSING_OPTION_VALUE, optionIndex, opt, cluster, null,
+								() -> "Option " + opt + " requires a value"));
+						errors.checkFailFast();
+					} else
+						outOptions.add(new OptionKeyValuePair(opt, optionIndex));
 				}
 			}
-			option = "-" + chars[chars.length-1];
+			option = getShortName(option.charAt(last));
 		}
 		
-		Boolean takesArgument = optionsTakingArguments.get(option);
-		if(takesArgument != null && takesArgument) {
-			if(args.isEmpty()) {
-				errors.add("Option " + option + " requires a value");
+		String optionName = table.getName(option);
+		byte kind = table.getKind(option);
+		if(kind == OptionTable.CONFLICT) {
+			errors.add(new Diagnostic(Diagnostic.Code.AMBIGUOUS_OPTION, optionIndex, optionName, null, null,
+					() -> "Option " + optionName + " takes a value for some commands only, give it after the command path"));
+			errors.checkFailFast();
+			if(args.hasNext() && !isOption(args.peekText()))
+				args.next(); // skip what is probably the value
+		} else if(kind == OptionTable.TAKES_VALUE) {
+			if(!args.hasNext()) {
+				errors.add(new Diagnostic(Diagnostic.Code.MISSING_OPTION_VALUE, optionIndex, optionName, null, null,
+						() -> "Option " + optionName + " requires a value"));
 			} else {
-				String nextArg = args.remove(0);
-				outOptions.add(new OptionKeyValuePair(option, nextArg));
+				String nextArg = args.next();
+				outOptions.add(new OptionKeyValuePair(optionName, nextArg, optionIndex));
 			}
 		} else {
-			outOptions.add(new OptionKeyValuePair(option));
+			outOptions.add(new OptionKeyValuePair(optionName, optionIndex));
 		}
 	}
 	
-	private void printEntryPointHelp(EntryPointFunction entryPoint) {
-		EntryPoint annotation = entryPoint.getMethod().getAnnotation(EntryPoint.class);
-		if(!annotation.help().isBlank())
-			outputStream.println(annotation.help());
-		outputStream.println(getEntryUsage(entryPoint));
-		
-		int maxParamNameLength = 0;
-		List<String> parameterNames = new ArrayList<>();
-		
-		int optionsOffset = entryPoint.usesOptions() ? 1 : 0;
-		for(int i = 0; i < entryPoint.normalParamCount(); i++) {
-			Class<?> argConcreteType = entryPoint.getParamType(i + optionsOffset);
-			String argName = entryPoint.getParamName(i + optionsOffset);
-			String argType = argConcreteType.isEnum() ?
-					StringUtils.join("|", argConcreteType.getEnumConstants()) :
-					argConcreteType.getSimpleName();
-			String fullName = "  " + argName + " (" + argType + ")";
-			parameterNames.add(fullName);
-			if(maxParamNameLength < fullName.length())
-				maxParamNameLength = fullName.length();
-		}
-		
-		if(maxParamNameLength > 35)
-			maxParamNameLength = 35;
-		
-		for(int i = 0; i < entryPoint.normalParamCount(); i++) {
-			String argName = parameterNames.get(i);
-			String argDesc = entryPoint.getParamDesc(i + optionsOffset);
-			int padding = Math.max(0, maxParamNameLength - argName.length());
-			if(!argDesc.isBlank())
-				argDesc = " - " + argDesc.replaceAll("\n", "\n"+" ".repeat(maxParamNameLength+2));
-			outputStream.println(argName + " ".repeat(padding) + argDesc);
-		}
-		
-		if(!entryPoint.usesOptions())
-			return;
-		
-		maxParamNameLength = 0;
-		parameterNames.clear();
-		
-		Set<Field> optionFields = new HashSet<>(entryPoint.getOptions().getOptionFields().values());
-		for(Field optionField : optionFields) {
-			Option opt = optionField.getAnnotation(Option.class);
-			String fullName = "  " + opt.name();
-			if(!opt.shorthand().isBlank())
-				fullName += " (" + opt.shorthand() + ")";
-			if(OptionsHelper.doesOptionTakeArgument(optionField.getType()))
-				fullName += " <" + opt.valueName() + ">";
-			parameterNames.add(fullName);
-			if(maxParamNameLength < fullName.length())
-				maxParamNameLength = fullName.length();
-		}
+	private static boolean isOption(CharSequence arg) {
+		return arg.length() != 0 && arg.charAt(0) == '-';
+	}
+	
+	private static String getShortName(char c) {
+		String name = OptionTable.getShortName(c);
+		return name == null ? "-" + c : name;
+	}
+	
+}
 
-		if(maxParamNameLength > 35)
-			maxParamNameLength = 35;
-		
-		for(Field optionField : optionFields) {
-			Option opt = optionField.getAnnotation(Option.class);
-			String optDesc = opt.desc();
-			String optName = parameterNames.remove(0);
-			if(!optDesc.isBlank())
-				optDesc = " - " + optDesc.replaceAll("\n", "\n"+" ".repeat(maxParamNameLength+2));
-			int padding = Math.max(0, maxParamNameLength - optName.length());
-			outputStream.println(optName + " ".repeat(padding) + optDesc);
-		}
+class ParsedCommand {
+	
+	final EntryPointFunction entry;
+	final Object[] arguments;
+	
+	ParsedCommand(EntryPointFunction entry, Object[] arguments) {
+		this.entry = entry;
+		this.arguments = arguments;
 	}
 	
-	private void printRootHelp() {
-		ProcessDoc doc = entryPointClass.getAnnotation(ProcessDoc.class);
-		if(doc != null)
-			outputStream.println(doc.doc());
-		EntryPointFunction entry = treeRoot.entryPoint;
-		if(entry == null) {
-			outputStream.println(getUnfinishedPathUsage(treeRoot));
-		} else {
-			printEntryPointHelp(entry);
-		}
+}
+
+/**
+ * A cursor over the arguments of a command, arguments are read in a single pass
+ * without copying the array. Arguments can also be read from the tokens of a
+ * {@link CommandTokenizer}, the text of a token is then only materialized into a
+ * string if it is read with {@link #peek()} or {@link #next()}.
+ */
+final class ArgumentCursor {
+	
+	private final String[] args;
+	private final CommandTokenizer tokens;
+	private final int size;
+	private int position;
+	
+	ArgumentCursor(String[] args) {
+		this.args = args == null ? new String[0] : args;
+		this.tokens = null;
+		this.size = this.args.length;
 	}
 	
-	private String getUnfinishedPathUsage(Branch currentBranch) {
-		return "Usage: " + currentBranch.path + " "
-				+ StringUtils.join("|", currentBranch.subBranches.keySet())
-				+ " ...\nUse '" + progName + " --help <cmd>' for help";
+	ArgumentCursor(CommandTokenizer tokens) {
+		this.args = null;
+		this.tokens = tokens;
+		this.size = tokens.tokenCount();
 	}
 	
-	private String getEntryUsage(EntryPointFunction entry) {
-		Method entryMethod = entry.getMethod();
-		String usage = "Usage: " + progName;
-		if(entry.usesOptions()) {
-			Collection<String> availableOptions = entry.getOptions().getAvailableOptionNames();
-			if(availableOptions.size() > 3) {
-				usage += " (...options)";
-			} else {
-				for(String opt : availableOptions)
-					usage += " (" + opt + ")";
-			}
-		}
-		EntryPoint annotation = entryMethod.getAnnotation(EntryPoint.class);
-		String entryPath = annotation.path();
-		if(!ArgParserHelper.isRootBranch(entryPath))
-			usage += " " + entryPath;
-		int optionsOffset = entry.usesOptions() ? 1 : 0;
-		int i = 0;
-		for( ; i < entry.optionalParamCount(); i++)
-			usage += " <" + entry.getParamName(i+optionsOffset) + ">";
-		for( ; i < entry.normalParamCount(); i++)
-			usage += " [" + entry.getParamName(i+optionsOffset) + "]";
-		if(entry.acceptsVarArgs())
-			usage += "...";
-		return usage;
+	boolean hasNext() {
+		return position < size;
+	}
+	
+	String peek() {
+		return args != null ? args[position] : tokens.getToken(position);
+	}
+	
+	String next() {
+		String arg = peek();
+		position++;
+		return arg;
+	}
+	
+	/**
+	 * Returns the text of the next argument, a view of the token that is not
+	 * decoded when reading a tokenizer, see {@link CommandTokenizer#getTokenText(int)}.
+	 */
+	CharSequence peekText() {
+		return args != null ? args[position] : tokens.getTokenText(position);
+	}
+	
+	CharSequence nextText() {
+		CharSequence text = peekText();
+		position++;
+		return text;
+	}
+	
+	/** Returns all the arguments as strings, from the first one */
+	String[] toArray() {
+		return args != null ? args : tokens.getTokens();
+	}
+	
+	/** Returns the index of the argument returned by {@link #peek()} */
+	int position() {
+		return position;
 	}
 	
 }
 
-class Branch {
+/**
+ * The indices of the entry point arguments in the command, kept in an
+ * {@code int} array so that recording them does not box.
+ */
+final class TokenIndices {
 	
-	final Map<String, Branch> subBranches = new HashMap<>(0);
-	final String path;
-	EntryPointFunction entryPoint = null;
+	private int[] indices = new int[8];
+	private int size;
 	
-	Branch(String path) {
-		this.path = Objects.requireNonNull(path);
+	void add(int index) {
+		if(size == indices.length)
+			indices = Arrays.copyOf(indices, size * 2);
+		indices[size++] = index;
 	}
 	
-}
\ No newline at end of file
+	int get(int i) {
+		return indices[i];
+	}
+	
+}
@@ -1,27 +1,50 @@
 package fr.wonder.argparser;
 
-import java.io.File;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import fr.wonder.argparser.annotations.EntryPoint;
 import fr.wonder.argparser.annotations.OptionClass;
-import fr.wonder.argparser.utils.PrimitiveUtils;
 
 public class ArgParserHelper {
 
 	public static void validateEntryMethodParameters(Method method, Object calleeInstance) throws NoSuchMethodException, SecurityException {
-		boolean isStaticMethod = Modifier.isStatic(method.getModifiers());
-		if(calleeInstance == null && !isStaticMethod)
+		if(calleeInstance == null && !Modifier.isStatic(method.getModifiers()))
 			throw new IllegalArgumentException("Method " + method + " cannot be accessed statically");
-		if(!method.trySetAccessible() || !method.canAccess(isStaticMethod ? null : calleeInstance))
+		validateEntryMethodParameters(method);
+	}
+	
+	/**
+	 * Validates an entry point method regardless of the instance it will be called
+	 * on, non-static methods are accepted.
+	 */
+	public static void validateEntryMethodParameters(Method method) throws NoSuchMethodException, SecurityException {
+		if(!method.trySetAccessible())
 			throw new IllegalArgumentException("Method " + method + " cannot be accessed");
 		Parameter[] params = method.getParameters();
 		
 		for(int i = doesMethodUseOptions(method) ? 1 : 0; i < params.length; i++) {
 			Class<?> type = params[i].getType();
 			
+			if(isLazyArgumentType(type)) {
+				if(i != params.length - 1)
+					throw new IllegalArgumentException("Argument " + params[i].getName() + " has an invalid type " + type.getName()
+						+ ", only the last argument can be an Iterable, an Iterator or a Stream");
+				Class<?> elementType = getElementType(params[i].getParameterizedType());
+				if(elementType == null || !canBeArgumentType(elementType, false, false))
+					throw new IllegalArgumentException("Argument " + params[i].getName() + " has an invalid element type "
+						+ params[i].getParameterizedType().getTypeName());
+				continue;
+			}
+			
 			if(!canBeArgumentType(type, i==0, i==params.length-1)) {
 				if (type.isArray() && i != params.length - 1)
 					throw new IllegalArgumentException("Argument " + params[i].getName() + " has an invalid type " + type.getName()
@@ -53,25 +76,61 @@ public class ArgParserHelper {
 				!isHelpPrint(text);
 	}
 
-	/** Does not check for arrays, methods using varargs have an array as their last parameter */
+	/**
+	 * Returns {@code true} if values of {@code type} can be converted by a
+	 * {@link ValueConverter}, see {@link ValueConverters}. Does not check for
+	 * arrays, methods using varargs have an array as their last parameter.
+	 */
 	public static boolean canBeArgumentType(Class<?> type, boolean acceptsOptionClass, boolean acceptsArray) {
-		return type == String.class ||
-				type == File.class ||
-				type.isEnum() ||
-				PrimitiveUtils.isPrimitiveType(type) ||
-				(acceptsOptionClass && type.isAnnotationPresent(OptionClass.class)) ||
-				(type.isArray() && canBeArgumentType(type.componentType(), false, false));
+		if(type.isArray())
+			return canBeArgumentType(type.componentType(), false, false);
+		return (acceptsOptionClass && type.isAnnotationPresent(OptionClass.class)) ||
+				ValueConverters.get(type) != null;
 	}
 
+	/**
+	 * Returns {@code true} if {@code type} can be the type of the last parameter of
+	 * an entry point, to receive the trailing arguments converted on demand.
+	 */
+	public static boolean isLazyArgumentType(Class<?> type) {
+		return type == Iterable.class || type == Iterator.class || type == Stream.class;
+	}
+	
+	/**
+	 * Returns {@code true} if {@code type} can be the type of an option field that
+	 * collects all the values given to the option, like arrays do.
+	 */
+	public static boolean isCollectionOptionType(Class<?> type) {
+		return type == List.class || type == Set.class;
+	}
+	
+	/**
+	 * Returns the element type of a lazy parameter or of a collection option
+	 * ({@code T} for {@code Stream<T>} or {@code Stream<? extends T>}), or
+	 * {@code null} if it is not a class.
+	 */
+	public static Class<?> getElementType(Type genericType) {
+		if(!(genericType instanceof ParameterizedType))
+			return null;
+		Type elementType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+		if(elementType instanceof WildcardType)
+			elementType = ((WildcardType) elementType).getUpperBounds()[0];
+		return elementType instanceof Class ? (Class<?>) elementType : null;
+	}
+	
 	public static boolean doesMethodUseOptions(Method method) {
 		Parameter[] params = method.getParameters();
 		return params.length > 0 && params[0].getType().isAnnotationPresent(OptionClass.class);
 	}
 
 	public static boolean isHelpPrint(String arg) {
-		return arg.equals("help") ||
-				arg.equals("--help") ||
-				arg.equals("?");
+		return isHelpPrint((CharSequence) arg);
+	}
+
+	static boolean isHelpPrint(CharSequence arg) {
+		return CharSequence.compare(arg, "help") == 0 ||
+				CharSequence.compare(arg, "--help") == 0 ||
+				CharSequence.compare(arg, "?") == 0;
 	}
 
 }
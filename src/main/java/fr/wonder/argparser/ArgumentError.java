@@ -1,11 +1,65 @@
 package fr.wonder.argparser;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * Thrown when an argument or an option value is invalid.
+ *
+ * <p>
+ * Invalid input is expected, these errors do not capture their stack trace and
+ * their message can be given as a template which is only formatted if the
+ * message is read. The template arguments are not serialized, the message is
+ * formatted before the error is written.
+ */
 public class ArgumentError extends Exception {
 
 	private static final long serialVersionUID = -3010834742643317717L;
 
+	private final String template;
+	private final transient Object[] templateArguments;
+	private String message;
+
 	public ArgumentError(String e) {
-		super(e);
+		super(null, null, false, false);
+		this.template = e;
+		this.templateArguments = null;
+		this.message = e;
+	}
+	
+	/**
+	 * Creates an error which message is {@code template} with each {@code {}}
+	 * replaced by the next argument, the message is formatted when it is first read.
+	 */
+	public ArgumentError(String template, Object... arguments) {
+		super(null, null, false, false);
+		this.template = template;
+		this.templateArguments = arguments;
+	}
+	
+	@Override
+	public String getMessage() {
+		if(message == null)
+			message = templateArguments == null ? template : format(template, templateArguments);
+		return message;
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		getMessage();
+		out.defaultWriteObject();
+	}
+	
+	private static String format(String template, Object[] arguments) {
+		StringBuilder sb = new StringBuilder(template.length() + 16*arguments.length);
+		int start = 0;
+		for(Object argument : arguments) {
+			int placeholder = template.indexOf("{}", start);
+			if(placeholder < 0)
+				break;
+			sb.append(template, start, placeholder).append(argument);
+			start = placeholder+2;
+		}
+		return sb.append(template, start, template.length()).toString();
 	}
 	
 }
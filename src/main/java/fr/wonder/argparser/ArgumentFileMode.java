@@ -0,0 +1,22 @@
+package fr.wonder.argparser;
+
+/**
+ * How {@code @path} arguments are expanded, see
+ * {@link ArgParser#setArgumentFileMode(ArgumentFileMode)}.
+ */
+public enum ArgumentFileMode {
+	
+	/** Arguments starting with {@code @} are not expanded */
+	DISABLED,
+	/**
+	 * The file is read line by line, each line is split like a command line (see
+	 * {@link fr.wonder.argparser.utils.CommandTokenizer}). Blank lines are ignored.
+	 */
+	TOKENS,
+	/**
+	 * The file contains arguments separated by NUL characters, as written by
+	 * {@code find -print0} or {@code xargs -0}. Arguments are used as-is.
+	 */
+	NUL_DELIMITED;
+	
+}
@@ -0,0 +1,123 @@
+package fr.wonder.argparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.wonder.argparser.utils.CommandTokenizer;
+import fr.wonder.argparser.utils.ErrorWrapper;
+
+/**
+ * Expands {@code @path} arguments into the arguments contained in the file at
+ * {@code path}.
+ *
+ * <p>
+ * Files are memory mapped and tokenized in place, line by line or NUL delimited
+ * argument by argument, only the arguments themselves are decoded. Relative paths
+ * are resolved against the working directory of the current
+ * {@link CommandContext}. Arguments read from a file are not expanded again, an
+ * argument starting with {@code @@} is passed with its first {@code @} removed.
+ */
+final class ArgumentFiles {
+	
+	private ArgumentFiles() {}
+	
+	/**
+	 * Returns the expanded arguments, or {@code args} itself if there is nothing to
+	 * expand. Files that cannot be read are reported in {@code errors}, with the
+	 * index of their argument.
+	 */
+	static String[] expand(String[] args, ArgumentFileMode mode, ErrorWrapper errors) {
+		if(mode == ArgumentFileMode.DISABLED || !containsArgumentFile(args))
+			return args;
+		
+		List<String> expanded = new ArrayList<>(args.length);
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if(!arg.startsWith("@")) {
+				expanded.add(arg);
+			} else if(arg.startsWith("@@")) {
+				expanded.add(arg.substring(1));
+			} else {
+				File file = CommandContext.current().resolveFile(arg.substring(1));
+				try {
+					readArgumentFile(file, mode, expanded);
+				} catch (IOException | RuntimeException e) {
+					errors.add(new Diagnostic(Diagnostic.Code.ARGUMENT_FILE, i, file.getPath(), arg, null,
+							() -> "Cannot read argument file " + file + ": " + e.getMessage()));
+				}
+			}
+		}
+		return expanded.toArray(String[]::new);
+	}
+	
+	private static boolean containsArgumentFile(String[] args) {
+		for(String arg : args) {
+			if(arg.startsWith("@"))
+				return true;
+		}
+		return false;
+	}
+	
+	private static void readArgumentFile(File file, ArgumentFileMode mode, List<String> out) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE)
+				throw new IOException("File is too large (" + size + " bytes)");
+			if(size == 0)
+				return;
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if(mode == ArgumentFileMode.NUL_DELIMITED)
+				readNulDelimited(buffer, out);
+			else
+				readTokens(buffer, out);
+		}
+	}
+	
+	private static void readTokens(ByteBuffer buffer, List<String> out) {
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		int limit = buffer.limit();
+		int lineStart = 0;
+		while(lineStart < limit) {
+			int lineEnd = indexOf(buffer, (byte) '\n', lineStart, limit);
+			int contentEnd = lineEnd;
+			if(contentEnd > lineStart && buffer.get(contentEnd-1) == '\r')
+				contentEnd--;
+			int tokenCount = tokenizer.tokenize(buffer.slice(lineStart, contentEnd - lineStart));
+			for(int i = 0; i < tokenCount; i++)
+				out.add(tokenizer.getToken(i));
+			lineStart = lineEnd+1;
+		}
+	}
+	
+	private static void readNulDelimited(ByteBuffer buffer, List<String> out) {
+		int limit = buffer.limit();
+		int start = 0;
+		while(start < limit) {
+			int end = indexOf(buffer, (byte) 0, start, limit);
+			out.add(decode(buffer, start, end));
+			start = end+1;
+		}
+	}
+	
+	private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+		for(int i = from; i < to; i++) {
+			if(buffer.get(i) == b)
+				return i;
+		}
+		return to;
+	}
+	
+	private static String decode(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		buffer.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+}
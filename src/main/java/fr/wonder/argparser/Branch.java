@@ -0,0 +1,80 @@
+package fr.wonder.argparser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import fr.wonder.argparser.utils.BKTree;
+import fr.wonder.argparser.utils.RadixTrie;
+
+/**
+ * A node of the entry points tree, see {@link ArgParser} for how paths are
+ * formed. Branches are immutable, their sub branches are routed with a
+ * {@link RadixTrie} of their names and mistyped names are corrected with a
+ * {@link BKTree} of the same names.
+ */
+final class Branch {
+	
+	private static final Branch[] NO_BRANCHES = {};
+	
+	final String path;
+	final EntryPointFunction entryPoint;
+	/** The options of the entry points of this branch and its sub branches */
+	final OptionTable options;
+	/** The sub branches, sorted by name */
+	private final Branch[] subBranches;
+	private final RadixTrie router;
+	private final BKTree nameIndex;
+	
+	Branch(String path, EntryPointFunction entryPoint, Map<String, Branch> subBranches) {
+		this.path = Objects.requireNonNull(path);
+		this.entryPoint = entryPoint;
+		List<OptionTable> tables = new ArrayList<>();
+		if(entryPoint != null)
+			tables.add(entryPoint.getOptionTable());
+		for(Branch subBranch : subBranches.values())
+			tables.add(subBranch.options);
+		this.options = entryPoint != null && subBranches.isEmpty() ? entryPoint.getOptionTable() : OptionTable.merge(tables);
+		this.router = new RadixTrie(subBranches.keySet().toArray(String[]::new));
+		this.nameIndex = new BKTree(router.getWords(), false);
+		this.subBranches = subBranches.isEmpty() ? NO_BRANCHES : new Branch[router.size()];
+		for(int i = 0; i < this.subBranches.length; i++)
+			this.subBranches[i] = subBranches.get(router.getWord(i));
+	}
+	
+	boolean hasSubBranches() {
+		return subBranches.length != 0;
+	}
+	
+	/** Returns the names of the sub branches, sorted */
+	String[] getSubBranchNames() {
+		return router.getWords();
+	}
+	
+	/**
+	 * Returns the sub branch named {@code name}, or {@code null}. If
+	 * {@code allowAbbreviations} is set, a prefix of the name of only one sub
+	 * branch also designates that branch.
+	 */
+	Branch getSubBranch(CharSequence name, boolean allowAbbreviations) {
+		int index = allowAbbreviations ? router.indexOfAbbreviation(name) : router.indexOf(name);
+		return index < 0 ? null : subBranches[index];
+	}
+	
+	/** Returns the names of the sub branches nearest to the mistyped {@code name} */
+	List<String> suggestSubBranchNames(String name) {
+		return Suggestions.find(nameIndex, name);
+	}
+	
+	/** Returns the names of the sub branches starting with {@code prefix} */
+	String[] getSubBranchNames(String prefix) {
+		int from = router.firstPrefixed(prefix);
+		int count = router.countPrefixed(prefix);
+		String[] names = new String[count];
+		for(int i = 0; i < count; i++)
+			names[i] = router.getWord(from + i);
+		return names;
+	}
+	
+}
@@ -0,0 +1,74 @@
+package fr.wonder.argparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The optional cache of canonical paths used by {@link LazyCanonicalFile}, see
+ * {@link ValueConverters#setCanonicalPathCacheSize(int)}.
+ *
+ * <p>
+ * Entries are keyed by the working directory and the path given by the user and
+ * are evicted in least recently used order. The cache is not invalidated when
+ * the file system changes, a cached canonical path stays the same even if a link
+ * it went through was changed.
+ */
+final class CanonicalPaths {
+
+	private static volatile Cache cache;
+
+	private CanonicalPaths() {}
+
+	static void setCacheSize(int size) {
+		if(size < 0)
+			throw new IllegalArgumentException("Invalid cache size " + size);
+		cache = size == 0 ? null : new Cache(size);
+	}
+
+	/**
+	 * Returns the canonical form of {@code file}, which is the path {@code rawPath}
+	 * given by the user resolved against {@code workingDirectory}.
+	 */
+	static File getCanonicalFile(Path workingDirectory, String rawPath, File file) throws IOException {
+		Cache cache = CanonicalPaths.cache;
+		if(cache == null)
+			return file.getCanonicalFile();
+		Key key = new Key(workingDirectory, rawPath);
+		File canonicalFile;
+		synchronized (cache) {
+			canonicalFile = cache.get(key);
+		}
+		if(canonicalFile == null) {
+			// resolved outside of the lock, concurrent misses may resolve the same path twice
+			canonicalFile = file.getCanonicalFile();
+			synchronized (cache) {
+				cache.put(key, canonicalFile);
+			}
+		}
+		return canonicalFile;
+	}
+
+	private record Key(Path workingDirectory, String rawPath) {}
+
+	private static final class Cache extends LinkedHashMap<Key, File> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		Cache(int maxSize) {
+			super(16, .75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, File> eldest) {
+			return size() > maxSize;
+		}
+
+	}
+
+}
@@ -0,0 +1,279 @@
+package fr.wonder.argparser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import fr.wonder.argparser.processor.DeclarationProcessor;
+
+/**
+ * The compiled form of the declarations of an entry point class, generated by
+ * the {@link DeclarationProcessor}.
+ *
+ * <p>
+ * A binder lists the entry points and option classes read from the annotations
+ * at compile time, and accesses them with plain java code: entry points are
+ * called from a switch over their indices, option classes are created with
+ * {@code new} and their fields are assigned directly. A {@link CommandSchema}
+ * built from a binder does not read annotations, validate names or create
+ * method handles, which is most of the startup cost of a schema.
+ *
+ * <p>
+ * The binder of {@code com.example.Cli} is {@code com.example.Cli_ArgParserBinder}
+ * ({@code Outer_Inner_ArgParserBinder} for a nested class), it is used by
+ * {@link CommandSchema#CommandSchema(String, Class)} when it exists. Binders are
+ * not meant to be written by hand, the indices and declarations must match
+ * exactly.
+ */
+public abstract class CommandBinder {
+
+	/** Appended to the name of an entry point class to get the name of its binder */
+	public static final String BINDER_SUFFIX = "_ArgParserBinder";
+
+	private final Class<?> entryPointClass;
+
+	protected CommandBinder(Class<?> entryPointClass) {
+		this.entryPointClass = Objects.requireNonNull(entryPointClass);
+	}
+
+	public final Class<?> getEntryPointClass() {
+		return entryPointClass;
+	}
+
+	/**
+	 * Lists the entry points and option classes, holders must be declared parents
+	 * first.
+	 */
+	protected abstract void declare(Declarations declarations);
+
+	/**
+	 * Calls an entry point, exceptions thrown by the entry point are propagated
+	 * as-is.
+	 *
+	 * @param callee the instance on which to call the entry point, ignored if it
+	 *        is static
+	 */
+	protected abstract void invoke(int entryPoint, Object callee, Object[] arguments) throws Throwable;
+
+	/** Creates an empty instance of the option class of a holder */
+	protected abstract Object newHolder(int holder);
+
+	/** Returns the value of an option or inner options field */
+	protected abstract Object get(int field, Object holder);
+
+	/** Sets the value of an option or inner options field */
+	protected abstract void set(int field, Object holder, Object value);
+
+	// primitive setters, overridden by binders which option classes have primitive fields
+
+	protected void setInt(int field, Object holder, int value) {
+		set(field, holder, value);
+	}
+
+	protected void setLong(int field, Object holder, long value) {
+		set(field, holder, value);
+	}
+
+	protected void setDouble(int field, Object holder, double value) {
+		set(field, holder, value);
+	}
+
+	protected void setFloat(int field, Object holder, float value) {
+		set(field, holder, value);
+	}
+
+	protected void setShort(int field, Object holder, short value) {
+		set(field, holder, value);
+	}
+
+	protected void setByte(int field, Object holder, byte value) {
+		set(field, holder, value);
+	}
+
+	protected void setChar(int field, Object holder, char value) {
+		set(field, holder, value);
+	}
+
+	/**
+	 * Returns the binder generated for {@code entryPointClass}, or {@code null} if
+	 * there is none.
+	 *
+	 * @throws InvalidDeclarationError if the binder exists but cannot be used
+	 */
+	static CommandBinder find(Class<?> entryPointClass) throws InvalidDeclarationError {
+		String className = entryPointClass.getName();
+		int packageEnd = className.lastIndexOf('.') + 1;
+		String binderName = className.substring(0, packageEnd) + className.substring(packageEnd).replace('$', '_') + BINDER_SUFFIX;
+		Class<?> binderClass;
+		try {
+			binderClass = Class.forName(binderName, true, entryPointClass.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+		try {
+			CommandBinder binder = (CommandBinder) binderClass.getConstructor().newInstance();
+			if(binder.getEntryPointClass() != entryPointClass)
+				throw new InvalidDeclarationError("Binder " + binderName + " was not generated for " + entryPointClass);
+			return binder;
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new InvalidDeclarationError("Cannot instantiate binder " + binderName, e);
+		}
+	}
+
+	/**
+	 * The declarations of a binder, collected once when a schema is built.
+	 */
+	public static final class Declarations {
+
+		String processDoc;
+		final List<EntryDeclaration> entryPoints = new ArrayList<>();
+		final List<HolderDeclaration> holders = new ArrayList<>();
+		final List<OptionDeclaration> options = new ArrayList<>();
+
+		Declarations() {}
+
+		public void processDoc(String doc) {
+			this.processDoc = doc;
+		}
+
+		/**
+		 * Declares an entry point, its parameters are declared on the returned
+		 * declaration, the options parameter included.
+		 *
+		 * @param optionsHolder the holder of the options parameter, -1 if the entry
+		 *        point does not take options
+		 * @param description the entry point method, used in error messages
+		 */
+		public EntryDeclaration entryPoint(int index, String path, String help, boolean isStatic, int optionsHolder, String description) {
+			EntryDeclaration entry = new EntryDeclaration(index, path, help, isStatic, optionsHolder, description);
+			entryPoints.add(entry);
+			return entry;
+		}
+
+		/**
+		 * Declares an instance of an (inner) option class.
+		 *
+		 * @param parentHolder the holder containing this one, -1 for the option class
+		 *        of an entry point
+		 * @param parentField the field of the parent holder containing this one
+		 */
+		public void holder(int holder, Class<?> type, int parentHolder, int parentField) {
+			holders.add(new HolderDeclaration(holder, type, parentHolder, parentField));
+		}
+
+		/**
+		 * Declares an option field of a holder.
+		 *
+		 * @param elementType the element type of a list or set option, {@code null}
+		 *        for other options
+		 */
+		public void option(int field, int holder, String name, String shorthand, String valueName, String desc,
+				Class<?> type, Class<?> elementType) {
+			options.add(new OptionDeclaration(field, holder, name, shorthand, valueName, desc, type, elementType));
+		}
+
+	}
+
+	/**
+	 * An entry point, either declared by a binder or read from an {@code EntryPoint}
+	 * method.
+	 */
+	public static final class EntryDeclaration {
+
+		final int index;
+		final String path;
+		final String help;
+		final boolean isStatic;
+		final int optionsHolder;
+		final String description;
+		final List<ParameterDeclaration> parameters = new ArrayList<>();
+
+		EntryDeclaration(int index, String path, String help, boolean isStatic, int optionsHolder, String description) {
+			this.index = index;
+			this.path = Objects.requireNonNull(path);
+			this.help = Objects.requireNonNull(help);
+			this.isStatic = isStatic;
+			this.optionsHolder = optionsHolder;
+			this.description = Objects.requireNonNull(description);
+		}
+
+		/**
+		 * Declares the next parameter of the entry point.
+		 *
+		 * @param javaName the name of the parameter in the source code
+		 * @param name the name given by the {@code Argument} annotation, or
+		 *        {@code javaName}
+		 * @param elementType the element type of a lazy parameter, {@code null} for
+		 *        other parameters
+		 * @param defaultValue the default value given by the {@code Argument}
+		 *        annotation, an empty string if there is none
+		 */
+		public EntryDeclaration parameter(String javaName, String name, String desc, Class<?> type, Class<?> elementType, String defaultValue) {
+			parameters.add(new ParameterDeclaration(javaName, name, desc, type, elementType, defaultValue));
+			return this;
+		}
+
+	}
+
+	static final class ParameterDeclaration {
+
+		final String javaName;
+		final String name;
+		final String desc;
+		final Class<?> type;
+		final Class<?> elementType;
+		final String defaultValue;
+
+		ParameterDeclaration(String javaName, String name, String desc, Class<?> type, Class<?> elementType, String defaultValue) {
+			this.javaName = Objects.requireNonNull(javaName);
+			this.name = Objects.requireNonNull(name);
+			this.desc = Objects.requireNonNull(desc);
+			this.type = Objects.requireNonNull(type);
+			this.elementType = elementType;
+			this.defaultValue = Objects.requireNonNull(defaultValue);
+		}
+
+	}
+
+	static final class HolderDeclaration {
+
+		final int holder;
+		final Class<?> type;
+		final int parentHolder;
+		final int parentField;
+
+		HolderDeclaration(int holder, Class<?> type, int parentHolder, int parentField) {
+			this.holder = holder;
+			this.type = Objects.requireNonNull(type);
+			this.parentHolder = parentHolder;
+			this.parentField = parentField;
+		}
+
+	}
+
+	static final class OptionDeclaration {
+
+		final int field;
+		final int holder;
+		final String name;
+		final String shorthand;
+		final String valueName;
+		final String desc;
+		final Class<?> type;
+		final Class<?> elementType;
+
+		OptionDeclaration(int field, int holder, String name, String shorthand, String valueName, String desc,
+				Class<?> type, Class<?> elementType) {
+			this.field = field;
+			this.holder = holder;
+			this.name = Objects.requireNonNull(name);
+			this.shorthand = Objects.requireNonNull(shorthand);
+			this.valueName = Objects.requireNonNull(valueName);
+			this.desc = Objects.requireNonNull(desc);
+			this.type = Objects.requireNonNull(type);
+			this.elementType = elementType;
+		}
+
+	}
+
+}
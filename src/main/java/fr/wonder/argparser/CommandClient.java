@@ -0,0 +1,137 @@
+package fr.wonder.argparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Sends a command to a {@link CommandServer} and forwards its standard streams
+ * and exit status.
+ *
+ * <p>
+ * The {@link #main(String[])} function is a ready to use client, the address of
+ * the server is read from the {@code argparser.daemon} system property or from the
+ * {@code ARGPARSER_DAEMON} environment variable, either as {@code port} or
+ * {@code host:port} for a loopback address or as the path of a unix domain socket.
+ */
+public final class CommandClient {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private CommandClient() {}
+
+	public static void main(String[] args) {
+		String address = System.getProperty("argparser.daemon", System.getenv("ARGPARSER_DAEMON"));
+		if(address == null) {
+			System.err.println("No command server address, set the argparser.daemon property or the ARGPARSER_DAEMON variable");
+			System.exit(2);
+		}
+		try {
+			System.exit(run(parseAddress(address), args));
+		} catch (IOException e) {
+			System.err.println("Unable to reach the command server at " + address + ": " + e.getMessage());
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Parses a server address, see {@link CommandClient}.
+	 */
+	public static SocketAddress parseAddress(String address) {
+		int portSeparator = address.lastIndexOf(':');
+		String port = address.substring(portSeparator+1);
+		if(!port.isEmpty() && port.chars().allMatch(Character::isDigit)) {
+			if(portSeparator < 0)
+				return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port));
+			return new InetSocketAddress(address.substring(0, portSeparator), Integer.parseInt(port));
+		}
+		return UnixDomainSocketAddress.of(address);
+	}
+
+	/**
+	 * Runs a command on a server with the environment of this process.
+	 *
+	 * @return the exit status of the command
+	 */
+	public static int run(SocketAddress server, String[] args) throws IOException {
+		return run(server, args, Path.of("").toAbsolutePath(), System.getenv(), System.in, System.out, System.err);
+	}
+
+	/**
+	 * Runs a command on a server, {@code input} is read and forwarded from a separate
+	 * thread until it ends or until the command exits.
+	 *
+	 * @return the exit status of the command
+	 * @throws IOException if the server cannot be reached or if it closes the
+	 *         connection before the command exits
+	 */
+	public static int run(SocketAddress server, String[] args, Path workingDirectory, Map<String, String> environment,
+			InputStream input, OutputStream output, OutputStream error) throws IOException {
+		try (SocketChannel socket = SocketChannel.open(server)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(socket)));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(socket)));
+
+			out.writeInt(DaemonProtocol.MAGIC);
+			out.writeInt(args.length);
+			for(String arg : args)
+				DaemonProtocol.writeString(out, arg);
+			DaemonProtocol.writeString(out, workingDirectory.toAbsolutePath().toString());
+			out.writeInt(environment.size());
+			for(Entry<String, String> variable : environment.entrySet()) {
+				DaemonProtocol.writeString(out, variable.getKey());
+				DaemonProtocol.writeString(out, variable.getValue());
+			}
+			out.flush();
+
+			Thread.ofPlatform().daemon().name("command-client-input").start(() -> forwardInput(input, out));
+
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while(true) {
+				byte tag = in.readByte();
+				int length = in.readInt();
+				if(tag == DaemonProtocol.EXIT)
+					return in.readInt();
+				OutputStream target = tag == DaemonProtocol.STDERR ? error : output;
+				while(length > 0) {
+					int read = in.read(buffer, 0, Math.min(length, buffer.length));
+					if(read < 0)
+						throw new EOFException();
+					target.write(buffer, 0, read);
+					length -= read;
+				}
+				target.flush();
+			}
+		} catch (EOFException e) {
+			throw new IOException("The command server closed the connection", e);
+		}
+	}
+
+	private static void forwardInput(InputStream input, DataOutputStream out) {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try {
+			int read;
+			while((read = input.read(buffer)) != -1) {
+				if(read > 0)
+					DaemonProtocol.writeFrame(out, DaemonProtocol.STDIN, buffer, 0, read);
+			}
+			DaemonProtocol.writeFrame(out, DaemonProtocol.STDIN, buffer, 0, 0);
+		} catch (IOException e) {
+			// the command exited before reading all of its input
+		}
+	}
+
+}
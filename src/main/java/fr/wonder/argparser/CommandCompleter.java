@@ -0,0 +1,148 @@
+package fr.wonder.argparser;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import fr.wonder.argparser.utils.CommandTokenizer;
+
+/**
+ * Completes the token under the cursor of a partially typed command, see
+ * {@link ArgParser#complete(String, int)}.
+ *
+ * <p>
+ * The tokens before the cursor are read the way {@link ArgParser} reads them,
+ * without reporting errors, to find the branch reached and what the next token
+ * is. Candidates are then read from indexes built with the schema: sub branch
+ * names and option names from the range of the prefix in their
+ * {@link fr.wonder.argparser.utils.RadixTrie}, enum constants from their sorted
+ * names. Only file paths require listing a directory.
+ */
+final class CommandCompleter {
+
+	private final Branch root;
+	private final boolean allowAbbreviations;
+
+	CommandCompleter(Branch root, boolean allowAbbreviations) {
+		this.root = root;
+		this.allowAbbreviations = allowAbbreviations;
+	}
+
+	List<String> complete(String partialLine, int cursor) {
+		CharSequence line = partialLine.subSequence(0, cursor);
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		int tokenCount = tokenizer.tokenize(line);
+		// the last token is being typed if it ends at the cursor, the offsets of a
+		// token wrapped in quotes exclude its closing quote
+		int lastEnd = tokenCount == 0 ? -1 : tokenizer.tokenEnd(tokenCount-1);
+		boolean typing = tokenCount > 0 && (lastEnd == cursor
+				|| (lastEnd == cursor-1 && (line.charAt(lastEnd) == '"' || line.charAt(lastEnd) == '\'')));
+		int completeTokens = typing ? tokenCount-1 : tokenCount;
+		String prefix = typing ? tokenizer.getToken(tokenCount-1) : "";
+
+		Branch branch = root;
+		String valuedOption = null;
+		boolean foundOptionsEnd = false;
+		int argumentCount = 0;
+		for(int i = 0; i < completeTokens; i++) {
+			String token = tokenizer.getToken(i);
+			if(valuedOption != null) {
+				valuedOption = null;
+			} else if(i == 0 && ArgParserHelper.isHelpPrint(token)) {
+				continue;
+			} else if(token.startsWith("-") && !foundOptionsEnd) {
+				if(token.equals("--"))
+					foundOptionsEnd = true;
+				else if((branch.options.getKind(getOptionName(token)) & OptionTable.TAKES_VALUE) != 0)
+					valuedOption = getOptionName(token);
+			} else if(branch.entryPoint == null) {
+				branch = branch.getSubBranch(token, allowAbbreviations);
+				if(branch == null)
+					return List.of(); // unknown path, nothing can follow
+			} else {
+				argumentCount++;
+			}
+		}
+
+		List<String> candidates = new ArrayList<>();
+		EntryPointFunction entry = branch.entryPoint;
+		if(valuedOption != null) {
+			OptionSlot slot = entry == null ? null : entry.getOptions().getOptionSlot(valuedOption);
+			if(slot != null)
+				addValues(slot.elementType != null ? slot.elementType : slot.type, slot.converter, prefix, candidates);
+		} else if(prefix.startsWith("-") && !foundOptionsEnd) {
+			branch.options.addNamesStartingWith(prefix, candidates);
+		} else if(entry == null) {
+			candidates.addAll(Arrays.asList(branch.getSubBranchNames(prefix)));
+		} else {
+			addArgumentValues(entry, argumentCount, prefix, candidates);
+		}
+		return candidates;
+	}
+
+	/** Returns the name of an option token, the last shorthand of a cluster */
+	private static String getOptionName(String token) {
+		if(token.startsWith("--") || token.length() <= 2)
+			return token;
+		String name = OptionTable.getShortName(token.charAt(token.length()-1));
+		return name == null ? token : name;
+	}
+
+	private static void addArgumentValues(EntryPointFunction entry, int argumentCount, String prefix, List<String> out) {
+		int offset = entry.usesOptions() ? 1 : 0;
+		int parameterIndex = argumentCount + offset;
+		int lastParameter = entry.totalParameterCount()-1;
+		if(parameterIndex > lastParameter) {
+			if(!entry.acceptsVarArgs() || lastParameter < offset)
+				return;
+			parameterIndex = lastParameter;
+		}
+		ParameterDescriptor parameter = entry.getParameter(parameterIndex);
+		Class<?> type = parameter.type;
+		if(parameterIndex == lastParameter && entry.acceptsVarArgs())
+			type = entry.getLazyElementType() != null ? entry.getLazyElementType() : type.componentType();
+		addValues(type, parameter.converter, prefix, out);
+	}
+
+	private static void addValues(Class<?> type, ValueConverter<?> converter, String prefix, List<String> out) {
+		if(converter instanceof EnumConverter)
+			((EnumConverter) converter).addNamesStartingWith(prefix, out);
+		else if(type == File.class || type == Path.class)
+			addPathsStartingWith(prefix, out);
+		else if(type == boolean.class || type == Boolean.class)
+			addStartingWith(prefix, out, "false", "true");
+	}
+
+	private static void addStartingWith(String prefix, List<String> out, String... values) {
+		for(String value : values) {
+			if(value.startsWith(prefix))
+				out.add(value);
+		}
+	}
+
+	/**
+	 * Adds the files of the directory part of {@code prefix} which names start with
+	 * its last part, resolved against the working directory of the current
+	 * {@link CommandContext}. Directories end with a separator, hidden files are
+	 * only listed if the prefix of their name starts with a dot.
+	 */
+	private static void addPathsStartingWith(String prefix, List<String> out) {
+		int separator = Math.max(prefix.lastIndexOf('/'), prefix.lastIndexOf(File.separatorChar));
+		String directoryPart = prefix.substring(0, separator+1);
+		String namePrefix = prefix.substring(separator+1);
+		File directory = CommandContext.current().resolveFile(directoryPart.isEmpty() ? "." : directoryPart);
+		String[] names = directory.list();
+		if(names == null)
+			return;
+		Arrays.sort(names);
+		for(String name : names) {
+			if(!name.startsWith(namePrefix) || (name.startsWith(".") && !namePrefix.startsWith(".")))
+				continue;
+			boolean isDirectory = new File(directory, name).isDirectory();
+			out.add(directoryPart + name + (isDirectory ? "/" : ""));
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+package fr.wonder.argparser;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * The environment a command is run in: its working directory, environment
+ * variables and standard streams.
+ *
+ * <p>
+ * Commands run directly by the process use the process environment. Commands run
+ * by a {@link CommandServer} on behalf of a client use the client's environment,
+ * entry points that depend on it should read it from {@link #current()} instead
+ * of {@code System.getenv()} or {@code System.getProperty("user.dir")}. Relative
+ * {@code File} and {@code Path} arguments and options are resolved against the
+ * working directory of the current context.
+ */
+public final class CommandContext {
+
+	private static final InheritableThreadLocal<CommandContext> CURRENT = new InheritableThreadLocal<>();
+	private static final CommandContext PROCESS_CONTEXT = new CommandContext(Path.of(""), System.getenv());
+
+	private final Path workingDirectory;
+	private final Map<String, String> environment;
+	/** The standard streams, {@code null} for the process context which uses the current System streams */
+	private final InputStream input;
+	private final PrintStream output;
+	private final PrintStream error;
+	private volatile int exitStatus;
+	
+	private CommandContext(Path workingDirectory, Map<String, String> environment) {
+		this.workingDirectory = workingDirectory.toAbsolutePath();
+		this.environment = Map.copyOf(environment);
+		this.input = null;
+		this.output = null;
+		this.error = null;
+	}
+
+	public CommandContext(Path workingDirectory, Map<String, String> environment, InputStream input, PrintStream output, PrintStream error) {
+		this.workingDirectory = workingDirectory.toAbsolutePath();
+		this.environment = Map.copyOf(environment);
+		this.input = Objects.requireNonNull(input);
+		this.output = Objects.requireNonNull(output);
+		this.error = Objects.requireNonNull(error);
+	}
+
+	/**
+	 * Returns the context of the command running on the current thread, or the
+	 * context of the process if the thread is not running a command on behalf of
+	 * someone else. Threads started by a command inherit its context.
+	 */
+	public static CommandContext current() {
+		CommandContext context = CURRENT.get();
+		return context == null ? PROCESS_CONTEXT : context;
+	}
+
+	/** Returns the context set on the current thread, without falling back to the process context */
+	static CommandContext currentOrNull() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Runs {@code task} on the current thread with this context as the current
+	 * context, the previous context is restored afterwards.
+	 */
+	public <T> T call(Supplier<T> task) {
+		CommandContext previous = CURRENT.get();
+		CURRENT.set(this);
+		try {
+			return task.get();
+		} finally {
+			CURRENT.set(previous);
+		}
+	}
+
+	public Path getWorkingDirectory() {
+		return workingDirectory;
+	}
+
+	/**
+	 * Resolves a path given by the user against the working directory.
+	 */
+	public File resolveFile(String path) {
+		File file = new File(path);
+		return file.isAbsolute() ? file : new File(workingDirectory.toFile(), path);
+	}
+
+	/** Returns the environment variables, the returned map is immutable */
+	public Map<String, String> getEnvironment() {
+		return environment;
+	}
+
+	public String getEnvironment(String name) {
+		return environment.get(name);
+	}
+
+	public InputStream getInput() {
+		return input == null ? System.in : input;
+	}
+
+	public PrintStream getOutput() {
+		return output == null ? System.out : output;
+	}
+
+	public PrintStream getError() {
+		return error == null ? System.err : error;
+	}
+
+	/**
+	 * Sets the status the command will exit with, by default commands exit with 0
+	 * if they succeed and 1 if they fail. Entry points must not call
+	 * {@link System#exit(int)} when they can be run by a {@link CommandServer}, that
+	 * would stop the server.
+	 */
+	public void setExitStatus(int exitStatus) {
+		this.exitStatus = exitStatus;
+	}
+
+	public int getExitStatus() {
+		return exitStatus;
+	}
+
+}
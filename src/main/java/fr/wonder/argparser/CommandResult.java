@@ -0,0 +1,87 @@
+package fr.wonder.argparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import fr.wonder.argparser.utils.ErrorWrapper;
+
+/**
+ * The outcome of a command executed with {@link ArgParser#execute(String[])} or
+ * {@link ArgParser#runAll(java.util.Collection, java.util.concurrent.Executor)}.
+ * 
+ * <p>
+ * A command either succeeded, could not be parsed (see {@link #getErrors()}) or
+ * was parsed but its entry point threw an exception (see {@link #getFailure()}).
+ * Parsing errors can be read as text or as {@link Diagnostic}s.
+ */
+public final class CommandResult {
+	
+	private final String[] arguments;
+	private final ErrorWrapper errors;
+	private final Throwable failure;
+	
+	CommandResult(String[] arguments, ErrorWrapper errors, Throwable failure) {
+		this.arguments = arguments;
+		this.errors = errors;
+		this.failure = failure;
+	}
+	
+	public boolean isSuccess() {
+		return errors == null && failure == null;
+	}
+	
+	/**
+	 * Returns {@code true} if the command could not be parsed, in which case the
+	 * entry point was not called.
+	 */
+	public boolean hasParsingErrors() {
+		return errors != null;
+	}
+	
+	public String[] getArguments() {
+		return arguments;
+	}
+	
+	/**
+	 * Returns the parsing errors, as they would have been printed by
+	 * {@link ArgParser#run(String[])}, or an empty string if there were none.
+	 */
+	public String getErrors() {
+		if(errors == null)
+			return "";
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		errors.dump(new PrintStream(out, false, StandardCharsets.UTF_8));
+		return out.toString(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Returns the parsing errors as structured diagnostics, in the order they were
+	 * reported, or an empty list if there were none. Unlike {@link #getErrors()} no
+	 * message is rendered, usage lines printed along with the errors are not
+	 * diagnostics.
+	 */
+	public List<Diagnostic> getDiagnostics() {
+		if(errors == null)
+			return List.of();
+		return errors.getErrors(Diagnostic.class);
+	}
+	
+	/**
+	 * Returns the exception thrown by the entry point, or {@code null}.
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+	
+	@Override
+	public String toString() {
+		if(errors != null)
+			return "CommandResult[parsing errors]";
+		if(failure != null)
+			return "CommandResult[failure: " + failure + "]";
+		return "CommandResult[success]";
+	}
+	
+}
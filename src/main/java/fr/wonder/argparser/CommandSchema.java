@@ -0,0 +1,238 @@
+package fr.wonder.argparser;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import fr.wonder.argparser.CommandBinder.Declarations;
+import fr.wonder.argparser.CommandBinder.EntryDeclaration;
+import fr.wonder.argparser.annotations.EntryPoint;
+import fr.wonder.argparser.annotations.ProcessDoc;
+import fr.wonder.argparser.processor.DeclarationProcessor;
+
+/**
+ * The compiled declaration of a command line interface: its entry points tree and
+ * option classes.
+ * 
+ * <p>
+ * A schema is immutable once built, it can be shared by any number of threads
+ * without synchronization. Commands are run through an {@link ArgParser}, which
+ * carries the per-invocation state (output streams and callee instance) and is
+ * cheap to create from a schema:
+ * <blockquote><pre>
+ * CommandSchema schema = new CommandSchema("mycommand", MyCommands.class);
+ * // for each request
+ * new ArgParser(schema, new MyCommands(request))
+ *     .setOutputStream(requestOut)
+ *     .setErrorStream(requestErr)
+ *     .run(args);
+ * </pre></blockquote>
+ */
+public final class CommandSchema {
+	
+	final String progName;
+	final Class<?> entryPointClass;
+	/** The {@link ProcessDoc} of the entry point class, {@code null} if it has none */
+	final String processDoc;
+	private final CommandBinder binder;
+	
+	final Branch treeRoot;
+	final Map<Class<?>, ProcessOptions> optionClasses;
+	final HelpTexts help = new HelpTexts(this);
+	private final boolean requiresCalleeInstance;
+	
+	/**
+	 * Collects and validates the entry points declared by {@code entryPointClass}.
+	 * Entry point methods may be static or not, non-static ones can only be run by
+	 * parsers that have a callee instance.
+	 * 
+	 * <p>
+	 * If the class was compiled with the {@link DeclarationProcessor}, the schema is
+	 * built from its generated {@link CommandBinder} instead of being read by
+	 * reflection, see {@link #CommandSchema(String, CommandBinder)}.
+	 */
+	public CommandSchema(String progName, Class<?> entryPointClass) throws InvalidDeclarationError {
+		this(progName, entryPointClass, CommandBinder.find(Objects.requireNonNull(entryPointClass)));
+	}
+	
+	/**
+	 * Builds the schema declared by a binder generated by the
+	 * {@link DeclarationProcessor}. The declarations were validated at compile time,
+	 * only the converters of the arguments and options are looked up.
+	 */
+	public CommandSchema(String progName, CommandBinder binder) throws InvalidDeclarationError {
+		this(progName, binder.getEntryPointClass(), binder);
+	}
+	
+	private CommandSchema(String progName, Class<?> entryPointClass, CommandBinder binder) throws InvalidDeclarationError {
+		this.progName = Objects.requireNonNull(progName);
+		this.entryPointClass = Objects.requireNonNull(entryPointClass);
+		this.binder = binder;
+		Map<Class<?>, ProcessOptions> optionClasses = new HashMap<>();
+		BranchBuilder root = new BranchBuilder("");
+		if(binder == null) {
+			ProcessDoc doc = entryPointClass.getAnnotation(ProcessDoc.class);
+			this.processDoc = doc == null ? null : doc.doc();
+			this.requiresCalleeInstance = populateEntryPoints(root, optionClasses);
+		} else {
+			Declarations declarations = new Declarations();
+			binder.declare(declarations);
+			this.processDoc = declarations.processDoc;
+			this.requiresCalleeInstance = populateEntryPoints(root, optionClasses, declarations);
+		}
+		this.treeRoot = root.build();
+		this.optionClasses = Collections.unmodifiableMap(optionClasses);
+	}
+	
+	public String getProgName() {
+		return progName;
+	}
+	
+	public Class<?> getEntryPointClass() {
+		return entryPointClass;
+	}
+	
+	/**
+	 * Returns the binder this schema was built from, or {@code null} if the entry
+	 * point class was read by reflection.
+	 */
+	public CommandBinder getBinder() {
+		return binder;
+	}
+	
+	/**
+	 * Returns {@code true} if at least one entry point is not static, in which case
+	 * parsers using this schema must be given an instance of the entry point class.
+	 */
+	public boolean requiresCalleeInstance() {
+		return requiresCalleeInstance;
+	}
+	
+	/**
+	 * Checks that {@code calleeInstance} can be used to run the entry points of this
+	 * schema.
+	 * 
+	 * @throws IllegalArgumentException if the instance is missing or of the wrong type
+	 */
+	void validateCalleeInstance(Object calleeInstance) {
+		if(calleeInstance == null) {
+			if(requiresCalleeInstance)
+				throw new IllegalArgumentException("Entry points of " + entryPointClass + " cannot be accessed statically");
+		} else if(!entryPointClass.isInstance(calleeInstance)) {
+			throw new IllegalArgumentException("Callee " + calleeInstance + " is not an instance of " + entryPointClass);
+		}
+	}
+	
+	private boolean populateEntryPoints(BranchBuilder treeRoot, Map<Class<?>, ProcessOptions> optionClasses) throws InvalidDeclarationError {
+		boolean requiresCalleeInstance = false;
+		for(Method m : entryPointClass.getDeclaredMethods()) {
+			EntryPoint annotation = m.getAnnotation(EntryPoint.class);
+			if(annotation == null)
+				continue;
+			
+			String path = annotation.path();
+			
+			try {
+				BranchBuilder branch = getEntrylessBranch(treeRoot, path, true);
+				ArgParserHelper.validateEntryMethodParameters(m);
+				ProcessOptions opt = getOrCreateOptionClass(m, optionClasses);
+				branch.entryPoint = EntryPointFunction.createEntryPointFunction(m, opt);
+				requiresCalleeInstance |= !Modifier.isStatic(m.getModifiers());
+			} catch (NoSuchMethodException | SecurityException | IllegalArgumentException e) {
+				throw new InvalidDeclarationError("Cannot register branch '" + path + "' for method " + m, e);
+			}
+		}
+		if(treeRoot.subBranches.isEmpty() && treeRoot.entryPoint == null)
+			throw new InvalidDeclarationError("Class " + entryPointClass + " contains no entry points");
+		return requiresCalleeInstance;
+	}
+	
+	private boolean populateEntryPoints(BranchBuilder treeRoot, Map<Class<?>, ProcessOptions> optionClasses, Declarations declarations) throws InvalidDeclarationError {
+		boolean requiresCalleeInstance = false;
+		Map<Integer, ProcessOptions> holdersOptions = new HashMap<>();
+		for(EntryDeclaration entry : declarations.entryPoints) {
+			BranchBuilder branch = getEntrylessBranch(treeRoot, entry.path, false);
+			ProcessOptions opt = null;
+			if(entry.optionsHolder >= 0) {
+				opt = holdersOptions.get(entry.optionsHolder);
+				if(opt == null) {
+					opt = ProcessOptions.createOptionsClass(binder, declarations, entry.optionsHolder);
+					holdersOptions.put(entry.optionsHolder, opt);
+					optionClasses.put(entry.parameters.get(0).type, opt);
+				}
+			}
+			branch.entryPoint = EntryPointFunction.createEntryPointFunction(binder, entry, opt);
+			requiresCalleeInstance |= !entry.isStatic;
+		}
+		if(treeRoot.subBranches.isEmpty() && treeRoot.entryPoint == null)
+			throw new InvalidDeclarationError("Class " + entryPointClass + " contains no entry points");
+		return requiresCalleeInstance;
+	}
+	
+	/**
+	 * Returns the branch of {@code path}, which must not have an entry point yet.
+	 * Names are only validated for entry points read by reflection, those of a
+	 * binder were validated at compile time.
+	 */
+	private static BranchBuilder getEntrylessBranch(BranchBuilder treeRoot, String path, boolean validateNames) throws InvalidDeclarationError {
+		String[] parts = path.split(" ");
+		BranchBuilder current = treeRoot;
+		int pl = 0;
+		
+		if(!ArgParserHelper.isRootBranch(path)) {
+			for(String p : parts) {
+				if(validateNames && !ArgParserHelper.canBeBranchName(p))
+					throw new InvalidDeclarationError("Name '" + p + "' cannot be used as a branch path");
+				
+				if(current.entryPoint != null)
+					throw new InvalidDeclarationError("Branch '" + path.substring(0, pl) + "' has a declared entry point, it cannot have sub-paths");
+				current = current.subBranches.computeIfAbsent(p, _p -> new BranchBuilder(_p));
+				pl += p.length()+1;
+			}
+		}
+		
+		if(current.entryPoint != null)
+			throw new InvalidDeclarationError("Branch '" + path + "' already has an entry point");
+		if(!current.subBranches.isEmpty())
+			throw new InvalidDeclarationError("Branch '" + path + "' already has sub-paths, it cannot be an entry point");
+		return current;
+	}
+	
+	private static ProcessOptions getOrCreateOptionClass(Method method, Map<Class<?>, ProcessOptions> optionClasses) throws InvalidDeclarationError {
+		if(!ArgParserHelper.doesMethodUseOptions(method))
+			return null;
+		Class<?> optionsType = method.getParameterTypes()[0];
+		ProcessOptions optionsClass = optionClasses.get(optionsType);
+		if(optionsClass == null) {
+			optionsClass = ProcessOptions.createOptionsClass(optionsType);
+			optionClasses.put(optionsType, optionsClass);
+		}
+		return optionsClass;
+	}
+	
+}
+
+/**
+ * A mutable branch, used while collecting entry points.
+ */
+class BranchBuilder {
+	
+	final Map<String, BranchBuilder> subBranches = new HashMap<>(0);
+	final String path;
+	EntryPointFunction entryPoint = null;
+	
+	BranchBuilder(String path) {
+		this.path = Objects.requireNonNull(path);
+	}
+	
+	Branch build() {
+		Map<String, Branch> builtSubBranches = new HashMap<>(subBranches.size());
+		for(BranchBuilder subBranch : subBranches.values())
+			builtSubBranches.put(subBranch.path, subBranch.build());
+		return new Branch(path, entryPoint, builtSubBranches);
+	}
+	
+}
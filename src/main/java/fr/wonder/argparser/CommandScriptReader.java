@@ -0,0 +1,78 @@
+package fr.wonder.argparser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the commands of a script one at a time, only the current command is
+ * kept in memory.
+ * 
+ * <p>
+ * A script contains one command per line, blank lines and lines starting with
+ * {@code #} are ignored. A line ending with a backslash continues on the next
+ * line, the backslash is replaced by a space.
+ * <blockquote><pre>
+ * # create the default users
+ * user add alice --admin
+ * user add bob \
+ *   --groups "dev ops"
+ * </pre></blockquote>
+ */
+class CommandScriptReader {
+	
+	private final BufferedReader reader;
+	private final StringBuilder command = new StringBuilder();
+	private int lineNumber = 0;
+	private int commandLineNumber = 0;
+	
+	CommandScriptReader(Reader reader) {
+		this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+	}
+	
+	/**
+	 * Reads the next command, the returned builder is reused by the next call.
+	 * 
+	 * @return the next command or {@code null} if the end of the script was reached
+	 */
+	CharSequence nextCommand() throws IOException {
+		command.setLength(0);
+		String line;
+		while((line = reader.readLine()) != null) {
+			lineNumber++;
+			if(command.length() == 0) {
+				if(isBlankOrComment(line))
+					continue;
+				commandLineNumber = lineNumber;
+			}
+			if(line.endsWith("\\")) {
+				command.append(line, 0, line.length()-1).append(' ');
+			} else {
+				command.append(line);
+				return command;
+			}
+		}
+		// a continued last line
+		return command.length() == 0 ? null : command;
+	}
+	
+	/**
+	 * Returns the line number (starting at 1) of the first line of the last command
+	 * returned by {@link #nextCommand()}.
+	 */
+	int getCommandLineNumber() {
+		return commandLineNumber;
+	}
+	
+	private static boolean isBlankOrComment(String line) {
+		for(int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if(c == '#')
+				return true;
+			if(c != ' ' && c != '\t')
+				return false;
+		}
+		return true;
+	}
+	
+}
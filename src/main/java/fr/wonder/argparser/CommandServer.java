@@ -0,0 +1,280 @@
+package fr.wonder.argparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import fr.wonder.argparser.DaemonProtocol.FrameInputStream;
+import fr.wonder.argparser.DaemonProtocol.FrameOutputStream;
+import fr.wonder.argparser.DaemonProtocol.HeaderReader;
+
+/**
+ * Keeps a command line interface resident and runs commands sent by
+ * {@link CommandClient}s, so that commands do not pay for the jvm startup and the
+ * entry points discovery each time they are called.
+ *
+ * <p>
+ * The server listens on a unix domain socket or on a loopback address. Each
+ * connection runs one command on its own virtual thread, with the arguments,
+ * working directory, environment and standard streams of the client, see
+ * {@link CommandContext}. While servers are open, {@code System.out} and
+ * {@code System.err} are replaced by streams that write to the output of the
+ * command running on the current thread, entry points can keep printing with
+ * them. The original streams are restored when the last server is closed.
+ *
+ * <blockquote><pre>
+ * // server side
+ * CommandServer.start(new CommandSchema("mycommand", MyCommands.class), null,
+ *         UnixDomainSocketAddress.of("/tmp/mycommand.sock"));
+ * // client side, a thin main that forwards its arguments and exits with the command status
+ * java -Dargparser.daemon=/tmp/mycommand.sock fr.wonder.argparser.CommandClient add somefile
+ * </pre></blockquote>
+ *
+ * <p>
+ * The server does not authenticate its clients, anyone that can connect to the
+ * socket can run commands, this is why only loopback addresses are accepted. Unix
+ * domain sockets should be created in a directory only accessible to their owner.
+ */
+public final class CommandServer implements AutoCloseable {
+
+	/** The number of open servers, system streams are replaced while it is not 0 */
+	private static int openServers;
+	private static PrintStream originalOut, originalErr;
+	private static PrintStream installedOut, installedErr;
+
+	private final CommandSchema schema;
+	private final Object calleeInstance;
+	private final ServerSocketChannel channel;
+	private final SocketAddress address;
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private boolean closed;
+
+	private CommandServer(CommandSchema schema, Object calleeInstance, ServerSocketChannel channel) throws IOException {
+		this.schema = schema;
+		this.calleeInstance = calleeInstance;
+		this.channel = channel;
+		this.address = channel.getLocalAddress();
+	}
+
+	/**
+	 * Starts a server running the commands of {@code schema} on
+	 * {@code calleeInstance}, entry points are called concurrently and must be
+	 * thread safe.
+	 *
+	 * @param address a {@link UnixDomainSocketAddress} or a loopback
+	 *        {@link InetSocketAddress}, use port 0 to pick a free port and
+	 *        {@link #getAddress()} to retrieve it
+	 * @throws IllegalArgumentException if the address is not local or if the
+	 *         callee instance is invalid for the schema
+	 * @throws IOException if the server socket cannot be bound
+	 */
+	public static CommandServer start(CommandSchema schema, Object calleeInstance, SocketAddress address) throws IOException {
+		Objects.requireNonNull(schema);
+		schema.validateCalleeInstance(calleeInstance);
+		ServerSocketChannel channel;
+		if(address instanceof UnixDomainSocketAddress) {
+			channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		} else if(address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress().isLoopbackAddress()) {
+			channel = ServerSocketChannel.open();
+		} else {
+			throw new IllegalArgumentException("Commands can only be served on a unix domain socket or a loopback address, got " + address);
+		}
+		try {
+			channel.bind(address);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		installSystemStreams();
+		CommandServer server = new CommandServer(schema, calleeInstance, channel);
+		Thread.ofPlatform()
+				.name("command-server-" + schema.progName)
+				.daemon()
+				.start(server::acceptConnections);
+		return server;
+	}
+
+	/**
+	 * Replaces the system streams by streams that write to the output of the command
+	 * running on the current thread, or to the original streams for threads that do
+	 * not run a command.
+	 */
+	private static synchronized void installSystemStreams() {
+		if(openServers++ > 0)
+			return;
+		originalOut = System.out;
+		originalErr = System.err;
+		installedOut = new PrintStream(new ContextOutputStream(originalOut, false), true);
+		installedErr = new PrintStream(new ContextOutputStream(originalErr, true), true);
+		System.setOut(installedOut);
+		System.setErr(installedErr);
+	}
+	
+	/**
+	 * Restores the original system streams once the last server is closed, unless
+	 * they were replaced again since they were installed.
+	 */
+	private static synchronized void restoreSystemStreams() {
+		if(--openServers > 0)
+			return;
+		if(System.out == installedOut)
+			System.setOut(originalOut);
+		if(System.err == installedErr)
+			System.setErr(originalErr);
+		originalOut = originalErr = installedOut = installedErr = null;
+	}
+
+	public SocketAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Stops accepting connections, commands that are already running are not
+	 * interrupted. Closing the last open server restores the system streams, output
+	 * printed afterwards by commands still running goes to the original streams.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if(closed)
+				return;
+			closed = true;
+		}
+		try {
+			channel.close();
+			executor.shutdown();
+			if(address instanceof UnixDomainSocketAddress)
+				Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+		} finally {
+			restoreSystemStreams();
+		}
+	}
+
+	private void acceptConnections() {
+		while(channel.isOpen()) {
+			try {
+				SocketChannel socket = channel.accept();
+				executor.execute(() -> handleConnection(socket));
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				System.err.println("Unable to accept a command connection: " + e);
+			}
+		}
+	}
+
+	private void handleConnection(SocketChannel socket) {
+		try (socket) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(socket)));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(socket)));
+
+			if(in.readInt() != DaemonProtocol.MAGIC)
+				throw new IOException("Invalid command client");
+			HeaderReader header = new HeaderReader(in);
+			String[] args = new String[header.readCount("argument")];
+			for(int i = 0; i < args.length; i++)
+				args[i] = header.readString();
+			Path workingDirectory;
+			try {
+				workingDirectory = Path.of(header.readString());
+			} catch (InvalidPathException e) {
+				throw new IOException("Invalid working directory", e);
+			}
+			if(!workingDirectory.isAbsolute())
+				throw new IOException("Relative working directory " + workingDirectory);
+			int envSize = header.readCount("environment variable");
+			Map<String, String> environment = new HashMap<>(envSize);
+			for(int i = 0; i < envSize; i++)
+				environment.put(header.readString(), header.readString());
+
+			PrintStream output = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, DaemonProtocol.STDOUT)), true);
+			PrintStream error = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, DaemonProtocol.STDERR)), true);
+			CommandContext context = new CommandContext(workingDirectory, environment, new FrameInputStream(in), output, error);
+
+			int status = context.call(() -> runCommand(context, args));
+			output.flush();
+			error.flush();
+			DaemonProtocol.writeExitFrame(out, status);
+			// closing the socket with unread input would reset the connection before
+			// the client reads the exit status, wait for the client to close it first
+			socket.shutdownOutput();
+			while(in.read() != -1)
+				in.skip(Long.MAX_VALUE);
+		} catch (IOException e) {
+			// the client disconnected, there is no one to report to
+		}
+	}
+
+	private int runCommand(CommandContext context, String[] args) {
+		ArgParser parser = new ArgParser(schema, calleeInstance)
+				.setOutputStream(context.getOutput())
+				.setErrorStream(context.getError());
+		try {
+			if(!parser.run(args))
+				return 1;
+		} catch (Throwable t) {
+			t.printStackTrace(context.getError());
+			return context.getExitStatus() == 0 ? 1 : context.getExitStatus();
+		}
+		return context.getExitStatus();
+	}
+
+}
+
+/**
+ * Forwards bytes to the output or error stream of the command running on the
+ * current thread.
+ */
+final class ContextOutputStream extends OutputStream {
+
+	private final OutputStream fallback;
+	private final boolean isError;
+
+	ContextOutputStream(OutputStream fallback, boolean isError) {
+		this.fallback = fallback;
+		this.isError = isError;
+	}
+
+	private OutputStream target() {
+		CommandContext context = CommandContext.currentOrNull();
+		if(context == null)
+			return fallback;
+		return isError ? context.getError() : context.getOutput();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		target().write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		target().write(b, off, len);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		target().flush();
+	}
+
+}
@@ -0,0 +1,205 @@
+package fr.wonder.argparser;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The wire format used between a {@link CommandClient} and a {@link CommandServer}.
+ *
+ * <p>
+ * The client opens the connection with a header: the arguments, the working
+ * directory and the environment variables. Then both sides exchange frames made
+ * of a tag byte, a length and a payload. The client sends {@link #STDIN} frames,
+ * an empty one marks the end of the input. The server sends {@link #STDOUT} and
+ * {@link #STDERR} frames and ends the connection with an {@link #EXIT} frame which
+ * payload is the exit status.
+ *
+ * <p>
+ * Clients do not have to run on a jvm, {@code src/main/c/argparser-client.c} is a
+ * native one. Integers are 4 bytes, big-endian and signed, strings are an integer
+ * byte length followed by that many bytes of UTF-8 without terminator:
+ *
+ * <pre>
+ * header  = int 0x41524744 ("ARGD")
+ *           int argc, argc * string        the arguments, without the program name
+ *           string cwd                     an absolute path
+ *           int envc, envc * (string name, string value)
+ * frame   = byte tag, int length, length * byte
+ * </pre>
+ *
+ * <ul>
+ * <li>{@code 'I'} client to server, standard input. A frame of length 0, or the
+ * client shutting its side of the connection down, ends the input.</li>
+ * <li>{@code 'O'} and {@code 'E'} server to client, standard output and error.</li>
+ * <li>{@code 'X'} server to client, length 4, the exit status as an int. It is the
+ * last frame, the server then shuts its side of the connection down and waits for
+ * the client to close it.</li>
+ * </ul>
+ *
+ * Headers with more than {@link #MAX_COUNT} arguments or variables, a string
+ * longer than {@link #MAX_STRING_LENGTH} bytes, more than {@link #MAX_HEADER_SIZE}
+ * bytes of strings or a relative working directory are rejected by closing the
+ * connection. The server does not read input the command does not ask for, a
+ * client must keep reading output frames while it has input to send.
+ */
+final class DaemonProtocol {
+
+	static final int MAGIC = 0x41524744; // "ARGD"
+
+	static final byte STDIN = 'I';
+	static final byte STDOUT = 'O';
+	static final byte STDERR = 'E';
+	static final byte EXIT = 'X';
+
+	/** The maximum number of arguments and of environment variables of a command */
+	static final int MAX_COUNT = 1 << 16;
+	/** The maximum length in bytes of a string of the header */
+	static final int MAX_STRING_LENGTH = 1 << 20;
+	/** The maximum length in bytes of all the strings of the header */
+	static final int MAX_HEADER_SIZE = 16 << 20;
+
+	private DaemonProtocol() {}
+
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads the header sent by a client, counts and lengths are validated before
+	 * anything is allocated so that a client cannot make the server allocate more
+	 * than {@link #MAX_HEADER_SIZE} bytes.
+	 */
+	static final class HeaderReader {
+
+		private final DataInputStream in;
+		private int remainingBytes = MAX_HEADER_SIZE;
+
+		HeaderReader(DataInputStream in) {
+			this.in = in;
+		}
+
+		int readCount(String what) throws IOException {
+			int count = in.readInt();
+			if(count < 0 || count > MAX_COUNT)
+				throw new IOException("Invalid " + what + " count " + count);
+			return count;
+		}
+
+		String readString() throws IOException {
+			int length = in.readInt();
+			if(length < 0 || length > MAX_STRING_LENGTH)
+				throw new IOException("Invalid string length " + length);
+			if(length > remainingBytes)
+				throw new IOException("Header larger than " + MAX_HEADER_SIZE + " bytes");
+			remainingBytes -= length;
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+	}
+
+	static void writeFrame(DataOutputStream out, byte tag, byte[] bytes, int offset, int length) throws IOException {
+		synchronized (out) {
+			out.writeByte(tag);
+			out.writeInt(length);
+			out.write(bytes, offset, length);
+			out.flush();
+		}
+	}
+
+	static void writeExitFrame(DataOutputStream out, int status) throws IOException {
+		synchronized (out) {
+			out.writeByte(EXIT);
+			out.writeInt(4);
+			out.writeInt(status);
+			out.flush();
+		}
+	}
+
+	/**
+	 * An output stream writing each chunk as a frame of the given tag.
+	 */
+	static final class FrameOutputStream extends OutputStream {
+
+		private final DataOutputStream out;
+		private final byte tag;
+
+		FrameOutputStream(DataOutputStream out, byte tag) {
+			this.out = out;
+			this.tag = tag;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if(len > 0)
+				writeFrame(out, tag, b, off, len);
+		}
+
+	}
+
+	/**
+	 * An input stream reading the payloads of consecutive {@link #STDIN} frames, an
+	 * empty frame or the end of the connection ends the stream.
+	 */
+	static final class FrameInputStream extends InputStream {
+
+		private final DataInputStream in;
+		private int remaining;
+		private boolean ended;
+
+		FrameInputStream(DataInputStream in) {
+			this.in = in;
+		}
+
+		private boolean nextFrame() throws IOException {
+			while(remaining == 0 && !ended) {
+				try {
+					byte tag = in.readByte();
+					remaining = in.readInt();
+					if(tag != STDIN || remaining < 0)
+						throw new IOException("Unexpected frame " + (char) tag);
+					ended = remaining == 0;
+				} catch (EOFException e) {
+					ended = true;
+				}
+			}
+			return !ended || remaining > 0;
+		}
+
+		@Override
+		public synchronized int read() throws IOException {
+			if(!nextFrame())
+				return -1;
+			remaining--;
+			return in.read();
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0)
+				return 0;
+			if(!nextFrame())
+				return -1;
+			int read = in.read(b, off, Math.min(len, remaining));
+			if(read < 0)
+				throw new EOFException("Truncated input frame");
+			remaining -= read;
+			return read;
+		}
+
+	}
+
+}
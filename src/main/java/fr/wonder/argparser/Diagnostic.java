@@ -0,0 +1,152 @@
+package fr.wonder.argparser;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A machine-readable parsing error, see {@link CommandResult#getDiagnostics()}.
+ *
+ * <p>
+ * The message and the expected values are only built when they are read, so
+ * that rejecting a command does not format text that nobody reads.
+ *
+ * <p>
+ * Token indices are indices in the arguments of the command after
+ * {@code @argfile} expansion, or -1 if the error is not about a given argument
+ * (a missing argument for example). {@link Code#ARGUMENT_FILE} errors use the
+ * index of the {@code @argfile} argument before expansion.
+ *
+ * <p>
+ * Diagnostics are the errors of {@link fr.wonder.argparser.utils.ErrorWrapper}s,
+ * as suppliers of their message.
+ */
+public final class Diagnostic implements Supplier<String> {
+
+	public enum Code {
+		/** A word of the command path is not a known command, see {@link Diagnostic#getExpected()} */
+		UNKNOWN_COMMAND,
+		/** An abbreviated word of the command path matches several commands */
+		AMBIGUOUS_COMMAND,
+		/** The command path does not lead to an entry point */
+		INCOMPLETE_COMMAND,
+		/** A required argument was not given, the subject is the argument name */
+		MISSING_ARGUMENT,
+		/** More arguments were given than the entry point takes */
+		TOO_MANY_ARGUMENTS,
+		/** An argument or option value cannot be converted to the expected type */
+		INVALID_VALUE,
+		/** An option is not declared by the option class of the entry point */
+		UNKNOWN_OPTION,
+		/** Options were given to an entry point that does not take any */
+		UNEXPECTED_OPTION,
+		/** An option that takes a value was not given one */
+		MISSING_OPTION_VALUE,
+		/** An option that only takes a value for some commands was given before the command path */
+		AMBIGUOUS_OPTION,
+		/** An {@code @argfile} could not be read */
+		ARGUMENT_FILE,
+	}
+
+	private final Code code;
+	private final int tokenIndex;
+	private final String subject;
+	private final String value;
+	private final Supplier<String> expected;
+	private final Supplier<List<String>> suggestions;
+	private final Supplier<String> message;
+	private String renderedMessage;
+
+	Diagnostic(Code code, int tokenIndex, String subject, String value, Supplier<String> expected, Supplier<String> message) {
+		this(code, tokenIndex, subject, value, expected, null, message);
+	}
+
+	Diagnostic(Code code, int tokenIndex, String subject, String value, Supplier<String> expected,
+			Supplier<List<String>> suggestions, Supplier<String> message) {
+		this.code = Objects.requireNonNull(code);
+		this.tokenIndex = tokenIndex;
+		this.subject = subject;
+		this.value = value;
+		this.expected = expected;
+		this.suggestions = suggestions;
+		this.message = Objects.requireNonNull(message);
+	}
+
+	public Code getCode() {
+		return code;
+	}
+
+	/** Returns the index of the offending argument, or -1 */
+	public int getTokenIndex() {
+		return tokenIndex;
+	}
+
+	/**
+	 * Returns what the error is about: the name of the argument, the option or
+	 * the command path, or {@code null}.
+	 */
+	public String getSubject() {
+		return subject;
+	}
+
+	/** Returns the offending argument or value, or {@code null} */
+	public String getValue() {
+		return value;
+	}
+
+	/**
+	 * Returns what was expected, the name of a type or the accepted values
+	 * separated by {@code |}, or {@code null}.
+	 */
+	public String getExpected() {
+		return expected == null ? null : expected.get();
+	}
+
+	/**
+	 * Returns the names nearest to a mistyped command word, option or enum value,
+	 * sorted, or an empty list.
+	 */
+	public List<String> getSuggestions() {
+		return suggestions == null ? List.of() : suggestions.get();
+	}
+
+	/** Returns the error as it is printed */
+	public String getMessage() {
+		if(renderedMessage == null)
+			renderedMessage = message.get();
+		return renderedMessage;
+	}
+
+	/** Same as {@link #getMessage()} */
+	@Override
+	public String get() {
+		return getMessage();
+	}
+
+	@Override
+	public String toString() {
+		return code + "@" + tokenIndex + ": " + getMessage();
+	}
+
+	/**
+	 * Creates the diagnostic of a value that cannot be converted, its message is the
+	 * one of the conversion error.
+	 */
+	static Diagnostic invalidValue(ArgumentError error, int tokenIndex, String subject, String value, Class<?> type, ValueConverter<?> converter) {
+		Supplier<List<String>> suggestions = null;
+		if(converter instanceof EnumConverter && value != null)
+			suggestions = () -> ((EnumConverter) converter).suggest(value);
+		return new Diagnostic(Code.INVALID_VALUE, tokenIndex, subject, value, describeType(type, converter), suggestions, error::getMessage);
+	}
+
+	/**
+	 * Describes the values accepted by a converter, the constant names of enums or
+	 * the name of the type.
+	 */
+	static Supplier<String> describeType(Class<?> type, ValueConverter<?> converter) {
+		if(converter instanceof EnumConverter)
+			return ((EnumConverter) converter)::getChoices;
+		return type::getSimpleName;
+	}
+
+}
@@ -1,62 +1,193 @@
 package fr.wonder.argparser;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
+import fr.wonder.argparser.CommandBinder.EntryDeclaration;
+import fr.wonder.argparser.CommandBinder.ParameterDeclaration;
 import fr.wonder.argparser.annotations.Argument;
 import fr.wonder.argparser.annotations.Arguments;
+import fr.wonder.argparser.annotations.EntryPoint;
+import fr.wonder.argparser.utils.StringUtils;
 
+/**
+ * An entry point method with everything needed to call it precomputed. Arguments
+ * are read from {@link ParameterDescriptor}s built once per method, never from
+ * the reflect api which copies its arrays on each call.
+ *
+ * <p>
+ * Entry points are built from an {@link EntryDeclaration}, read from the
+ * annotations of the method or declared by the generated {@link CommandBinder}
+ * of the schema, which then also calls the method.
+ */
 class EntryPointFunction {
 	
-	private final Method method;
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+	
+	private final String path;
+	private final String help;
+	/** The entry point method, used in error messages */
+	private final String description;
+	private final MethodHandle invoker;
+	private final CommandBinder binder;
+	private final int binderIndex;
 	private final ProcessOptions options;
-	private final Object[] defaultArgumentValues;
-	private final Argument[] argumentsAnnotations;
+	/** The descriptors of all the parameters, including the option class one */
+	private final ParameterDescriptor[] parameters;
 	private final int optionalArgsCount;
+	private final boolean acceptsVarArgs;
+	/** The element type of the last parameter if it is lazy, see {@link ArgParserHelper#isLazyArgumentType(Class)} */
+	private final Class<?> lazyElementType;
+	/** The raw default values of the lazy parameter, converted on demand for each invocation */
+	private final List<String> lazyDefaultValues;
 	
-	private EntryPointFunction(Method method, ProcessOptions options, Argument[] argumentsAnnotations,
-			Object[] defaultValues, int optionalArgsCount) {
-		this.method = Objects.requireNonNull(method);
+	private EntryPointFunction(EntryDeclaration declaration, MethodHandle invoker, CommandBinder binder, ProcessOptions options,
+			ParameterDescriptor[] parameters, int optionalArgsCount, Class<?> lazyElementType, List<String> lazyDefaultValues) {
+		this.path = declaration.path;
+		this.help = declaration.help;
+		this.description = declaration.description;
+		this.invoker = invoker;
+		this.binder = binder;
+		this.binderIndex = declaration.index;
 		this.options = options;
-		this.argumentsAnnotations = argumentsAnnotations;
-		this.defaultArgumentValues = Objects.requireNonNull(defaultValues);
-		this.optionalArgsCount = Objects.requireNonNull(optionalArgsCount);
+		this.parameters = Objects.requireNonNull(parameters);
+		this.optionalArgsCount = optionalArgsCount;
+		this.lazyElementType = lazyElementType;
+		this.lazyDefaultValues = lazyDefaultValues;
+		this.acceptsVarArgs = lazyElementType != null ||
+				(parameters.length > 0 && parameters[parameters.length-1].type.isArray());
 	}
 	
+	/**
+	 * Creates the entry point function of {@code method}, the method must have been
+	 * validated and made accessible beforehand.
+	 */
 	public static EntryPointFunction createEntryPointFunction(Method method, ProcessOptions options) throws InvalidDeclarationError {
-		boolean usesOptions = ArgParserHelper.doesMethodUseOptions(method);
-		
-		Object[] defaultValues = new Object[method.getParameterCount()];
+		MethodHandle invoker = createInvoker(method);
+		EntryPoint entryPoint = method.getAnnotation(EntryPoint.class);
+		EntryDeclaration declaration = new EntryDeclaration(-1, entryPoint.path(), entryPoint.help(),
+				Modifier.isStatic(method.getModifiers()), -1, method.toString());
+		Parameter[] methodParameters = method.getParameters();
 		Argument[] argumentsAnnotations = getArgumentAnnotations(method);
-		
-		if(argumentsAnnotations == null)
-			return new EntryPointFunction(method, options, null, defaultValues, 0);
+		int lastParameter = methodParameters.length-1;
+		for(int i = 0; i <= lastParameter; i++) {
+			Parameter parameter = methodParameters[i];
+			Argument annotation = argumentsAnnotations == null ? null : argumentsAnnotations[i];
+			Class<?> elementType = i == lastParameter && ArgParserHelper.isLazyArgumentType(parameter.getType()) ?
+					ArgParserHelper.getElementType(parameter.getParameterizedType()) : null;
+			declaration.parameter(parameter.getName(),
+					annotation == null ? parameter.getName() : annotation.name(),
+					annotation == null ? "" : annotation.desc(),
+					parameter.getType(),
+					elementType,
+					annotation == null ? "" : annotation.defaultValue());
+		}
+		return createEntryPointFunction(declaration, options, invoker, null);
+	}
+	
+	/**
+	 * Creates the function of an entry point declared by {@code binder}, the
+	 * declaration was validated at compile time.
+	 */
+	public static EntryPointFunction createEntryPointFunction(CommandBinder binder, EntryDeclaration declaration, ProcessOptions options) throws InvalidDeclarationError {
+		return createEntryPointFunction(declaration, options, null, binder);
+	}
+	
+	private static EntryPointFunction createEntryPointFunction(EntryDeclaration declaration, ProcessOptions options,
+			MethodHandle invoker, CommandBinder binder) throws InvalidDeclarationError {
+		boolean usesOptions = options != null;
+		ParameterDeclaration[] declaredParameters = declaration.parameters.toArray(ParameterDeclaration[]::new);
+		int lastParameter = declaredParameters.length-1;
+		Class<?> lazyElementType = lastParameter >= 0 && ArgParserHelper.isLazyArgumentType(declaredParameters[lastParameter].type) ?
+				declaredParameters[lastParameter].elementType : null;
+		List<String> lazyDefaultValues = null;
+		ValueConverter<?>[] converters = getConverters(declaration, declaredParameters, usesOptions, lazyElementType);
+		Object[] defaultValues = new Object[declaredParameters.length];
 		
 		int optionalArgsCount = 0;
-		for(int i = method.getParameterCount()-1; i >= (usesOptions?1:0) && !argumentsAnnotations[i].defaultValue().isEmpty(); i--) {
-			Parameter parameter = method.getParameters()[i];
-			Argument annotation = argumentsAnnotations[i];
+		for(int i = lastParameter; i >= (usesOptions?1:0) && !declaredParameters[i].defaultValue.isEmpty(); i--) {
+			ParameterDeclaration parameter = declaredParameters[i];
 			
 			try {
-				defaultValues[i] = OptionsHelper.parseOptionValue(
-						annotation.defaultValue(),
-						parameter.getType(),
-						annotation.name());
+				if(i == lastParameter && lazyElementType != null) {
+					// convert the default values once to validate them, they are converted again on demand
+					lazyDefaultValues = Argument.DEFAULT_EMPTY.equals(parameter.defaultValue) ?
+							List.of() : List.of(StringUtils.splitCLIArgs(parameter.defaultValue));
+					for(String value : lazyDefaultValues)
+						converters[i].convert(value, parameter.name);
+				} else {
+					// the converter of an array parameter converts its elements, not its default value
+					defaultValues[i] = OptionsHelper.convertDefaultValue(
+							parameter.defaultValue,
+							parameter.type,
+							parameter.type.isArray() ? ValueConverters.get(parameter.type) : converters[i],
+							parameter.name);
+				}
 				optionalArgsCount++;
 			} catch (ArgumentError e) {
-				throw new InvalidDeclarationError("Invalid default value '" + annotation.defaultValue() +
-						"' for argument '" + parameter.getName() + "' on method " + method, e);
+				throw new InvalidDeclarationError("Invalid default value '" + parameter.defaultValue +
+						"' for argument '" + parameter.javaName + "' on method " + declaration.description, e);
 			}
 		}
-		for(int i = method.getParameterCount()-1-optionalArgsCount; i >= 0; i--) {
-			if(argumentsAnnotations[i] != null && !argumentsAnnotations[i].defaultValue().isEmpty())
-				throw new InvalidDeclarationError("Parameter '" + method.getParameters()[i].getName() +
-						"' has a default value but a later parameter does not specify one on method " + method);
+		for(int i = lastParameter-optionalArgsCount; i >= 0; i--) {
+			if(!declaredParameters[i].defaultValue.isEmpty())
+				throw new InvalidDeclarationError("Parameter '" + declaredParameters[i].javaName +
+						"' has a default value but a later parameter does not specify one on method " + declaration.description);
 		}
 		
-		return new EntryPointFunction(method, options, argumentsAnnotations, defaultValues, optionalArgsCount);
+		ParameterDescriptor[] parameters = new ParameterDescriptor[declaredParameters.length];
+		for(int i = 0; i < parameters.length; i++) {
+			ParameterDeclaration parameter = declaredParameters[i];
+			parameters[i] = new ParameterDescriptor(parameter.name, parameter.desc, parameter.type, converters[i], defaultValues[i]);
+		}
+		
+		return new EntryPointFunction(declaration, invoker, binder, options, parameters, optionalArgsCount, lazyElementType, lazyDefaultValues);
+	}
+	
+	/**
+	 * Resolves the converters of the parameters once, so that arguments are converted
+	 * without looking up their type.
+	 */
+	private static ValueConverter<?>[] getConverters(EntryDeclaration declaration, ParameterDeclaration[] parameters,
+			boolean usesOptions, Class<?> lazyElementType) throws InvalidDeclarationError {
+		ValueConverter<?>[] converters = new ValueConverter<?>[parameters.length];
+		for(int i = usesOptions ? 1 : 0; i < parameters.length; i++) {
+			Class<?> type = parameters[i].type;
+			if(i == parameters.length-1 && lazyElementType != null)
+				type = lazyElementType;
+			else if(type.isArray())
+				type = type.componentType();
+			converters[i] = ValueConverters.get(type);
+			if(converters[i] == null)
+				throw new InvalidDeclarationError("No converter for parameter " + parameters[i].javaName + " of type " + type.getName() + " on method " + declaration.description);
+		}
+		return converters;
+	}
+	
+	/**
+	 * Compiles the method into a handle of type {@code (Object, Object[])Object}
+	 * taking the receiver and the arguments, so that invocations do not go through
+	 * the reflect api (no access checks, no argument array checks and no exception
+	 * wrapping). The receiver is not bound so that the function can be shared by
+	 * parsers with different callee instances, it is ignored for static methods.
+	 */
+	private static MethodHandle createInvoker(Method method) throws InvalidDeclarationError {
+		try {
+			MethodHandle handle = MethodHandles.lookup().unreflect(method).asFixedArity()
+					.asSpreader(Object[].class, method.getParameterCount());
+			if(Modifier.isStatic(method.getModifiers()))
+				handle = MethodHandles.dropArguments(handle, 0, Object.class);
+			return handle.asType(INVOKER_TYPE);
+		} catch (IllegalAccessException | IllegalArgumentException | ClassCastException e) {
+			throw new InvalidDeclarationError("Cannot create an invoker for method " + method, e);
+		}
 	}
 
 	private static Argument[] getArgumentAnnotations(Method m) throws InvalidDeclarationError {
@@ -85,47 +216,100 @@ class EntryPointFunction {
 	}
 	
 	public int normalParamCount() {
-		return method.getParameterCount() - (usesOptions()?1:0);
+		return parameters.length - (usesOptions()?1:0);
 	}
 	
 	public int optionalParamCount() {
 		return optionalArgsCount;
 	}
 	
+	public ParameterDescriptor getParameter(int argIndex) {
+		return parameters[argIndex];
+	}
+	
 	public String getParamName(int argIndex) {
-		return argumentsAnnotations == null ?
-				method.getParameters()[argIndex].getName() :
-				argumentsAnnotations[argIndex].name();
+		return parameters[argIndex].name;
 	}
 	
 	public Class<?> getParamType(int argIndex) {
-		return method.getParameterTypes()[argIndex];
+		return parameters[argIndex].type;
 	}
-
+	
 	public String getParamDesc(int argIndex) {
-		return argumentsAnnotations == null ? "" :
-			argumentsAnnotations[argIndex].desc();
+		return parameters[argIndex].desc;
 	}
 	
+	/**
+	 * Returns the default value of a parameter, or {@code null} if it has none. The
+	 * default value of a lazy parameter is a new instance for each call.
+	 */
 	public Object getParamDefaultValue(int argIndex) {
-		return defaultArgumentValues[argIndex];
+		if(lazyDefaultValues != null && argIndex == parameters.length-1)
+			return createLazyArgument(lazyDefaultValues);
+		return parameters[argIndex].defaultValue;
+	}
+	
+	/**
+	 * Returns the element type of the last parameter if it is an {@code Iterable},
+	 * an {@code Iterator} or a {@code Stream}, {@code null} otherwise.
+	 */
+	public Class<?> getLazyElementType() {
+		return lazyElementType;
+	}
+	
+	/**
+	 * Creates the value of the lazy last parameter, which converts {@code values}
+	 * on demand.
+	 */
+	public Object createLazyArgument(List<String> values) {
+		ParameterDescriptor parameter = parameters[parameters.length-1];
+		return LazyArguments.create(parameter.type, parameter.converter, values, parameter.name);
 	}
 
-	public Method getMethod() {
-		return method;
+	/** Returns the space separated path of the entry point, see {@link EntryPoint#path()} */
+	public String getPath() {
+		return path;
+	}
+	
+	public String getHelp() {
+		return help;
+	}
+	
+	/** Returns a description of the entry point method, for error messages */
+	public String getDescription() {
+		return description;
+	}
+	
+	/**
+	 * Invokes the entry point method, exceptions thrown by the method are
+	 * propagated as-is.
+	 * 
+	 * @param receiver the instance on which to call the method, ignored if the
+	 *        method is static
+	 */
+	public void invoke(Object receiver, Object[] arguments) throws Throwable {
+		if(binder != null) {
+			binder.invoke(binderIndex, receiver, arguments);
+			return;
+		}
+		Object unused = (Object) invoker.invokeExact(receiver, arguments);
 	}
 	
 	public ProcessOptions getOptions() {
 		return options;
 	}
+	
+	public OptionTable getOptionTable() {
+		return options == null ? OptionTable.EMPTY : options.getOptionTable();
+	}
 
-	// Returns true if the method takes a last arguments that is either an array of varargs
+	// Returns true if the method takes a last arguments that is either an array of varargs, or a lazy parameter
 	public boolean acceptsVarArgs() {
-		return method.isVarArgs() || (method.getParameterCount() > 0 && method.getParameters()[method.getParameterCount()-1].getType().isArray());
+		return acceptsVarArgs;
 	}
 
 	public int totalParameterCount() {
-		return method.getParameterCount();
+		return parameters.length;
 	}
 
-}
\ No newline at end of file
+}
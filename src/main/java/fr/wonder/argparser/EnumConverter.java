@@ -0,0 +1,121 @@
+package fr.wonder.argparser;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import fr.wonder.argparser.utils.BKTree;
+import fr.wonder.argparser.utils.StringUtils;
+
+/**
+ * Converts enum constants by their name, ignoring case. Constants are indexed
+ * once in an open addressing table hashed on their case-folded names, a lookup
+ * does not allocate and a miss does not throw until the error is reported.
+ *
+ * <p>
+ * If two constants only differ by case, the one with the exact name given is
+ * chosen, other spellings are ambiguous. Unknown values are reported with the
+ * nearest constant names, found in a {@link BKTree} of the names.
+ */
+final class EnumConverter implements ValueConverter<Object> {
+
+	private final Class<?> enumType;
+	private final Object[] constants;
+	private final String[] names;
+	/** Indices of the constants plus one, 0 for empty slots, the length is a power of two */
+	private final int[] table;
+	/** The names of the constants, listed in error messages */
+	private final String choices;
+	private final BKTree nameIndex;
+	/** The case-folded names sorted, and the names in the same order, for completion */
+	private final String[] sortedFoldedNames;
+	private final String[] sortedNames;
+
+	EnumConverter(Class<?> enumType) {
+		this.enumType = enumType;
+		this.constants = enumType.getEnumConstants();
+		this.names = new String[constants.length];
+		this.table = new int[Integer.highestOneBit(Math.max(constants.length, 1) * 2) * 2];
+		for(int i = 0; i < constants.length; i++) {
+			names[i] = ((Enum<?>) constants[i]).name();
+			int slot = foldedHash(names[i]) & (table.length-1);
+			while(table[slot] != 0)
+				slot = (slot+1) & (table.length-1);
+			table[slot] = i+1;
+		}
+		this.choices = StringUtils.join("|", names);
+		this.nameIndex = new BKTree(names, true);
+		this.sortedNames = names.clone();
+		Arrays.sort(sortedNames, Comparator.comparing(EnumConverter::fold));
+		this.sortedFoldedNames = new String[sortedNames.length];
+		for(int i = 0; i < sortedNames.length; i++)
+			sortedFoldedNames[i] = fold(sortedNames[i]);
+	}
+
+	/** Same folding as {@link String#equalsIgnoreCase(String)} */
+	private static String fold(String text) {
+		char[] chars = new char[text.length()];
+		for(int i = 0; i < chars.length; i++)
+			chars[i] = Character.toLowerCase(Character.toUpperCase(text.charAt(i)));
+		return new String(chars);
+	}
+
+	/** Same folding as {@link String#equalsIgnoreCase(String)} */
+	private static int foldedHash(String text) {
+		int hash = 0;
+		for(int i = 0; i < text.length(); i++)
+			hash = 31*hash + Character.toLowerCase(Character.toUpperCase(text.charAt(i)));
+		return hash ^ (hash >>> 16);
+	}
+
+	@Override
+	public Object convert(String value, String argName) throws ArgumentError {
+		int match = -1;
+		boolean ambiguous = false;
+		for(int slot = foldedHash(value) & (table.length-1); table[slot] != 0; slot = (slot+1) & (table.length-1)) {
+			int index = table[slot]-1;
+			if(!names[index].equalsIgnoreCase(value))
+				continue;
+			if(names[index].equals(value))
+				return constants[index];
+			ambiguous |= match >= 0;
+			match = index;
+		}
+		if(match < 0)
+			throw new ArgumentError("Expected one of {} for <{}>, got '{}'{}", choices, argName, value, Suggestions.hint(nameIndex, value));
+		if(ambiguous)
+			throw new ArgumentError("Ambiguous value for <{}>, got '{}', the {} values are {}", argName, value, enumType.getSimpleName(), choices);
+		return constants[match];
+	}
+
+	/** Returns the names of the constants nearest to the unknown {@code value} */
+	List<String> suggest(String value) {
+		return Suggestions.find(nameIndex, value);
+	}
+
+	/**
+	 * Adds the names of the constants starting with {@code prefix}, ignoring case,
+	 * to {@code out}. The names are found by a binary search of the range of the
+	 * prefix in the sorted folded names.
+	 */
+	void addNamesStartingWith(String prefix, List<String> out) {
+		String folded = fold(prefix);
+		// first name not sorted before the prefix, folded names may appear twice
+		int low = 0, high = sortedFoldedNames.length;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(sortedFoldedNames[middle].compareTo(folded) < 0)
+				low = middle+1;
+			else
+				high = middle;
+		}
+		for(int i = low; i < sortedFoldedNames.length && sortedFoldedNames[i].startsWith(folded); i++)
+			out.add(sortedNames[i]);
+	}
+
+	/** Returns the names of the constants separated by {@code |} */
+	String getChoices() {
+		return choices;
+	}
+
+}
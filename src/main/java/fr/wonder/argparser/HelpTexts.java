@@ -0,0 +1,175 @@
+package fr.wonder.argparser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.wonder.argparser.annotations.ProcessDoc;
+import fr.wonder.argparser.utils.StringUtils;
+
+/**
+ * The usage lines and help pages of a schema. Texts only depend on the schema,
+ * each one is rendered the first time it is needed and then shared by every
+ * parser and thread using the schema.
+ *
+ * <p>
+ * Help pages end with a line separator so that they can be printed with a single
+ * {@link java.io.PrintStream#print(String)}, which keeps pages printed
+ * concurrently to the same stream from interleaving.
+ */
+final class HelpTexts {
+
+	private static final String NEWLINE = System.lineSeparator();
+	/** Argument and option names are padded up to this width before their descriptions */
+	private static final int MAX_NAME_WIDTH = 35;
+
+	private final CommandSchema schema;
+	private final Map<Branch, String> pathUsages = new ConcurrentHashMap<>();
+	private final Map<EntryPointFunction, String> entryUsages = new ConcurrentHashMap<>();
+	private final Map<Branch, String> helpPages = new ConcurrentHashMap<>();
+
+	HelpTexts(CommandSchema schema) {
+		this.schema = schema;
+	}
+
+	/** Returns the usage of a branch that has no entry point, on two lines */
+	String getPathUsage(Branch branch) {
+		String usage = pathUsages.get(branch);
+		return usage != null ? usage : pathUsages.computeIfAbsent(branch, this::renderPathUsage);
+	}
+
+	/** Returns the usage line of an entry point */
+	String getEntryUsage(EntryPointFunction entry) {
+		String usage = entryUsages.get(entry);
+		return usage != null ? usage : entryUsages.computeIfAbsent(entry, this::renderEntryUsage);
+	}
+
+	/**
+	 * Returns the page printed when help is asked for {@code branch}: the help of
+	 * its entry point or the usage of its sub paths, preceded by the
+	 * {@link ProcessDoc} of the schema for the root branch.
+	 */
+	String getHelp(Branch branch) {
+		String help = helpPages.get(branch);
+		return help != null ? help : helpPages.computeIfAbsent(branch, this::renderHelp);
+	}
+
+	private String renderPathUsage(Branch branch) {
+		return "Usage: " + branch.path + " "
+				+ StringUtils.join("|", branch.getSubBranchNames())
+				+ " ...\nUse '" + schema.progName + " --help <cmd>' for help";
+	}
+
+	private String renderEntryUsage(EntryPointFunction entry) {
+		StringBuilder usage = new StringBuilder("Usage: ").append(schema.progName);
+		if(entry.usesOptions()) {
+			Collection<String> availableOptions = entry.getOptions().getAvailableOptionNames();
+			if(availableOptions.size() > 3) {
+				usage.append(" (...options)");
+			} else {
+				for(String opt : availableOptions)
+					usage.append(" (").append(opt).append(')');
+			}
+		}
+		String entryPath = entry.getPath();
+		if(!ArgParserHelper.isRootBranch(entryPath))
+			usage.append(' ').append(entryPath);
+		int optionsOffset = entry.usesOptions() ? 1 : 0;
+		int i = 0;
+		for( ; i < entry.optionalParamCount(); i++)
+			usage.append(" <").append(entry.getParamName(i+optionsOffset)).append('>');
+		for( ; i < entry.normalParamCount(); i++)
+			usage.append(" [").append(entry.getParamName(i+optionsOffset)).append(']');
+		if(entry.acceptsVarArgs())
+			usage.append("...");
+		return usage.toString();
+	}
+
+	private String renderHelp(Branch branch) {
+		StringBuilder help = new StringBuilder();
+		if(branch == schema.treeRoot) {
+			if(schema.processDoc != null)
+				help.append(schema.processDoc).append(NEWLINE);
+		}
+		if(branch.entryPoint == null)
+			help.append(getPathUsage(branch)).append(NEWLINE);
+		else
+			appendEntryHelp(help, branch.entryPoint);
+		return help.toString();
+	}
+
+	private void appendEntryHelp(StringBuilder help, EntryPointFunction entry) {
+		String entryHelp = entry.getHelp();
+		if(!entryHelp.isBlank())
+			help.append(entryHelp).append(NEWLINE);
+		help.append(getEntryUsage(entry)).append(NEWLINE);
+
+		int optionsOffset = entry.usesOptions() ? 1 : 0;
+		List<String> names = new ArrayList<>();
+		List<String> descriptions = new ArrayList<>();
+		for(int i = 0; i < entry.normalParamCount(); i++) {
+			ParameterDescriptor parameter = entry.getParameter(i + optionsOffset);
+			String type = parameter.converter instanceof EnumConverter ?
+					((EnumConverter) parameter.converter).getChoices() :
+					parameter.type.getSimpleName();
+			names.add("  " + parameter.name + " (" + type + ")");
+			descriptions.add(parameter.desc);
+		}
+		appendColumns(help, names, descriptions);
+
+		if(!entry.usesOptions())
+			return;
+
+		names.clear();
+		descriptions.clear();
+		List<OptionSlot> slots = new ArrayList<>(new HashSet<>(entry.getOptions().getOptionSlots().values()));
+		slots.sort(Comparator.comparing(slot -> slot.name));
+		for(OptionSlot slot : slots) {
+			String name = "  " + slot.name;
+			if(!slot.shorthand.isBlank())
+				name += " (" + slot.shorthand + ")";
+			if(OptionsHelper.doesOptionTakeArgument(slot.type))
+				name += " <" + slot.valueName + ">";
+			names.add(name);
+			descriptions.add(slot.desc);
+		}
+		appendColumns(help, names, descriptions);
+	}
+
+	/**
+	 * Appends one line per name, names are padded so that descriptions are aligned
+	 * and the following lines of multiline descriptions are indented the same way.
+	 */
+	private static void appendColumns(StringBuilder help, List<String> names, List<String> descriptions) {
+		int width = 0;
+		for(String name : names)
+			width = Math.max(width, name.length());
+		width = Math.min(width, MAX_NAME_WIDTH);
+
+		for(int i = 0; i < names.size(); i++) {
+			String name = names.get(i);
+			String desc = descriptions.get(i);
+			help.append(name);
+			appendSpaces(help, width - name.length());
+			if(!desc.isBlank()) {
+				help.append(" - ");
+				for(int c = 0; c < desc.length(); c++) {
+					help.append(desc.charAt(c));
+					if(desc.charAt(c) == '\n')
+						appendSpaces(help, width+2);
+				}
+			}
+			help.append(NEWLINE);
+		}
+	}
+
+	private static void appendSpaces(StringBuilder sb, int count) {
+		for(int i = 0; i < count; i++)
+			sb.append(' ');
+	}
+
+}
@@ -0,0 +1,124 @@
+package fr.wonder.argparser;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The trailing arguments of an entry point which last parameter is an
+ * {@code Iterable}, an {@code Iterator} or a {@code Stream}. Arguments are kept
+ * as strings and converted one at a time when the entry point consumes them.
+ *
+ * <p>
+ * Because the conversion happens after the entry point was called, an argument
+ * that cannot be converted is reported by an {@link IllegalArgumentException}
+ * thrown where it is consumed, its cause is the {@link ArgumentError}.
+ */
+final class LazyArguments implements Iterable<Object> {
+
+	private final List<String> values;
+	private final ValueConverter<?> converter;
+	private final String argName;
+
+	private LazyArguments(List<String> values, ValueConverter<?> converter, String argName) {
+		this.values = values;
+		this.converter = converter;
+		this.argName = argName;
+	}
+
+	/**
+	 * Creates the value of a lazy parameter of type {@code lazyType}.
+	 */
+	static Object create(Class<?> lazyType, ValueConverter<?> converter, List<String> values, String argName) {
+		LazyArguments arguments = new LazyArguments(values, converter, argName);
+		if(lazyType == Iterator.class)
+			return arguments.iterator();
+		if(lazyType == Stream.class)
+			return StreamSupport.stream(arguments.spliterator(), false);
+		return arguments;
+	}
+
+	private Object convert(int index) {
+		try {
+			return converter.convert(values.get(index), argName + "[" + index + "]");
+		} catch (ArgumentError e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns a new iterator over the arguments, each iterator converts the
+	 * arguments again.
+	 */
+	@Override
+	public Iterator<Object> iterator() {
+		return new Iterator<>() {
+			private int index;
+
+			@Override
+			public boolean hasNext() {
+				return index < values.size();
+			}
+
+			@Override
+			public Object next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+				return convert(index++);
+			}
+		};
+	}
+
+	@Override
+	public Spliterator<Object> spliterator() {
+		return new RangeSpliterator(0, values.size());
+	}
+
+	/**
+	 * Splits by index ranges so that parallel streams convert arguments in parallel.
+	 */
+	private final class RangeSpliterator implements Spliterator<Object> {
+
+		private int index;
+		private final int end;
+
+		RangeSpliterator(int index, int end) {
+			this.index = index;
+			this.end = end;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Object> action) {
+			if(index >= end)
+				return false;
+			action.accept(convert(index++));
+			return true;
+		}
+
+		@Override
+		public Spliterator<Object> trySplit() {
+			int middle = (index + end) >>> 1;
+			if(middle <= index)
+				return null;
+			Spliterator<Object> prefix = new RangeSpliterator(index, middle);
+			index = middle;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return end - index;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+		}
+
+	}
+
+}
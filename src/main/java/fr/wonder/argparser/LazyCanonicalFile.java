@@ -0,0 +1,45 @@
+package fr.wonder.argparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A {@code File} argument, its path is the path given by the user made absolute
+ * and its canonical form is only computed, once, when it is first asked for.
+ * The path is not normalized, {@code ..} segments are only collapsed by
+ * canonicalization, after links were resolved.
+ */
+final class LazyCanonicalFile extends File {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient Path workingDirectory;
+	private final transient String rawPath;
+	private transient volatile File canonicalFile;
+
+	LazyCanonicalFile(Path workingDirectory, Path absolutePath, String rawPath) {
+		super(absolutePath.toString());
+		this.workingDirectory = workingDirectory;
+		this.rawPath = rawPath;
+	}
+
+	@Override
+	public File getCanonicalFile() throws IOException {
+		File file = canonicalFile;
+		if(file == null)
+			canonicalFile = file = CanonicalPaths.getCanonicalFile(workingDirectory, rawPath, new File(getPath()));
+		return file;
+	}
+
+	@Override
+	public String getCanonicalPath() throws IOException {
+		return getCanonicalFile().getPath();
+	}
+
+	/** Serialized as a plain file */
+	private Object writeReplace() {
+		return new File(getPath());
+	}
+
+}
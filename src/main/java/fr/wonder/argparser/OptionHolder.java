@@ -0,0 +1,57 @@
+package fr.wonder.argparser;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+
+/**
+ * How to create one of the (inner) option class instances of an option class,
+ * see {@link ProcessOptions#newInstances()}. Instances are created through
+ * handles for option classes read by reflection, or through the generated
+ * {@link CommandBinder} of the schema.
+ */
+final class OptionHolder {
+	
+	final Class<?> type;
+	/** The index of the holder containing this one, -1 for the root option class */
+	final int parentIndex;
+	
+	/** A handle of type {@code ()Object} creating an empty instance */
+	private final MethodHandle constructor;
+	private final VarHandle parentField;
+	private final CommandBinder binder;
+	private final int binderHolder;
+	private final int binderParentField;
+	
+	OptionHolder(Class<?> type, int parentIndex, MethodHandle constructor, VarHandle parentField) {
+		this.type = type;
+		this.parentIndex = parentIndex;
+		this.constructor = constructor;
+		this.parentField = parentField;
+		this.binder = null;
+		this.binderHolder = -1;
+		this.binderParentField = -1;
+	}
+	
+	OptionHolder(Class<?> type, int parentIndex, CommandBinder binder, int binderHolder, int binderParentField) {
+		this.type = type;
+		this.parentIndex = parentIndex;
+		this.constructor = null;
+		this.parentField = null;
+		this.binder = binder;
+		this.binderHolder = binderHolder;
+		this.binderParentField = binderParentField;
+	}
+	
+	Object newInstance() throws Throwable {
+		return binder != null ? binder.newHolder(binderHolder) : (Object) constructor.invokeExact();
+	}
+	
+	/** Stores {@code instance} in the field of {@code parent} containing this holder */
+	void attach(Object parent, Object instance) {
+		if(binder != null)
+			binder.set(binderParentField, parent, instance);
+		else
+			parentField.set(parent, instance);
+	}
+	
+}
@@ -0,0 +1,124 @@
+package fr.wonder.argparser;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * The compiled setter of an option field. An option name and its shorthand
+ * share the same slot.
+ *
+ * <p>
+ * The field is accessed through a {@link VarHandle} for option classes read by
+ * reflection, or through the generated {@link CommandBinder} of the schema.
+ * Primitive values are set without being boxed either way.
+ */
+final class OptionSlot {
+	
+	/** The index of the slot in its option class, unique per option field */
+	final int index;
+	final String name;
+	/** The shorthand of the option, an empty string if it has none */
+	final String shorthand;
+	final String valueName;
+	final String desc;
+	final Class<?> type;
+	/** The index of the instance holding the field, see {@link ProcessOptions#newInstances()} */
+	final int holderIndex;
+	/**
+	 * The type of the values of an array, list or set option, which values are
+	 * accumulated instead of replaced, {@code null} for other options
+	 */
+	final Class<?> elementType;
+	/** The converter of the values of the option, of its elements for array, list and set options */
+	final ValueConverter<?> converter;
+	
+	private final VarHandle handle;
+	private final CommandBinder binder;
+	private final int binderField;
+	
+	private OptionSlot(int index, String name, String shorthand, String valueName, String desc, Class<?> type,
+			int holderIndex, Class<?> elementType, ValueConverter<?> converter, VarHandle handle, CommandBinder binder, int binderField) {
+		this.index = index;
+		this.name = name;
+		this.shorthand = shorthand;
+		this.valueName = valueName;
+		this.desc = desc;
+		this.type = type;
+		this.holderIndex = holderIndex;
+		this.elementType = elementType;
+		this.converter = converter;
+		this.handle = handle;
+		this.binder = binder;
+		this.binderField = binderField;
+	}
+	
+	OptionSlot(int index, String name, String shorthand, String valueName, String desc, Class<?> type,
+			int holderIndex, Class<?> elementType, ValueConverter<?> converter, VarHandle handle) {
+		this(index, name, shorthand, valueName, desc, type, holderIndex, elementType, converter, handle, null, -1);
+	}
+	
+	OptionSlot(int index, String name, String shorthand, String valueName, String desc, Class<?> type,
+			int holderIndex, Class<?> elementType, ValueConverter<?> converter, CommandBinder binder, int binderField) {
+		this(index, name, shorthand, valueName, desc, type, holderIndex, elementType, converter, null, binder, binderField);
+	}
+	
+	Object get(Object holder) {
+		return handle != null ? handle.get(holder) : binder.get(binderField, holder);
+	}
+	
+	void set(Object holder, Object value) {
+		if(handle != null)
+			handle.set(holder, value);
+		else
+			binder.set(binderField, holder, value);
+	}
+	
+	void setInt(Object holder, int value) {
+		if(handle != null)
+			handle.set(holder, value);
+		else
+			binder.setInt(binderField, holder, value);
+	}
+	
+	void setLong(Object holder, long value) {
+		if(handle != null)
+			handle.set(holder, value);
+		else
+			binder.setLong(binderField, holder, value);
+	}
+	
+	void setDouble(Object holder, double value) {
+		if(handle != null)
+			handle.set(holder, value);
+		else
+			binder.setDouble(binderField, holder, value);
+	}
+	
+	void setFloat(Object holder, float value) {
+		if(handle != null)
+			handle.set(holder, value);
+		else
+			binder.setFloat(binderField, holder, value);
+	}
+	
+	void setShort(Object holder, short value) {
+		if(handle != null)
+			handle.set(holder, value);
+		else
+			binder.setShort(binderField, holder, value);
+	}
+	
+	void setByte(Object holder, byte value) {
+		if(handle != null)
+			handle.set(holder, value);
+		else
+			binder.setByte(binderField, holder, value);
+	}
+	
+	void setChar(Object holder, char value) {
+		if(handle != null)
+			handle.set(holder, value);
+		else
+			binder.setChar(binderField, holder, value);
+	}
+	
+}
@@ -0,0 +1,172 @@
+package fr.wonder.argparser;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import fr.wonder.argparser.utils.RadixTrie;
+
+/**
+ * Tells whether options take a value, used to read options before creating the
+ * option class instance.
+ *
+ * <p>
+ * Each entry point has the table of its option class and each branch has the
+ * union of the tables of the entry points below it. Options are looked up in the
+ * table of the branch reached when they are read, an option that takes a value in
+ * some entry points of the branch and not in others is a {@link #CONFLICT}, it can
+ * only be read once the path is complete.
+ *
+ * <p>
+ * Long options are indexed by a {@link RadixTrie}, short options by a bitset of
+ * their (ascii) character so that {@code -abc} clusters are read without creating
+ * strings.
+ */
+final class OptionTable {
+
+	static final byte UNKNOWN = 0;
+	static final byte FLAG = 1;
+	static final byte TAKES_VALUE = 2;
+	static final byte CONFLICT = FLAG | TAKES_VALUE;
+
+	/** Shorthand names by their character, only letters and digits can be shorthands */
+	private static final String[] SHORT_NAMES = new String[128];
+
+	static {
+		for(char c = 0; c < SHORT_NAMES.length; c++) {
+			if(Character.isLetterOrDigit(c))
+				SHORT_NAMES[c] = "-" + c;
+		}
+	}
+
+	static final OptionTable EMPTY = new OptionTable(Map.of());
+
+	private final RadixTrie longNames;
+	private final byte[] longKinds;
+	/** Bitsets of the shorthands that do not take a value and of the ones that do */
+	private final long[] shortFlags = new long[2];
+	private final long[] shortValued = new long[2];
+
+	private OptionTable(Map<String, Byte> kinds) {
+		Map<String, Byte> longOptions = new HashMap<>();
+		for(Entry<String, Byte> option : kinds.entrySet()) {
+			String name = option.getKey();
+			byte kind = option.getValue();
+			if(isShortName(name)) {
+				char c = name.charAt(1);
+				if((kind & FLAG) != 0)
+					shortFlags[c >> 6] |= 1L << c;
+				if((kind & TAKES_VALUE) != 0)
+					shortValued[c >> 6] |= 1L << c;
+			} else {
+				longOptions.put(name, kind);
+			}
+		}
+		this.longNames = new RadixTrie(longOptions.keySet().toArray(String[]::new));
+		this.longKinds = new byte[longNames.size()];
+		for(int i = 0; i < longKinds.length; i++)
+			longKinds[i] = longOptions.get(longNames.getWord(i));
+	}
+
+	static OptionTable forOptionClass(ProcessOptions options) {
+		Map<String, Byte> kinds = new HashMap<>();
+		for(Entry<String, OptionSlot> option : options.getOptionSlots().entrySet())
+			kinds.put(option.getKey(), OptionsHelper.doesOptionTakeArgument(option.getValue().type) ? TAKES_VALUE : FLAG);
+		return new OptionTable(kinds);
+	}
+
+	/**
+	 * Returns the union of the given tables, options that do not have the same kind
+	 * in all the tables are {@link #CONFLICT}s.
+	 */
+	static OptionTable merge(Iterable<OptionTable> tables) {
+		Map<String, Byte> kinds = new HashMap<>();
+		for(OptionTable table : tables) {
+			for(int i = 0; i < table.longKinds.length; i++)
+				kinds.merge(table.longNames.getWord(i), table.longKinds[i], (k1, k2) -> (byte) (k1 | k2));
+			for(char c = 0; c < SHORT_NAMES.length; c++) {
+				byte kind = table.getShortKind(c);
+				if(kind != UNKNOWN)
+					kinds.merge(SHORT_NAMES[c], kind, (k1, k2) -> (byte) (k1 | k2));
+			}
+		}
+		return kinds.isEmpty() ? EMPTY : new OptionTable(kinds);
+	}
+
+	private static boolean isShortName(CharSequence name) {
+		return name.length() == 2 && name.charAt(0) == '-' && name.charAt(1) < SHORT_NAMES.length && SHORT_NAMES[name.charAt(1)] != null;
+	}
+
+	/**
+	 * Returns the shared name of the shorthand {@code -c}, or {@code null} if
+	 * {@code c} cannot be a shorthand.
+	 */
+	static String getShortName(char c) {
+		return c < SHORT_NAMES.length ? SHORT_NAMES[c] : null;
+	}
+
+	byte getShortKind(char c) {
+		if(c >= SHORT_NAMES.length)
+			return UNKNOWN;
+		long bit = 1L << c;
+		return (byte) (((shortFlags[c >> 6] & bit) != 0 ? FLAG : 0) | ((shortValued[c >> 6] & bit) != 0 ? TAKES_VALUE : 0));
+	}
+
+	/**
+	 * Returns {@code true} if all the characters of {@code cluster} between
+	 * {@code from} and {@code to} are shorthands that never take a value.
+	 */
+	boolean areAllFlags(CharSequence cluster, int from, int to) {
+		long low = 0, high = 0;
+		for(int i = from; i < to; i++) {
+			char c = cluster.charAt(i);
+			if(c >= SHORT_NAMES.length)
+				return false;
+			if(c < 64)
+				low |= 1L << c;
+			else
+				high |= 1L << c;
+		}
+		return (low & ~(shortFlags[0] & ~shortValued[0])) == 0
+			&& (high & ~(shortFlags[1] & ~shortValued[1])) == 0;
+	}
+
+	/**
+	 * Adds the long options and shorthands starting with {@code prefix} to
+	 * {@code out}, sorted. Long options are read from the range of the prefix in the
+	 * trie, shorthands are only listed for the prefix {@code -} or a shorthand.
+	 */
+	void addNamesStartingWith(String prefix, List<String> out) {
+		int from = longNames.firstPrefixed(prefix);
+		int count = longNames.countPrefixed(prefix);
+		for(int i = 0; i < count; i++)
+			out.add(longNames.getWord(from + i));
+		if(prefix.length() > 2 || (prefix.length() == 2 && prefix.charAt(1) == '-'))
+			return;
+		for(char c = 0; c < SHORT_NAMES.length; c++) {
+			if(getShortKind(c) != UNKNOWN && SHORT_NAMES[c].startsWith(prefix))
+				out.add(SHORT_NAMES[c]);
+		}
+	}
+	
+	/** Returns the kind of a long option or of a shorthand */
+	byte getKind(CharSequence option) {
+		if(isShortName(option))
+			return getShortKind(option.charAt(1));
+		int index = longNames.indexOf(option);
+		return index < 0 ? UNKNOWN : longKinds[index];
+	}
+
+	/**
+	 * Returns the name of {@code option} as a string, the indexed name of known
+	 * options so that reading an option from a token does not create a string.
+	 */
+	String getName(CharSequence option) {
+		if(isShortName(option))
+			return SHORT_NAMES[option.charAt(1)];
+		int index = longNames.indexOf(option);
+		return index < 0 ? option.toString() : longNames.getWord(index);
+	}
+
+}
@@ -1,20 +1,18 @@
 package fr.wonder.argparser;
 
-import java.io.File;
-import java.io.IOException;
 import java.lang.reflect.Array;
-import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import fr.wonder.argparser.annotations.Argument;
 import fr.wonder.argparser.utils.ArrayOperator;
 import fr.wonder.argparser.utils.ErrorWrapper;
 import fr.wonder.argparser.utils.ErrorWrapper.WrappedException;
-import fr.wonder.argparser.utils.PrimitiveUtils;
-import fr.wonder.argparser.utils.ReflectUtils;
-import fr.wonder.argparser.utils.StringUtils;
 import fr.wonder.argparser.utils.UnreachableException;
 
 class OptionsHelper {
@@ -22,142 +20,223 @@ class OptionsHelper {
 	private static final String[] BOOLEAN_TRUE_VALUES = { "1", "true", "True" };
 	private static final String[] BOOLEAN_FALSE_VALUES = { "0", "false", "False" };
 
-	public static Object parseOptionValue(String argVal, Class<?> argType, String argName) throws ArgumentError {
-		boolean isDefaultEmptyValue = Argument.DEFAULT_EMPTY.equals(argVal);
-		
-		if (argType == boolean.class || argType == Boolean.class) {
-			if(isDefaultEmptyValue)
-				throw new ArgumentError("Type " + argType.getCanonicalName() + " cannot be defaulted to empty for <" + argName + ">");
-			if (ArrayOperator.contains(BOOLEAN_TRUE_VALUES, argVal))
-				return true;
-			if (ArrayOperator.contains(BOOLEAN_FALSE_VALUES, argVal))
-				return false;
-			throw new ArgumentError("Expected true or false for <" + argName + ">, got '" + argVal + "'");
-			
-		} else if(PrimitiveUtils.isPrimitiveType(argType)) {
-			if(isDefaultEmptyValue)
-				throw new ArgumentError("Type " + argType.getCanonicalName() + " cannot be defaulted to empty for <" + argName + ">");
-			if(PrimitiveUtils.isFloatingPoint(argType)) {
-				try {
-					return PrimitiveUtils.castToPrimitive(Double.parseDouble(argVal), argType);
-				} catch (IllegalArgumentException | NullPointerException e) {
-					throw new ArgumentError("Expected a number for <" + argName + ">, got '" + argVal + "'");
-				}
-			} else {
-				try {
-					return PrimitiveUtils.castToPrimitive(Long.parseLong(argVal), argType);
-				} catch (IllegalArgumentException | NullPointerException e) {
-					throw new ArgumentError("Expected an integer for <" + argName + ">, got '" + argVal + "'");
-				}
-			}
-		} else if(argType == String.class) {
-			// DEFAULT_EMPTY can be used in @Argument annotations to specify that
-			// the default value for the argument is the empty string.
-			return isDefaultEmptyValue ? "" : argVal;
-		} else if(argType == File.class) {
-			if(isDefaultEmptyValue)
-				throw new ArgumentError("Type File cannot be defaulted to empty for <" + argName + ">");
-			try {
-				return new File(argVal).getCanonicalFile();
-			} catch (IOException | NullPointerException e) {
-				throw new ArgumentError("Cannot resolve file " + argVal + ": " + e.getMessage());
-			}
-		} else if(argType.isEnum()) {
-			try {
-				return ReflectUtils.getEnumConstant(argType, argVal.toUpperCase());
-			} catch (IllegalArgumentException | NullPointerException e) {
-				throw new ArgumentError("Expected one of " + StringUtils.join("|", argType.getEnumConstants()) + " for <" + argName + ">, got '" + argVal + "'");
-			}
-		} else if(argType.isArray()) {
-			Class<?> componentType = argType.componentType();
-			if (isDefaultEmptyValue)
-				return Array.newInstance(componentType, 0);
-			
-			String[] parts = StringUtils.splitCLIArgs(argVal);
-			Object arrayVal = Array.newInstance(componentType, parts.length);
-			for (int i = 0; i < parts.length; i++)
-				Array.set(arrayVal, i, parseOptionValue(parts[i], componentType, argName + "[" + i + "]"));
-			return arrayVal;
-		} else {
-			throw new UnreachableException("Invalid option type " + argType);
+	/**
+	 * Converts the default value of an argument, {@link Argument#DEFAULT_EMPTY} is
+	 * the empty string or an empty array.
+	 */
+	public static Object convertDefaultValue(String argVal, Class<?> argType, ValueConverter<?> converter, String argName) throws ArgumentError {
+		if(Argument.DEFAULT_EMPTY.equals(argVal)) {
+			if(argType == String.class)
+				return "";
+			if(argType.isArray())
+				return Array.newInstance(argType.componentType(), 0);
+			throw new ArgumentError("Type {} cannot be defaulted to empty for <{}>", argType.getCanonicalName(), argName);
 		}
+		return converter.convert(argVal, argName);
 	}
 	
-	public static Object createOptionsInstance(List<OptionKeyValuePair> rawOptions, ProcessOptions options, ErrorWrapper errors) throws WrappedException {
-		Object instance = options.newInstance();
-		Map<Class<?>, Object> complexFields;
-		
+	/**
+	 * Parses {@code argVal} and stores it at {@code index} in {@code array}, values
+	 * of primitive arrays are parsed and stored without going through their boxed
+	 * representation.
+	 */
+	public static void setArrayElement(Object array, int index, String argVal, Class<?> componentType, ValueConverter<?> converter, String argName) throws ArgumentError {
+		if(componentType == int.class)
+			((int[]) array)[index] = parseInt(argVal, argName);
+		else if(componentType == long.class)
+			((long[]) array)[index] = parseLong(argVal, argName);
+		else if(componentType == double.class)
+			((double[]) array)[index] = parseDouble(argVal, argName);
+		else if(componentType == float.class)
+			((float[]) array)[index] = parseFloat(argVal, argName);
+		else if(componentType == short.class)
+			((short[]) array)[index] = parseShort(argVal, argName);
+		else if(componentType == byte.class)
+			((byte[]) array)[index] = parseByte(argVal, argName);
+		else if(componentType == char.class)
+			((char[]) array)[index] = parseChar(argVal, argName);
+		else if(componentType == boolean.class)
+			((boolean[]) array)[index] = parseBoolean(argVal, argName);
+		else
+			((Object[]) array)[index] = converter.convert(argVal, argName);
+	}
+	
+	/**
+	 * Parses {@code argVal} and stores it in the primitive field of {@code slot},
+	 * without going through the value's boxed representation.
+	 */
+	private static void setPrimitiveOption(Object optionObj, OptionSlot slot, String argVal, String argName) throws ArgumentError {
+		Class<?> type = slot.type;
+		if(type == int.class)
+			slot.setInt(optionObj, parseInt(argVal, argName));
+		else if(type == long.class)
+			slot.setLong(optionObj, parseLong(argVal, argName));
+		else if(type == double.class)
+			slot.setDouble(optionObj, parseDouble(argVal, argName));
+		else if(type == float.class)
+			slot.setFloat(optionObj, parseFloat(argVal, argName));
+		else if(type == short.class)
+			slot.setShort(optionObj, parseShort(argVal, argName));
+		else if(type == byte.class)
+			slot.setByte(optionObj, parseByte(argVal, argName));
+		else if(type == char.class)
+			slot.setChar(optionObj, parseChar(argVal, argName));
+		else
+			throw new UnreachableException("Unexpected type " + type);
+	}
+	
+	public static boolean parseBoolean(String argVal, String argName) throws ArgumentError {
+		if (ArrayOperator.contains(BOOLEAN_TRUE_VALUES, argVal))
+			return true;
+		if (ArrayOperator.contains(BOOLEAN_FALSE_VALUES, argVal))
+			return false;
+		throw new ArgumentError("Expected true or false for <{}>, got '{}'", argName, argVal);
+	}
+	
+	public static int parseInt(String argVal, String argName) throws ArgumentError {
+		return (int) parseInteger(argVal, Integer.MIN_VALUE, Integer.MAX_VALUE, argName);
+	}
+	
+	public static long parseLong(String argVal, String argName) throws ArgumentError {
+		return parseInteger(argVal, Long.MIN_VALUE, Long.MAX_VALUE, argName);
+	}
+	
+	public static short parseShort(String argVal, String argName) throws ArgumentError {
+		return (short) parseInteger(argVal, Short.MIN_VALUE, Short.MAX_VALUE, argName);
+	}
+	
+	public static byte parseByte(String argVal, String argName) throws ArgumentError {
+		return (byte) parseInteger(argVal, Byte.MIN_VALUE, Byte.MAX_VALUE, argName);
+	}
+	
+	/** Characters are given by their code, not as a character literal */
+	public static char parseChar(String argVal, String argName) throws ArgumentError {
+		return (char) parseInteger(argVal, Character.MIN_VALUE, Character.MAX_VALUE, argName);
+	}
+	
+	public static double parseDouble(String argVal, String argName) throws ArgumentError {
+		try {
+			return Double.parseDouble(argVal);
+		} catch (NumberFormatException | NullPointerException e) {
+			throw new ArgumentError("Expected a number for <{}>, got '{}'", argName, argVal);
+		}
+	}
+	
+	public static float parseFloat(String argVal, String argName) throws ArgumentError {
 		try {
-			complexFields = options.getAllOptionFields(instance);
-		} catch (IllegalAccessException e) {
-			throw new IllegalStateException("Could not initialize an option instance", e);
+			return Float.parseFloat(argVal);
+		} catch (NumberFormatException | NullPointerException e) {
+			throw new ArgumentError("Expected a number for <{}>, got '{}'", argName, argVal);
 		}
+	}
+	
+	private static long parseInteger(String argVal, long min, long max, String argName) throws ArgumentError {
+		long value;
+		try {
+			value = Long.parseLong(argVal);
+		} catch (NumberFormatException e) {
+			throw new ArgumentError("Expected an integer for <{}>, got '{}'", argName, argVal);
+		}
+		if(value < min || value > max)
+			throw new ArgumentError("Expected an integer between {} and {} for <{}>, got '{}'", min, max, argName, argVal);
+		return value;
+	}
+	
+	public static Object createOptionsInstance(List<OptionKeyValuePair> rawOptions, ProcessOptions options, ErrorWrapper errors) throws WrappedException {
+		Object[] instances = options.newInstances();
+		// values of array, list and set options, by slot index, created when first needed
+		RepeatedValues[] repeatedValues = null;
 		
 		for(OptionKeyValuePair optPair : rawOptions) {
-			Field optField = options.getOptionFields().get(optPair.name);
-			if(optField == null) {
-				errors.add("Unknown option: " + optPair.name);
+			OptionSlot slot = options.getOptionSlot(optPair.name);
+			if(slot == null) {
+				errors.add(new Diagnostic(Diagnostic.Code.UNKNOWN_OPTION, optPair.tokenIndex, optPair.name, null, null,
+						() -> options.suggestOptionNames(optPair.name),
+						() -> "Unknown option: " + optPair.name + Suggestions.format(options.suggestOptionNames(optPair.name))));
+				errors.checkFailFast();
 				continue;
 			}
-			Object fieldInstance = complexFields.get(optField.getDeclaringClass());
-			if(fieldInstance == null)
-				throw new IllegalStateException("Could not find an instance of " + optField.getType() + " for option class '" + optField.getName() + "' in a " + instance.getClass().getSimpleName());
-			setOption(fieldInstance, optField, optPair.name, optPair.value, errors);
+			if(slot.elementType != null) {
+				if(repeatedValues == null)
+					repeatedValues = new RepeatedValues[options.getSlotCount()];
+				if(repeatedValues[slot.index] == null)
+					repeatedValues[slot.index] = new RepeatedValues(slot, optPair.name);
+				repeatedValues[slot.index].add(optPair.value, optPair.tokenIndex+1);
+				continue;
+			}
+			setOption(instances[slot.holderIndex], slot, optPair, errors);
+		}
+		
+		if(repeatedValues != null) {
+			for(RepeatedValues values : repeatedValues) {
+				if(values != null)
+					setRepeatedOption(instances[values.slot.holderIndex], values, errors);
+			}
 		}
 		
 		errors.assertNoErrors();
-		return instance;
+		return instances[0];
 	}
 
-	private static void setOption(Object optionObj, Field optionField, String opt, String value, ErrorWrapper errors) {
+	private static void setOption(Object optionObj, OptionSlot slot, OptionKeyValuePair option, ErrorWrapper errors) throws WrappedException {
+		Class<?> optionType = slot.type;
+		
+		if(optionType == boolean.class) {
+			// special case: toggle the boolean, that's to allow fields that default to true
+			slot.set(optionObj, !(boolean) slot.get(optionObj));
+			return;
+		}
+		
 		try {
-			Class<?> optionType = optionField.getType();
-			
-			if(optionType == boolean.class) {
-				// special case: toggle the boolean, that's to allow fields that default to true
-				optionField.setBoolean(optionObj, !optionField.getBoolean(optionObj));
-				return;
-			}
-			
-			if(optionType.isArray()) {
-				Object oldArray = optionField.get(optionObj);
-				Object newArray;
-				int insertionIndex;
-				if (oldArray == null) {
-					insertionIndex = 0;
-					newArray = Array.newInstance(optionType.componentType(), 1);
-				} else {
-					insertionIndex = Array.getLength(oldArray);
-					newArray = Array.newInstance(optionType.componentType(), insertionIndex+1);
-					for (int i = 0; i < insertionIndex; i++)
-						Array.set(newArray, i, Array.get(oldArray, i));
-				}
+			if(optionType.isPrimitive())
+				setPrimitiveOption(optionObj, slot, option.value, option.name);
+			else
+				slot.set(optionObj, slot.converter.convert(option.value, option.name));
+		} catch (ArgumentError e) {
+			errors.add(Diagnostic.invalidValue(e, option.tokenIndex+1, option.name, option.value, optionType, slot.converter));
+			errors.checkFailFast();
+		}
+	}
+	
+	/**
+	 * Sets an array, list or set option once all of its values are known. The values
+	 * are appended to the ones the field was initialized with, arrays are allocated
+	 * once with their final length.
+	 */
+	private static void setRepeatedOption(Object optionObj, RepeatedValues values, ErrorWrapper errors) throws WrappedException {
+		OptionSlot slot = values.slot;
+		Class<?> optionType = slot.type;
+		Object initialValue = slot.get(optionObj);
+		
+		if(optionType.isArray()) {
+			int offset = initialValue == null ? 0 : Array.getLength(initialValue);
+			Object array = Array.newInstance(slot.elementType, offset + values.size);
+			if(initialValue != null)
+				System.arraycopy(initialValue, 0, array, 0, offset);
+			for(int i = 0; i < values.size; i++) {
 				try {
-					Array.set(newArray, insertionIndex, parseOptionValue(value, optionType.componentType(), opt));
+					setArrayElement(array, offset+i, values.values[i], slot.elementType, slot.converter, values.name);
 				} catch (ArgumentError e) {
-					errors.add(e.getMessage());
-					return;
+					errors.add(values.invalidValue(e, i));
+					errors.checkFailFast();
 				}
-				optionField.set(optionObj, newArray);
-				return;
 			}
-			
-			Object argVal;
+			slot.set(optionObj, array);
+			return;
+		}
+		
+		Collection<Object> collection = optionType == Set.class ? new LinkedHashSet<>() : new ArrayList<>(values.size);
+		if(initialValue != null)
+			collection.addAll((Collection<?>) initialValue);
+		for(int i = 0; i < values.size; i++) {
 			try {
-				argVal = parseOptionValue(value, optionType, opt);
+				collection.add(slot.converter.convert(values.values[i], values.name));
 			} catch (ArgumentError e) {
-				errors.add(e.getMessage());
-				return;
+				errors.add(values.invalidValue(e, i));
+				errors.checkFailFast();
 			}
-			
-			if(PrimitiveUtils.isTruePrimitive(optionType)) {
-				PrimitiveUtils.setPrimitive(optionObj, optionField, (Number) argVal);
-			} else {
-				optionField.set(optionObj, argVal);
-			}
-		} catch (IllegalAccessException e) {
-			errors.add("Cannot set an option field value: " + e.getMessage());
 		}
+		slot.set(optionObj, collection);
 	}
 
 	public static boolean doesOptionTakeArgument(Class<?> type) {
@@ -166,17 +245,54 @@ class OptionsHelper {
 	
 }
 
+/**
+ * The raw values given to an array, list or set option and the indices of their
+ * tokens, in buffers which capacity doubles when they are full.
+ */
+final class RepeatedValues {
+	
+	final OptionSlot slot;
+	/** The name the option was first given with, used in error messages */
+	final String name;
+	String[] values = new String[4];
+	int[] tokenIndices = new int[4];
+	int size;
+	
+	RepeatedValues(OptionSlot slot, String name) {
+		this.slot = slot;
+		this.name = name;
+	}
+	
+	void add(String value, int tokenIndex) {
+		if(size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+			tokenIndices = Arrays.copyOf(tokenIndices, size * 2);
+		}
+		values[size] = value;
+		tokenIndices[size++] = tokenIndex;
+	}
+	
+	Diagnostic invalidValue(ArgumentError error, int i) {
+		return Diagnostic.invalidValue(error, tokenIndices[i], name, values[i], slot.elementType, slot.converter);
+	}
+	
+}
+
 class OptionKeyValuePair {
 	final String name;
 	final String value; // null only for options that do not take values (ie. booleans, ie. -y or -n)
+	/** The index of the option in the command, its value is the next argument */
+	final int tokenIndex;
 	
-	public OptionKeyValuePair(String name, String value) {
+	public OptionKeyValuePair(String name, String value, int tokenIndex) {
 		this.name = name;
 		this.value = Objects.requireNonNull(value);
+		this.tokenIndex = tokenIndex;
 	}
 	
-	public OptionKeyValuePair(String name) {
+	public OptionKeyValuePair(String name, int tokenIndex) {
 		this.name = name;
 		this.value = null;
+		this.tokenIndex = tokenIndex;
 	}
 }
@@ -0,0 +1,27 @@
+package fr.wonder.argparser;
+
+import fr.wonder.argparser.annotations.Argument;
+
+/**
+ * The immutable description of an entry point parameter.
+ */
+final class ParameterDescriptor {
+	
+	/** The name given by the {@link Argument} annotation, or the name of the parameter */
+	final String name;
+	final String desc;
+	final Class<?> type;
+	/** The converter of the values, of the elements for arrays and lazy parameters, {@code null} for option classes */
+	final ValueConverter<?> converter;
+	/** The converted default value, {@code null} if there is none or if the parameter is lazy */
+	final Object defaultValue;
+	
+	ParameterDescriptor(String name, String desc, Class<?> type, ValueConverter<?> converter, Object defaultValue) {
+		this.name = name;
+		this.desc = desc;
+		this.type = type;
+		this.converter = converter;
+		this.defaultValue = defaultValue;
+	}
+	
+}
@@ -1,27 +1,47 @@
 package fr.wonder.argparser;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Set;
 
+import fr.wonder.argparser.CommandBinder.Declarations;
+import fr.wonder.argparser.CommandBinder.HolderDeclaration;
+import fr.wonder.argparser.CommandBinder.OptionDeclaration;
 import fr.wonder.argparser.annotations.InnerOptions;
 import fr.wonder.argparser.annotations.Option;
 import fr.wonder.argparser.annotations.OptionClass;
+import fr.wonder.argparser.utils.BKTree;
 
 final class ProcessOptions {
 	
-	private final Map<String, Field> optionFields;
+	private final Map<String, OptionSlot> optionSlots;
+	private final OptionHolder[] holders;
 	private final Class<?> clazz;
+	private final OptionTable optionTable;
+	private final int slotCount;
+	/** The long option names, to suggest the nearest ones of unknown options */
+	private final BKTree longNameIndex;
 	
-	private ProcessOptions(Class<?> clazz, Map<String, Field> optionFields) {
+	private ProcessOptions(Class<?> clazz, Map<String, OptionSlot> optionSlots, OptionHolder[] holders) {
 		this.clazz = Objects.requireNonNull(clazz);
-		this.optionFields = Objects.requireNonNull(optionFields);
+		this.optionSlots = Objects.requireNonNull(optionSlots);
+		this.holders = Objects.requireNonNull(holders);
+		this.optionTable = OptionTable.forOptionClass(this);
+		this.slotCount = (int) optionSlots.values().stream().distinct().count();
+		this.longNameIndex = new BKTree(optionSlots.keySet().stream().filter(name -> name.startsWith("--")).sorted().toArray(String[]::new), false);
 	}
 	
 	static ProcessOptions createOptionsClass(Class<?> clazz) throws InvalidDeclarationError {
@@ -32,9 +52,72 @@ final class ProcessOptions {
 		Map<String, Field> optionFields = new HashMap<>();
 		collectOptionFields(clazz, optionFields);
 		
-		return new ProcessOptions(clazz, optionFields);
+		List<OptionHolder> holders = new ArrayList<>();
+		Map<Class<?>, Integer> holdersIndices = new HashMap<>();
+		collectHolders(clazz, -1, null, holders, holdersIndices, new HashSet<>());
+		
+		Map<String, OptionSlot> optionSlots = new HashMap<>();
+		Map<Field, OptionSlot> fieldsSlots = new HashMap<>();
+		for(Entry<String, Field> option : optionFields.entrySet()) {
+			Field field = option.getValue();
+			OptionSlot slot = fieldsSlots.get(field);
+			if(slot == null) {
+				Integer holderIndex = holdersIndices.get(field.getDeclaringClass());
+				if(holderIndex == null)
+					throw new InvalidDeclarationError("Could not find an instance of " + field.getDeclaringClass() + " for option field " + field + " in a " + clazz.getSimpleName());
+				Class<?> elementType = getRepeatedElementType(field);
+				ValueConverter<?> converter = ValueConverters.get(elementType != null ? elementType : field.getType());
+				if(converter == null)
+					throw new InvalidDeclarationError("Option field " + field + " has invalid type " + field.getType().getName());
+				Option opt = field.getAnnotation(Option.class);
+				slot = new OptionSlot(fieldsSlots.size(), opt.name(), opt.shorthand(), opt.valueName(), opt.desc(),
+						field.getType(), holderIndex, elementType, converter, getFieldHandle(field));
+				fieldsSlots.put(field, slot);
+			}
+			optionSlots.put(option.getKey(), slot);
+		}
+		
+		return new ProcessOptions(clazz, optionSlots, holders.toArray(OptionHolder[]::new));
 	}
 	
+	/**
+	 * Creates the option class of the holder {@code rootHolder} of a binder, from
+	 * declarations validated at compile time. Only the converters are looked up,
+	 * they may be registered at runtime.
+	 */
+	static ProcessOptions createOptionsClass(CommandBinder binder, Declarations declarations, int rootHolder) throws InvalidDeclarationError {
+		// holders are declared parents first, the holders of the option class follow its root
+		List<OptionHolder> holders = new ArrayList<>();
+		Map<Integer, Integer> holdersIndices = new HashMap<>();
+		for(HolderDeclaration holder : declarations.holders) {
+			Integer parentIndex = holdersIndices.get(holder.parentHolder);
+			if(holder.holder != rootHolder && parentIndex == null)
+				continue;
+			holdersIndices.put(holder.holder, holders.size());
+			holders.add(new OptionHolder(holder.type, parentIndex == null ? -1 : parentIndex, binder, holder.holder, holder.parentField));
+		}
+		if(holders.isEmpty())
+			throw new InvalidDeclarationError("Binder " + binder.getClass().getName() + " does not declare holder " + rootHolder);
+		
+		Map<String, OptionSlot> optionSlots = new HashMap<>();
+		int slotCount = 0;
+		for(OptionDeclaration option : declarations.options) {
+			Integer holderIndex = holdersIndices.get(option.holder);
+			if(holderIndex == null)
+				continue;
+			Class<?> elementType = option.type.isArray() ? option.type.componentType() : option.elementType;
+			ValueConverter<?> converter = ValueConverters.get(elementType != null ? elementType : option.type);
+			if(converter == null)
+				throw new InvalidDeclarationError("Option " + option.name + " of " + holders.get(holderIndex).type.getName() + " has invalid type " + option.type.getName());
+			OptionSlot slot = new OptionSlot(slotCount++, option.name, option.shorthand, option.valueName, option.desc,
+					option.type, holderIndex, elementType, converter, binder, option.field);
+			optionSlots.put(option.name, slot);
+			if(!option.shorthand.isEmpty())
+				optionSlots.put(option.shorthand, slot);
+		}
+		return new ProcessOptions(holders.get(0).type, optionSlots, holders.toArray(OptionHolder[]::new));
+	}
+
 	private static Constructor<?> getDefaultConstructor(Class<?> clazz) throws InvalidDeclarationError {
 		try {
 			Constructor<?> constructor = clazz.getDeclaredConstructor();
@@ -70,7 +153,11 @@ final class ProcessOptions {
 			String name = opt.name();
 			String shortand = opt.shorthand();
 			
-			if(!ArgParserHelper.canBeArgumentType(type, true, true))
+			if(ArgParserHelper.isCollectionOptionType(type)) {
+				Class<?> elementType = ArgParserHelper.getElementType(f.getGenericType());
+				if(elementType == null || !ArgParserHelper.canBeArgumentType(elementType, false, false))
+					throw new InvalidDeclarationError("Option of field " + f + " in option class " + clazz.getName() + " has invalid element type " + f.getGenericType());
+			} else if(!ArgParserHelper.canBeArgumentType(type, true, true))
 				throw new InvalidDeclarationError("Option of field " + f + " in option class " + clazz.getName() + " has invalid type " + type.getName());
 			if(!ArgParserHelper.canBeOptionName(name))
 				throw new InvalidDeclarationError("Name " + name + " in option class " + clazz.getName() + " cannot be an option on field " + f);
@@ -90,67 +177,116 @@ final class ProcessOptions {
 			throw new InvalidDeclarationError("Name '" + name + "' of field '" + field + "' collides with field '" + overridenField + "'");
 	}
 	
-	public Object newInstance() {
+	/**
+	 * Flattens the option class hierarchy into a list of holders, one per (inner)
+	 * option class instance. Holders are listed parents first, so that instances can
+	 * be created in order, see {@link #newInstances()}.
+	 * <p>
+	 * Every non-static member of an option class which type is an option class is instantiated,
+	 * the option fields are then mapped to the instance of their declaring class. This
+	 * works because the same OptionClass type cannot be used more than once in an
+	 * OptionClass hierarchy, so the whole class hierarchy can be flatten to a map.
+	 */
+	private static void collectHolders(Class<?> optionClass, int parentIndex, Field parentField,
+			List<OptionHolder> holders, Map<Class<?>, Integer> holdersIndices, Set<Class<?>> visiting) throws InvalidDeclarationError {
+		if(!visiting.add(optionClass))
+			throw new InvalidDeclarationError("Option class " + optionClass.getName() + " contains itself");
+		
+		int index = holders.size();
+		MethodHandle constructor;
+		try {
+			constructor = MethodHandles.lookup()
+					.unreflectConstructor(getDefaultConstructor(optionClass))
+					.asType(MethodType.methodType(Object.class));
+		} catch (IllegalAccessException e) {
+			throw new InvalidDeclarationError("Option class " + optionClass.getName() + " cannot be instantiated", e);
+		}
+		holders.add(new OptionHolder(optionClass, parentIndex, constructor, parentField == null ? null : getFieldHandle(parentField)));
+		holdersIndices.put(optionClass, index);
+		
+		for(Field f : optionClass.getDeclaredFields()) {
+			// static members are not part of the instances, they are left as they are
+			if(!Modifier.isStatic(f.getModifiers()) && f.getType().isAnnotationPresent(OptionClass.class))
+				collectHolders(f.getType(), index, f, holders, holdersIndices, visiting);
+		}
+		visiting.remove(optionClass);
+	}
+	
+	/**
+	 * Returns the type of the values of an option that can be repeated (arrays,
+	 * lists and sets), or {@code null} if the option keeps its last value.
+	 */
+	private static Class<?> getRepeatedElementType(Field field) {
+		Class<?> type = field.getType();
+		if(type.isArray())
+			return type.componentType();
+		if(ArgParserHelper.isCollectionOptionType(type))
+			return ArgParserHelper.getElementType(field.getGenericType());
+		return null;
+	}
+	
+	private static VarHandle getFieldHandle(Field field) throws InvalidDeclarationError {
+		if(Modifier.isFinal(field.getModifiers()))
+			throw new InvalidDeclarationError("Option field " + field + " must not be final");
 		try {
-			return createOptionClassInstance(clazz);
-		} catch (IllegalAccessException | InvocationTargetException | InstantiationException | InvalidDeclarationError e) {
-			throw new IllegalStateException("Cannot instantiace option class " + clazz, e);
+			return MethodHandles.lookup().unreflectVarHandle(field);
+		} catch (IllegalAccessException e) {
+			throw new InvalidDeclarationError("Option field " + field + " cannot be accessed, did you make it public?", e);
 		}
 	}
 	
 	/**
-	 * Creates a new instance of the given option class, with its inner option class filled
-	 * with empty instances.
+	 * Creates a new instance of the option class, with its inner option classes filled
+	 * with empty instances. The returned array contains all the created instances,
+	 * the option class instance is at index 0, other indices match
+	 * {@link OptionSlot#holderIndex}.
 	 */
-	private static Object createOptionClassInstance(Class<?> optionClass)
-			throws IllegalAccessException, InvocationTargetException, InstantiationException, InvalidDeclarationError {
-		Object instance = getDefaultConstructor(optionClass).newInstance();
-		for(Field f : optionClass.getDeclaredFields()) {
-			if(f.getType().isAnnotationPresent(OptionClass.class)) {
-				f.set(instance, createOptionClassInstance(f.getType()));
+	public Object[] newInstances() {
+		Object[] instances = new Object[holders.length];
+		for(int i = 0; i < holders.length; i++) {
+			OptionHolder holder = holders[i];
+			try {
+				instances[i] = holder.newInstance();
+			} catch (Throwable e) {
+				throw new IllegalStateException("Cannot instantiace option class " + clazz, e);
 			}
+			if(holder.parentIndex >= 0)
+				holder.attach(instances[holder.parentIndex], instances[i]);
 		}
-		return instance;
+		return instances;
 	}
 	
 	public Collection<String> getAvailableOptionNames() {
-		Collection<String> options = new ArrayList<>(optionFields.keySet());
+		Collection<String> options = new ArrayList<>(optionSlots.keySet());
 		options.removeIf(opt -> !ArgParserHelper.canBeOptionName(opt));
 		return options;
 	}
 	
-	public Map<String, Field> getOptionFields() {
-		return optionFields;
+	/** Returns the slots of the options by name and shorthand */
+	public Map<String, OptionSlot> getOptionSlots() {
+		return optionSlots;
 	}
 
+	public OptionTable getOptionTable() {
+		return optionTable;
+	}
+	
+	/** Returns the number of option fields, slot indices are below this number */
+	public int getSlotCount() {
+		return slotCount;
+	}
+	
+	/** Returns the long option names nearest to the unknown option {@code name} */
+	public List<String> suggestOptionNames(String name) {
+		return Suggestions.find(longNameIndex, name);
+	}
+	
 	/**
-	 * When using {@link #newInstance()} a new instance of the OptionClass is created,
-	 * if it has OptionClass fields they are initialized. When options values are filled
-	 * in the Field objects are used to set values of OptionClass objects, the field itself
-	 * does not know which object it corresponds to so this method maps the fields'
-	 * types (only for fields of type OptionClass) to the objects instances of their
-	 * types in the generated instance.
-	 * 
-	 * This works because the same OptionClass type cannot be used more than once in
-	 * an OptionClass hierarchy, so the whole class hierarchy can be flatten to a map.
+	 * Returns the slot of an option by its name or shorthand, or {@code null} if
+	 * this option class does not declare that option.
 	 */
-	public Map<Class<?>, Object> getAllOptionFields(Object instance) throws IllegalAccessException {
-		if(instance.getClass() != clazz)
-			throw new IllegalArgumentException("Expected an instance of " + clazz + ", got an instance of " + instance.getClass());
-		Map<Class<?>, Object> fields = new HashMap<>();
-		fields.put(clazz, instance);
-		collectOptionsFields(instance, fields);
-		return fields;
-	}
-	
-	private static void collectOptionsFields(Object instance, Map<Class<?>, Object> fieldsMap) throws IllegalAccessException {
-		for(Field f : instance.getClass().getDeclaredFields()) {
-			if(f.getType().isAnnotationPresent(OptionClass.class)) {
-				Object fieldInstance = f.get(instance);
-				fieldsMap.put(f.getType(), fieldInstance);
-				collectOptionsFields(fieldInstance, fieldsMap);
-			}
-		}
+	public OptionSlot getOptionSlot(String name) {
+		return optionSlots.get(name);
 	}
 	
-}
\ No newline at end of file
+}
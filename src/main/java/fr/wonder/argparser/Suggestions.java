@@ -0,0 +1,56 @@
+package fr.wonder.argparser;
+
+import java.util.List;
+
+import fr.wonder.argparser.utils.BKTree;
+
+/**
+ * "Did you mean" suggestions for mistyped command words, options and enum
+ * values, looked up in the {@link BKTree}s built with the schema.
+ *
+ * <p>
+ * Names are suggested if they are at most one edit away from short words and two
+ * edits away from longer ones, only the nearest names are suggested.
+ */
+final class Suggestions {
+
+	private static final int MAX_SUGGESTIONS = 3;
+
+	private Suggestions() {}
+
+	static List<String> find(BKTree index, String word) {
+		int maxDistance = word.length() < 5 ? 1 : 2;
+		return index.nearest(word, maxDistance, MAX_SUGGESTIONS);
+	}
+
+	/**
+	 * Returns {@code ", did you mean 'a'?"} or {@code ", did you mean 'a' or 'b'?"},
+	 * or an empty string if there are no suggestions.
+	 */
+	static String format(List<String> suggestions) {
+		if(suggestions.isEmpty())
+			return "";
+		StringBuilder sb = new StringBuilder(", did you mean ");
+		for(int i = 0; i < suggestions.size(); i++) {
+			if(i != 0)
+				sb.append(i == suggestions.size()-1 ? " or " : ", ");
+			sb.append('\'').append(suggestions.get(i)).append('\'');
+		}
+		return sb.append('?').toString();
+	}
+
+	/**
+	 * Returns an object which string form is the formatted suggestions for
+	 * {@code word}, to be given as an {@link ArgumentError} template argument so
+	 * that the index is only searched if the message is read.
+	 */
+	static Object hint(BKTree index, String word) {
+		return new Object() {
+			@Override
+			public String toString() {
+				return format(find(index, word));
+			}
+		};
+	}
+
+}
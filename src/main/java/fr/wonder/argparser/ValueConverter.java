@@ -0,0 +1,24 @@
+package fr.wonder.argparser;
+
+/**
+ * Converts the string given to an argument or an option to the type of the
+ * parameter or field receiving it.
+ *
+ * <p>
+ * Converters are looked up in the {@link ValueConverters} registry when the
+ * entry points and option classes are created, not when values are converted.
+ *
+ * @param <T> the type of the converted values
+ */
+@FunctionalInterface
+public interface ValueConverter<T> {
+
+	/**
+	 * Converts {@code value}, {@code argName} is the name of the argument or of
+	 * the option it was given to, to be used in error messages.
+	 *
+	 * @throws ArgumentError if the value cannot be converted
+	 */
+	T convert(String value, String argName) throws ArgumentError;
+
+}
@@ -0,0 +1,289 @@
+package fr.wonder.argparser;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import fr.wonder.argparser.utils.StringUtils;
+
+/**
+ * The registry of the {@link ValueConverter}s used to convert arguments and
+ * option values.
+ *
+ * <p>
+ * Converters exist for primitive types and their boxed types, {@code String},
+ * {@code File}, {@code Path}, {@code InetAddress} (IP literals only, host names
+ * are not resolved), enums (by name, ignoring case) and arrays of these. Other
+ * types are
+ * converted by their first public static factory among {@code valueOf(String)},
+ * {@code of(String)}, {@code parse(CharSequence)}, {@code parse(String)} and
+ * {@code fromString(String)} returning the type itself, which covers
+ * {@code UUID}, {@code Duration}, {@code Instant}, {@code BigDecimal}... Factories
+ * are discovered once per type and called through a cached method handle.
+ *
+ * <p>
+ * Converters registered with {@link #register(Class, ValueConverter)} take
+ * precedence over the discovered ones. Because converters are resolved when a
+ * {@link CommandSchema} is created, they must be registered before the schemas
+ * using them.
+ */
+public final class ValueConverters {
+
+	private static final String[] FACTORY_NAMES = { "valueOf", "of", "parse", "parse", "fromString" };
+	private static final Class<?>[] FACTORY_PARAMETERS = { String.class, String.class, CharSequence.class, String.class, String.class };
+	private static final MethodType FACTORY_TYPE = MethodType.methodType(Object.class, String.class);
+
+	private static final Map<Class<?>, ValueConverter<?>> registered = new ConcurrentHashMap<>();
+
+	/** Converters of types that were not registered, {@code null} for types that cannot be converted */
+	private static final ClassValue<ValueConverter<?>> discovered = new ClassValue<>() {
+		@Override
+		protected ValueConverter<?> computeValue(Class<?> type) {
+			return discoverConverter(type);
+		}
+	};
+
+	static {
+		registerPrimitive(boolean.class, Boolean.class, OptionsHelper::parseBoolean);
+		registerPrimitive(int.class, Integer.class, OptionsHelper::parseInt);
+		registerPrimitive(long.class, Long.class, OptionsHelper::parseLong);
+		registerPrimitive(double.class, Double.class, OptionsHelper::parseDouble);
+		registerPrimitive(float.class, Float.class, OptionsHelper::parseFloat);
+		registerPrimitive(short.class, Short.class, OptionsHelper::parseShort);
+		registerPrimitive(byte.class, Byte.class, OptionsHelper::parseByte);
+		registerPrimitive(char.class, Character.class, OptionsHelper::parseChar);
+		register(String.class, (value, argName) -> value);
+		register(File.class, ValueConverters::convertFile);
+		register(Path.class, ValueConverters::convertPath);
+		register(InetAddress.class, ValueConverters::convertInetAddress);
+	}
+
+	private ValueConverters() {}
+
+	private static <T> void registerPrimitive(Class<?> primitiveType, Class<T> boxedType, ValueConverter<T> converter) {
+		registered.put(primitiveType, converter);
+		registered.put(boxedType, converter);
+	}
+
+	/**
+	 * Registers the converter of {@code type}, replacing the previous one. The
+	 * converter is used by the schemas created after this call.
+	 *
+	 * @throws IllegalArgumentException if {@code type} is primitive or an array
+	 */
+	public static <T> void register(Class<T> type, ValueConverter<? extends T> converter) {
+		Objects.requireNonNull(converter);
+		if(type.isPrimitive() || type.isArray())
+			throw new IllegalArgumentException("Cannot register a converter for type " + type.getName());
+		registered.put(type, converter);
+	}
+
+	/**
+	 * Returns the converter of {@code type}, or {@code null} if values of this type
+	 * cannot be converted.
+	 */
+	public static ValueConverter<?> get(Class<?> type) {
+		ValueConverter<?> converter = registered.get(type);
+		return converter != null ? converter : discovered.get(type);
+	}
+
+	private static ValueConverter<?> discoverConverter(Class<?> type) {
+		if(type.isArray()) {
+			Class<?> componentType = type.componentType();
+			ValueConverter<?> componentConverter = get(componentType);
+			return componentConverter == null || componentType.isArray() ? null :
+				(value, argName) -> convertArray(value, componentType, componentConverter, argName);
+		}
+		if(type.isEnum())
+			return new EnumConverter(type);
+		if(type.isPrimitive() || !Modifier.isPublic(type.getModifiers()))
+			return null;
+		for(int i = 0; i < FACTORY_NAMES.length; i++) {
+			MethodHandle factory = findFactory(type, FACTORY_NAMES[i], FACTORY_PARAMETERS[i]);
+			if(factory != null)
+				return (value, argName) -> invokeFactory(factory, value, type, argName);
+		}
+		return null;
+	}
+
+	private static MethodHandle findFactory(Class<?> type, String name, Class<?> parameterType) {
+		try {
+			Method method = type.getMethod(name, parameterType);
+			if(!Modifier.isStatic(method.getModifiers()) || !type.isAssignableFrom(method.getReturnType()))
+				return null;
+			return MethodHandles.publicLookup().unreflect(method).asType(FACTORY_TYPE);
+		} catch (NoSuchMethodException | IllegalAccessException | SecurityException e) {
+			return null;
+		}
+	}
+
+	private static Object invokeFactory(MethodHandle factory, String value, Class<?> type, String argName) throws ArgumentError {
+		try {
+			Object converted = (Object) factory.invokeExact(value);
+			if(converted == null)
+				throw new ArgumentError("Invalid {} for <{}>, got '{}'", type.getSimpleName(), argName, value);
+			return converted;
+		} catch (ArgumentError | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new ArgumentError("Invalid {} for <{}>, got '{}': {}", type.getSimpleName(), argName, value, e.getMessage());
+		}
+	}
+
+	private static Object convertArray(String value, Class<?> componentType, ValueConverter<?> componentConverter, String argName) throws ArgumentError {
+		String[] parts = StringUtils.splitCLIArgs(value);
+		Object array = Array.newInstance(componentType, parts.length);
+		for(int i = 0; i < parts.length; i++)
+			OptionsHelper.setArrayElement(array, i, parts[i], componentType, componentConverter, argName + "[" + i + "]");
+		return array;
+	}
+
+	/**
+	 * Sets the maximum number of canonical paths of {@code File} arguments kept in
+	 * cache, by working directory and path given by the user, 0 to disable the
+	 * cache (the default). Cached paths are not updated when links are changed.
+	 */
+	public static void setCanonicalPathCacheSize(int maxEntries) {
+		CanonicalPaths.setCacheSize(maxEntries);
+	}
+
+	/**
+	 * Files are resolved against the working directory of the current
+	 * {@link CommandContext}, their canonical form is computed when
+	 * {@link File#getCanonicalFile()} is first called.
+	 */
+	private static File convertFile(String value, String argName) throws ArgumentError {
+		Path workingDirectory = CommandContext.current().getWorkingDirectory();
+		return new LazyCanonicalFile(workingDirectory, resolvePath(workingDirectory, value), value);
+	}
+
+	/**
+	 * Paths are resolved against the working directory of the current
+	 * {@link CommandContext}. They are not normalized: collapsing {@code ..}
+	 * without resolving links would designate another file when the path goes
+	 * through a link, use {@link Path#toRealPath} to resolve them.
+	 */
+	private static Path convertPath(String value, String argName) throws ArgumentError {
+		return resolvePath(CommandContext.current().getWorkingDirectory(), value);
+	}
+
+	private static Path resolvePath(Path workingDirectory, String value) throws ArgumentError {
+		try {
+			return workingDirectory.resolve(value);
+		} catch (InvalidPathException e) {
+			throw new ArgumentError("Cannot resolve file {}: {}", value, e.getMessage());
+		}
+	}
+
+	/**
+	 * Only IPv4 literals in dotted-decimal form and IPv6 literals, optionally in
+	 * brackets, are converted. Host names are rejected instead of being resolved,
+	 * parsing must not block on a DNS lookup: bind host names as {@code String}s and
+	 * resolve them in the entry point.
+	 */
+	private static InetAddress convertInetAddress(String value, String argName) throws ArgumentError {
+		// getByName falls back to a name lookup for anything that is not a valid literal
+		if(!isIPv4Literal(value) && !isIPv6Literal(value))
+			throw new ArgumentError("Expected an IP address for <{}>, got '{}'", argName, value);
+		try {
+			// a literal is parsed without any lookup, an unknown scope is rejected
+			return InetAddress.getByName(value);
+		} catch (UnknownHostException e) {
+			throw new ArgumentError("Expected an IP address for <{}>, got '{}'", argName, value);
+		}
+	}
+
+	private static boolean isIPv4Literal(String value) {
+		int parts = 0;
+		int part = -1;
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c == '.') {
+				if(part < 0 || ++parts > 3)
+					return false;
+				part = -1;
+			} else if(c >= '0' && c <= '9') {
+				if(part == 0)
+					return false; // no leading zero, "010" could be read as octal
+				part = (part < 0 ? 0 : part*10) + c - '0';
+				if(part > 255)
+					return false;
+			} else {
+				return false;
+			}
+		}
+		return parts == 3 && part >= 0;
+	}
+
+	/**
+	 * Returns true if {@code value} is an IPv6 literal: colon separated hex groups,
+	 * at most one {@code ::}, an optional trailing dotted IPv4 part, optional
+	 * brackets and an optional {@code %scope}.
+	 */
+	private static boolean isIPv6Literal(String value) {
+		if(value.length() > 2 && value.charAt(0) == '[' && value.charAt(value.length()-1) == ']')
+			value = value.substring(1, value.length()-1);
+		int scope = value.indexOf('%');
+		if(scope >= 0) {
+			if(scope == value.length()-1)
+				return false;
+			for(int i = scope+1; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if(!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9') && c != '_' && c != '-' && c != '.')
+					return false;
+			}
+			value = value.substring(0, scope);
+		}
+		int lastColon = value.lastIndexOf(':');
+		if(lastColon < 0)
+			return false;
+		if(value.indexOf('.', lastColon) >= 0) {
+			// the IPv4 part stands for the last two groups
+			if(!isIPv4Literal(value.substring(lastColon+1)))
+				return false;
+			value = value.substring(0, lastColon+1) + "0:0";
+		}
+		int doubleColon = value.indexOf("::");
+		if(doubleColon < 0)
+			return countHexGroups(value) == 8;
+		if(value.indexOf("::", doubleColon+1) >= 0)
+			return false;
+		int head = countHexGroups(value.substring(0, doubleColon));
+		int tail = countHexGroups(value.substring(doubleColon+2));
+		return head >= 0 && tail >= 0 && head + tail <= 7;
+	}
+
+	/** Returns the number of colon separated groups of 1 to 4 hex digits, or -1 if a group is invalid */
+	private static int countHexGroups(String groups) {
+		if(groups.isEmpty())
+			return 0;
+		int count = 1;
+		int digits = 0;
+		for(int i = 0; i < groups.length(); i++) {
+			char c = groups.charAt(i);
+			if(c == ':') {
+				if(digits == 0)
+					return -1;
+				count++;
+				digits = 0;
+			} else if(Character.digit(c, 16) >= 0 && c < 128 && ++digits <= 4) {
+				continue;
+			} else {
+				return -1;
+			}
+		}
+		return digits == 0 ? -1 : count;
+	}
+
+}
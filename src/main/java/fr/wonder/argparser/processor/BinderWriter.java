@@ -0,0 +1,415 @@
+package fr.wonder.argparser.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+
+import fr.wonder.argparser.CommandBinder;
+import fr.wonder.argparser.annotations.Argument;
+import fr.wonder.argparser.annotations.Arguments;
+import fr.wonder.argparser.annotations.EntryPoint;
+import fr.wonder.argparser.annotations.InnerOptions;
+import fr.wonder.argparser.annotations.Option;
+import fr.wonder.argparser.annotations.OptionClass;
+import fr.wonder.argparser.annotations.ProcessDoc;
+
+/**
+ * Writes the {@link CommandBinder} of an entry point class validated by the
+ * {@link DeclarationProcessor}.
+ *
+ * <p>
+ * Holders are laid out as {@code ProcessOptions} lays them out: one per
+ * instance of an (inner) option class, parents first, one tree per option class
+ * of an entry point. Fields are numbered once, whatever the holders they
+ * appear in.
+ */
+final class BinderWriter {
+
+	private static final String[] PRIMITIVE_SETTERS = { "int", "long", "double", "float", "short", "byte", "char" };
+
+	private final ProcessingEnvironment env;
+	private final TypeElement owner;
+	private final List<ExecutableElement> methods;
+	private final String packageName;
+	private final String binderName;
+
+	/** The option and inner option fields, by index */
+	private final Map<VariableElement, Integer> fields = new LinkedHashMap<>();
+	private final List<Holder> holders = new ArrayList<>();
+	/** The root holder of the option class of each entry point */
+	private final Map<TypeElement, Integer> rootHolders = new LinkedHashMap<>();
+	/** The option fields of the option class of each entry point */
+	private final Map<TypeElement, Set<VariableElement>> optionFields = new HashMap<>();
+
+	BinderWriter(ProcessingEnvironment env, TypeElement owner, List<ExecutableElement> methods) {
+		this.env = env;
+		this.owner = owner;
+		this.methods = methods;
+		this.packageName = env.getElementUtils().getPackageOf(owner).getQualifiedName().toString();
+		String binaryName = env.getElementUtils().getBinaryName(owner).toString();
+		this.binderName = binaryName.substring(binaryName.lastIndexOf('.')+1).replace('$', '_') + CommandBinder.BINDER_SUFFIX;
+		for(ExecutableElement m : methods) {
+			TypeElement optionClass = getOptionClass(m);
+			if(optionClass == null || rootHolders.containsKey(optionClass))
+				continue;
+			rootHolders.put(optionClass, addHolders(optionClass, -1, null));
+			Set<VariableElement> options = new LinkedHashSet<>();
+			collectOptionFields(optionClass, options);
+			optionFields.put(optionClass, options);
+		}
+	}
+
+	String getBinderName() {
+		return packageName.isEmpty() ? binderName : packageName + "." + binderName;
+	}
+
+	/**
+	 * Returns the first element that generated code cannot reference, or
+	 * {@code null} if the binder can be written.
+	 */
+	Element findInaccessibleElement() {
+		if(owner.getNestingKind() != NestingKind.TOP_LEVEL && owner.getNestingKind() != NestingKind.MEMBER)
+			return owner;
+		if(!isAccessible(owner.asType()))
+			return owner;
+		for(ExecutableElement m : methods) {
+			if(m.getModifiers().contains(Modifier.PRIVATE))
+				return m;
+			for(VariableElement parameter : m.getParameters()) {
+				if(!isAccessible(parameter.asType()))
+					return parameter;
+			}
+		}
+		for(Holder holder : holders) {
+			if(!isAccessible(holder.type))
+				return holder.type;
+		}
+		for(VariableElement field : fields.keySet()) {
+			if(!isAccessible(field.asType()))
+				return field;
+		}
+		return null;
+	}
+
+	private boolean isAccessible(TypeMirror type) {
+		if(type.getKind().isPrimitive())
+			return true;
+		if(type.getKind() == TypeKind.ARRAY)
+			return isAccessible(((ArrayType) type).getComponentType());
+		if(type.getKind() != TypeKind.DECLARED)
+			return false;
+		if(!isAccessible(((DeclaredType) type).asElement()))
+			return false;
+		for(TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+			TypeMirror bound = argument.getKind() == TypeKind.WILDCARD ? ((WildcardType) argument).getExtendsBound() : argument;
+			if(bound != null && bound.getKind() == TypeKind.DECLARED && !isAccessible(bound))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean isAccessible(Element element) {
+		PackageElement pkg = env.getElementUtils().getPackageOf(element);
+		boolean samePackage = pkg.getQualifiedName().contentEquals(packageName);
+		for(Element e = element; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+			Set<Modifier> modifiers = e.getModifiers();
+			if(modifiers.contains(Modifier.PRIVATE) || (!samePackage && !modifiers.contains(Modifier.PUBLIC)))
+				return false;
+		}
+		return true;
+	}
+
+	void write() throws IOException {
+		StringBuilder out = new StringBuilder();
+		if(!packageName.isEmpty())
+			out.append("package ").append(packageName).append(";\n\n");
+		out.append("/**\n * The binder of {@link ").append(owner.getQualifiedName())
+				.append("}, generated by the argparser declaration processor.\n */\n");
+		out.append("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+		out.append("public final class ").append(binderName).append(" extends fr.wonder.argparser.CommandBinder {\n\n");
+		out.append("\tpublic ").append(binderName).append("() {\n");
+		out.append("\t\tsuper(").append(typeName(owner.asType())).append(".class);\n");
+		out.append("\t}\n\n");
+		writeDeclare(out);
+		writeInvoke(out);
+		writeNewHolder(out);
+		writeGet(out);
+		writeSet(out, "Object", "set", null);
+		for(String primitive : PRIMITIVE_SETTERS)
+			writeSet(out, primitive, "set" + Character.toUpperCase(primitive.charAt(0)) + primitive.substring(1), TypeKind.valueOf(primitive.toUpperCase()));
+		out.append("}\n");
+
+		try (Writer writer = env.getFiler().createSourceFile(getBinderName(), owner).openWriter()) {
+			writer.write(out.toString());
+		}
+	}
+
+	private void writeDeclare(StringBuilder out) {
+		out.append("\t@Override\n");
+		out.append("\tprotected void declare(fr.wonder.argparser.CommandBinder.Declarations d) {\n");
+		ProcessDoc doc = owner.getAnnotation(ProcessDoc.class);
+		if(doc != null)
+			out.append("\t\td.processDoc(").append(literal(doc.doc())).append(");\n");
+		for(Holder holder : holders) {
+			out.append("\t\td.holder(").append(holder.index).append(", ").append(typeName(holder.type.asType())).append(".class, ")
+					.append(holder.parent).append(", ").append(holder.parentField).append(");\n");
+		}
+		for(Map.Entry<TypeElement, Integer> root : rootHolders.entrySet()) {
+			Map<TypeElement, Integer> holdersByType = new HashMap<>();
+			for(int i = root.getValue(); i < holders.size() && (i == root.getValue() || holders.get(i).parent >= root.getValue()); i++)
+				holdersByType.put(holders.get(i).type, i);
+			for(VariableElement field : optionFields.get(root.getKey())) {
+				Option opt = field.getAnnotation(Option.class);
+				TypeMirror type = field.asType();
+				boolean isCollection = isDeclaredAs(type, List.class.getName(), Set.class.getName());
+				out.append("\t\td.option(").append(fields.get(field)).append(", ")
+						.append(holdersByType.get((TypeElement) field.getEnclosingElement())).append(", ")
+						.append(literal(opt.name())).append(", ")
+						.append(literal(opt.shorthand())).append(", ")
+						.append(literal(opt.valueName())).append(", ")
+						.append(literal(opt.desc())).append(", ")
+						.append(typeName(type)).append(".class, ")
+						.append(isCollection ? typeName(getElementType(type)) + ".class" : "null").append(");\n");
+			}
+		}
+		for(int i = 0; i < methods.size(); i++) {
+			ExecutableElement m = methods.get(i);
+			EntryPoint entryPoint = m.getAnnotation(EntryPoint.class);
+			TypeElement optionClass = getOptionClass(m);
+			out.append("\t\td.entryPoint(").append(i).append(", ")
+					.append(literal(entryPoint.path())).append(", ")
+					.append(literal(entryPoint.help())).append(", ")
+					.append(m.getModifiers().contains(Modifier.STATIC)).append(", ")
+					.append(optionClass == null ? -1 : rootHolders.get(optionClass)).append(", ")
+					.append(literal(describe(m))).append(")");
+			List<? extends VariableElement> parameters = m.getParameters();
+			Argument[] arguments = getArgumentAnnotations(m);
+			int optionsOffset = optionClass != null ? 1 : 0;
+			for(int p = 0; p < parameters.size(); p++) {
+				VariableElement parameter = parameters.get(p);
+				Argument argument = arguments == null || p < optionsOffset ? null : arguments[p - optionsOffset];
+				String javaName = parameter.getSimpleName().toString();
+				TypeMirror type = parameter.asType();
+				boolean isLazy = p == parameters.size()-1 && p >= optionsOffset &&
+						isDeclaredAs(type, Iterable.class.getName(), java.util.Iterator.class.getName(), java.util.stream.Stream.class.getName());
+				out.append("\n\t\t\t\t.parameter(")
+						.append(literal(javaName)).append(", ")
+						.append(literal(argument == null ? javaName : argument.name())).append(", ")
+						.append(literal(argument == null ? "" : argument.desc())).append(", ")
+						.append(typeName(type)).append(".class, ")
+						.append(isLazy ? typeName(getElementType(type)) + ".class" : "null").append(", ")
+						.append(literal(argument == null ? "" : argument.defaultValue())).append(")");
+			}
+			out.append(";\n");
+		}
+		out.append("\t}\n\n");
+	}
+
+	private void writeInvoke(StringBuilder out) {
+		out.append("\t@Override\n");
+		out.append("\tprotected void invoke(int entryPoint, Object callee, Object[] arguments) throws Throwable {\n");
+		out.append("\t\tswitch(entryPoint) {\n");
+		for(int i = 0; i < methods.size(); i++) {
+			ExecutableElement m = methods.get(i);
+			out.append("\t\tcase ").append(i).append(":\n\t\t\t");
+			if(m.getModifiers().contains(Modifier.STATIC))
+				out.append(typeName(owner.asType()));
+			else
+				out.append("((").append(typeName(owner.asType())).append(") callee)");
+			out.append('.').append(m.getSimpleName()).append('(');
+			List<? extends VariableElement> parameters = m.getParameters();
+			for(int p = 0; p < parameters.size(); p++) {
+				if(p != 0)
+					out.append(", ");
+				out.append('(').append(typeName(parameters.get(p).asType())).append(") arguments[").append(p).append(']');
+			}
+			out.append(");\n\t\t\treturn;\n");
+		}
+		out.append("\t\tdefault:\n\t\t\tthrow new IllegalArgumentException(\"Unknown entry point \" + entryPoint);\n");
+		out.append("\t\t}\n\t}\n\n");
+	}
+
+	private void writeNewHolder(StringBuilder out) {
+		out.append("\t@Override\n");
+		out.append("\tprotected Object newHolder(int holder) {\n");
+		out.append("\t\tswitch(holder) {\n");
+		for(Holder holder : holders)
+			out.append("\t\tcase ").append(holder.index).append(":\n\t\t\treturn new ").append(typeName(holder.type.asType())).append("();\n");
+		out.append("\t\tdefault:\n\t\t\tthrow new IllegalArgumentException(\"Unknown holder \" + holder);\n");
+		out.append("\t\t}\n\t}\n\n");
+	}
+
+	private void writeGet(StringBuilder out) {
+		out.append("\t@Override\n");
+		out.append("\tprotected Object get(int field, Object holder) {\n");
+		out.append("\t\tswitch(field) {\n");
+		for(Map.Entry<VariableElement, Integer> field : fields.entrySet()) {
+			out.append("\t\tcase ").append(field.getValue()).append(":\n\t\t\treturn ")
+					.append(fieldAccess(field.getKey())).append(";\n");
+		}
+		out.append("\t\tdefault:\n\t\t\tthrow new IllegalArgumentException(\"Unknown field \" + field);\n");
+		out.append("\t\t}\n\t}\n\n");
+	}
+
+	/**
+	 * Writes the setter of the fields of {@code kind}, or of all fields if
+	 * {@code kind} is {@code null}. Primitive setters are only written if there
+	 * are fields of that type, other fields go through the boxing setter.
+	 */
+	private void writeSet(StringBuilder out, String valueType, String method, TypeKind kind) {
+		List<Map.Entry<VariableElement, Integer>> setFields = new ArrayList<>();
+		for(Map.Entry<VariableElement, Integer> field : fields.entrySet()) {
+			if(kind == null || field.getKey().asType().getKind() == kind)
+				setFields.add(field);
+		}
+		if(kind != null && setFields.isEmpty())
+			return;
+		out.append("\t@Override\n");
+		out.append("\tprotected void ").append(method).append("(int field, Object holder, ").append(valueType).append(" value) {\n");
+		out.append("\t\tswitch(field) {\n");
+		for(Map.Entry<VariableElement, Integer> field : setFields) {
+			out.append("\t\tcase ").append(field.getValue()).append(":\n\t\t\t").append(fieldAccess(field.getKey())).append(" = ");
+			if(kind == null)
+				out.append('(').append(typeName(field.getKey().asType())).append(") ");
+			out.append("value;\n\t\t\treturn;\n");
+		}
+		if(kind == null)
+			out.append("\t\tdefault:\n\t\t\tthrow new IllegalArgumentException(\"Unknown field \" + field);\n");
+		else
+			out.append("\t\tdefault:\n\t\t\tsuper.").append(method).append("(field, holder, value);\n");
+		out.append("\t\t}\n\t}\n\n");
+	}
+
+	private String fieldAccess(VariableElement field) {
+		return "((" + typeName(field.getEnclosingElement().asType()) + ") holder)." + field.getSimpleName();
+	}
+
+	/** Mirrors {@code ProcessOptions#collectHolders}, returns the index of the holder */
+	private int addHolders(TypeElement type, int parent, VariableElement parentField) {
+		int index = holders.size();
+		holders.add(new Holder(index, type, parent, parentField == null ? -1 : getFieldIndex(parentField)));
+		for(VariableElement f : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if(!f.getModifiers().contains(Modifier.STATIC) && isOptionClass(f.asType()))
+				addHolders((TypeElement) ((DeclaredType) f.asType()).asElement(), index, f);
+		}
+		return index;
+	}
+
+	/** Mirrors {@code ProcessOptions#collectOptionFields} */
+	private void collectOptionFields(TypeElement type, Set<VariableElement> optionFields) {
+		for(VariableElement f : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if(f.getAnnotation(InnerOptions.class) != null)
+				collectOptionFields((TypeElement) ((DeclaredType) f.asType()).asElement(), optionFields);
+		}
+		for(VariableElement f : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if(f.getAnnotation(Option.class) != null && optionFields.add(f))
+				getFieldIndex(f);
+		}
+	}
+
+	private int getFieldIndex(VariableElement field) {
+		return fields.computeIfAbsent(field, _f -> fields.size());
+	}
+
+	/** Returns a description of an entry point, like {@code com.example.Cli.add(int,int)} */
+	private String describe(ExecutableElement m) {
+		StringBuilder description = new StringBuilder(owner.getQualifiedName()).append('.').append(m.getSimpleName()).append('(');
+		List<? extends VariableElement> parameters = m.getParameters();
+		for(int i = 0; i < parameters.size(); i++) {
+			if(i != 0)
+				description.append(',');
+			description.append(typeName(parameters.get(i).asType()));
+		}
+		return description.append(')').toString();
+	}
+
+	/** Returns the source name of the erasure of {@code type} */
+	private String typeName(TypeMirror type) {
+		if(type.getKind().isPrimitive())
+			return type.getKind().name().toLowerCase();
+		if(type.getKind() == TypeKind.ARRAY)
+			return typeName(((ArrayType) type).getComponentType()) + "[]";
+		if(type.getKind() == TypeKind.WILDCARD)
+			return typeName(((WildcardType) type).getExtendsBound());
+		return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+	}
+
+	private String literal(String value) {
+		return env.getElementUtils().getConstantExpression(value);
+	}
+
+	private static Argument[] getArgumentAnnotations(ExecutableElement m) {
+		Arguments arguments = m.getAnnotation(Arguments.class);
+		Argument argument = m.getAnnotation(Argument.class);
+		if(arguments != null)
+			return arguments.value();
+		return argument == null ? null : new Argument[] { argument };
+	}
+
+	private static TypeMirror getElementType(TypeMirror type) {
+		TypeMirror elementType = ((DeclaredType) type).getTypeArguments().get(0);
+		return elementType.getKind() == TypeKind.WILDCARD ? ((WildcardType) elementType).getExtendsBound() : elementType;
+	}
+
+	private static boolean isDeclaredAs(TypeMirror type, String... names) {
+		if(type.getKind() != TypeKind.DECLARED)
+			return false;
+		String name = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+		for(String n : names) {
+			if(name.equals(n))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean isOptionClass(TypeMirror type) {
+		return type.getKind() == TypeKind.DECLARED &&
+				((DeclaredType) type).asElement().getAnnotation(OptionClass.class) != null;
+	}
+
+	private static TypeElement getOptionClass(ExecutableElement m) {
+		List<? extends VariableElement> params = m.getParameters();
+		if(params.isEmpty() || !isOptionClass(params.get(0).asType()))
+			return null;
+		return (TypeElement) ((DeclaredType) params.get(0).asType()).asElement();
+	}
+
+	private static class Holder {
+
+		final int index;
+		final TypeElement type;
+		final int parent;
+		final int parentField;
+
+		Holder(int index, TypeElement type, int parent, int parentField) {
+			this.index = index;
+			this.type = type;
+			this.parent = parent;
+			this.parentField = parentField;
+		}
+
+	}
+
+}
@@ -0,0 +1,464 @@
+package fr.wonder.argparser.processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import fr.wonder.argparser.ArgParser;
+import fr.wonder.argparser.ArgParserHelper;
+import fr.wonder.argparser.CommandBinder;
+import fr.wonder.argparser.CommandSchema;
+import fr.wonder.argparser.InvalidDeclarationError;
+import fr.wonder.argparser.ValueConverters;
+import fr.wonder.argparser.annotations.Argument;
+import fr.wonder.argparser.annotations.Arguments;
+import fr.wonder.argparser.annotations.EntryPoint;
+import fr.wonder.argparser.annotations.InnerOptions;
+import fr.wonder.argparser.annotations.Option;
+import fr.wonder.argparser.annotations.OptionClass;
+
+/**
+ * Compile-time counterpart of the declaration checks done by {@link ArgParser}.
+ *
+ * <p>
+ * Every class declaring {@link EntryPoint} methods and every {@link OptionClass}
+ * is validated with the same rules that would otherwise make the {@code ArgParser}
+ * constructor throw an {@link InvalidDeclarationError}, the errors are reported
+ * as compile errors on the faulty element instead.
+ *
+ * <p>
+ * For each valid entry point class, a {@link CommandBinder} named
+ * {@code <Class>_ArgParserBinder} is generated next to it. It declares the entry
+ * points and option classes read here and accesses them directly: entry points
+ * are called from a switch, option classes are created with {@code new} and
+ * their fields are assigned without reflection. {@link CommandSchema} uses the
+ * binder when it exists, parsers then behave as if the class was read by
+ * reflection, except that parameters without an {@link Argument} annotation are
+ * named as in the source code, as if the class was compiled with
+ * {@code -parameters}. No binder is generated for a class which entry points or
+ * option classes cannot be referenced from its package (private members for
+ * instance), a note is printed and the class is read by reflection.
+ *
+ * <p>
+ * The processor is registered as a service, add this artifact to the annotation
+ * processor path of your build to enable it (with maven, using the
+ * {@code annotationProcessorPaths} option of the compiler plugin).
+ *
+ * <p>
+ * Checks that depend on runtime values are not done, namely whether non-static
+ * entry points are given a callee instance. Converters registered at runtime are
+ * not known either, the types they convert can be listed with the
+ * {@code -Aargparser.converters=com.example.Id,...} compiler option.
+ */
+@SupportedAnnotationTypes({
+	"fr.wonder.argparser.annotations.EntryPoint",
+	"fr.wonder.argparser.annotations.OptionClass"
+})
+@SupportedOptions(DeclarationProcessor.CONVERTERS_OPTION)
+public class DeclarationProcessor extends AbstractProcessor {
+
+	/** The option listing the qualified names of the types with a registered converter */
+	public static final String CONVERTERS_OPTION = "argparser.converters";
+
+	private static final Set<String> BOOLEAN_VALUES = Set.of("1", "true", "True", "0", "false", "False");
+	/** Mirrors the factories discovered by {@link ValueConverters} */
+	private static final Set<String> FACTORY_NAMES = Set.of("valueOf", "of", "parse", "fromString");
+	private static final Set<String> BUILTIN_TYPES = Set.of(
+			String.class.getName(), java.io.File.class.getName(), java.nio.file.Path.class.getName(), java.net.InetAddress.class.getName());
+
+	private final Map<TypeElement, Boolean> validatedOptionClasses = new HashMap<>();
+	/** The number of errors reported so far, to know whether an entry point class is valid */
+	private int errorCount;
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Map<TypeElement, List<ExecutableElement>> entryClasses = new LinkedHashMap<>();
+		for(Element e : roundEnv.getElementsAnnotatedWith(EntryPoint.class)) {
+			if(e.getKind() != ElementKind.METHOD)
+				continue;
+			TypeElement owner = (TypeElement) e.getEnclosingElement();
+			entryClasses.computeIfAbsent(owner, _o -> new ArrayList<>()).add((ExecutableElement) e);
+		}
+		entryClasses.forEach(this::validateEntryClass);
+		for(Element e : roundEnv.getElementsAnnotatedWith(OptionClass.class)) {
+			if(e instanceof TypeElement)
+				validateOptionClass((TypeElement) e, e);
+		}
+		return false;
+	}
+
+	private void validateEntryClass(TypeElement owner, List<ExecutableElement> methods) {
+		int previousErrors = errorCount;
+		boolean valid = true;
+		PathNode treeRoot = new PathNode();
+
+		for(ExecutableElement m : methods) {
+			String path = m.getAnnotation(EntryPoint.class).path();
+			if(!registerPath(treeRoot, path, m))
+				continue;
+			validateEntryMethodParameters(m);
+			validateArgumentAnnotations(m);
+
+			TypeElement optionClass = getOptionClass(m);
+			if(optionClass != null) {
+				valid &= collectOptionFields(optionClass, new LinkedHashMap<>(), new HashSet<>(), m) &&
+						validateHolders(optionClass, new HashSet<>(), m);
+			}
+		}
+		if(valid && errorCount == previousErrors)
+			generateBinder(owner, methods);
+	}
+
+	private void generateBinder(TypeElement owner, List<ExecutableElement> methods) {
+		BinderWriter writer = new BinderWriter(processingEnv, owner, methods);
+		Element inaccessible = writer.findInaccessibleElement();
+		if(inaccessible != null) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "No binder generated for " + owner
+					+ ", " + inaccessible + " cannot be accessed from its package", inaccessible);
+			return;
+		}
+		try {
+			writer.write();
+		} catch (IOException e) {
+			error(owner, "Cannot write binder " + writer.getBinderName() + ": " + e.getMessage());
+		}
+	}
+
+	/** Mirrors {@code ArgParser#getEntrylessBranch}, returns false if an error was reported */
+	private boolean registerPath(PathNode treeRoot, String path, ExecutableElement m) {
+		PathNode current = treeRoot;
+		if(!ArgParserHelper.isRootBranch(path)) {
+			int pl = 0;
+			for(String p : path.split(" ")) {
+				if(!ArgParserHelper.canBeBranchName(p))
+					return error(m, "Name '" + p + "' cannot be used as a branch path");
+				if(current.hasEntryPoint)
+					return error(m, "Branch '" + path.substring(0, pl) + "' has a declared entry point, it cannot have sub-paths");
+				current = current.subBranches.computeIfAbsent(p, _p -> new PathNode());
+				pl += p.length()+1;
+			}
+		}
+		if(current.hasEntryPoint)
+			return error(m, "Branch '" + path + "' already has an entry point");
+		if(!current.subBranches.isEmpty())
+			return error(m, "Branch '" + path + "' already has sub-paths, it cannot be an entry point");
+		current.hasEntryPoint = true;
+		return true;
+	}
+
+	/** Mirrors {@link ArgParserHelper#validateEntryMethodParameters} */
+	private void validateEntryMethodParameters(ExecutableElement m) {
+		List<? extends VariableElement> params = m.getParameters();
+		for(int i = getOptionClass(m) != null ? 1 : 0; i < params.size(); i++) {
+			TypeMirror type = params.get(i).asType();
+			boolean isLast = i == params.size()-1;
+			if(isDeclaredAs(type, Iterable.class, java.util.Iterator.class, java.util.stream.Stream.class)) {
+				TypeMirror elementType = getElementType(type);
+				if(!isLast)
+					error(params.get(i), "Argument " + params.get(i).getSimpleName() + " has an invalid type " + type
+							+ ", only the last argument can be an Iterable, an Iterator or a Stream");
+				else if(elementType == null || !canBeArgumentType(elementType, false, false))
+					error(params.get(i), "Argument " + params.get(i).getSimpleName() + " has an invalid element type " + type);
+				continue;
+			}
+			if(canBeArgumentType(type, i == 0, isLast))
+				continue;
+			if(type.getKind() == TypeKind.ARRAY && !isLast)
+				error(params.get(i), "Argument " + params.get(i).getSimpleName() + " has an invalid type " + type
+						+ ", only the last argument can be of array type");
+			else
+				error(params.get(i), "Argument " + params.get(i).getSimpleName() + " has an invalid type " + type
+						+ (isOptionClass(type) ? ", only the first argument can be a @OptionClass" : ""));
+		}
+	}
+
+	/** Mirrors {@code EntryPointFunction#createEntryPointFunction} */
+	private void validateArgumentAnnotations(ExecutableElement m) {
+		Argument[] annotations;
+		Arguments arguments = m.getAnnotation(Arguments.class);
+		Argument argument = m.getAnnotation(Argument.class);
+		if(arguments != null)
+			annotations = arguments.value();
+		else if(argument != null)
+			annotations = new Argument[] { argument };
+		else
+			return;
+
+		int optionsOffset = getOptionClass(m) != null ? 1 : 0;
+		List<? extends VariableElement> params = m.getParameters();
+		if(params.size() != annotations.length + optionsOffset) {
+			error(m, "Invalid number of arguments on " + m.getSimpleName() + ", either set all arguments or none");
+			return;
+		}
+
+		boolean foundMandatory = false;
+		for(int i = annotations.length-1; i >= 0; i--) {
+			String defaultValue = annotations[i].defaultValue();
+			VariableElement param = params.get(i+optionsOffset);
+			if(defaultValue.isEmpty()) {
+				foundMandatory = true;
+			} else if(foundMandatory) {
+				error(param, "Parameter '" + param.getSimpleName() + "' has a default value but a later parameter does not specify one");
+			} else if(!isValidDefaultValue(defaultValue, param.asType())) {
+				error(param, "Invalid default value '" + defaultValue + "' for argument '" + param.getSimpleName() + "'");
+			}
+		}
+	}
+
+	private boolean validateOptionClass(TypeElement clazz, Element usage) {
+		Boolean alreadyValidated = validatedOptionClasses.get(clazz);
+		if(alreadyValidated != null)
+			return alreadyValidated;
+		boolean valid = true;
+		if(clazz.getNestingKind() == NestingKind.MEMBER && !clazz.getModifiers().contains(Modifier.STATIC))
+			valid = error(usage, "Option class " + clazz + " is a member class, make it static instead");
+		else if(!clazz.getModifiers().contains(Modifier.PUBLIC) || !hasPublicDefaultConstructor(clazz))
+			valid = error(usage, "Option class " + clazz + " does not declare an empty constructor, did you make the class public?");
+
+		for(VariableElement f : ElementFilter.fieldsIn(clazz.getEnclosedElements())) {
+			if(f.getAnnotation(Option.class) == null && f.getAnnotation(InnerOptions.class) == null)
+				continue;
+			if(!f.getModifiers().contains(Modifier.PUBLIC) || f.getModifiers().contains(Modifier.FINAL))
+				valid = error(f, "Option field " + f.getSimpleName() + " must be public and not final");
+		}
+		validatedOptionClasses.put(clazz, valid);
+		return valid;
+	}
+
+	/** Mirrors {@code ProcessOptions#collectOptionFields}, returns false if an error was reported */
+	private boolean collectOptionFields(TypeElement clazz, Map<String, VariableElement> optionFields, Set<TypeElement> visiting, Element usage) {
+		if(!isOptionClass(clazz.asType()))
+			return error(usage, "Class " + clazz + " is not an option class");
+		if(!visiting.add(clazz))
+			return error(usage, "Option class " + clazz + " contains itself as inner options");
+		boolean valid = validateOptionClass(clazz, usage);
+
+		for(VariableElement f : ElementFilter.fieldsIn(clazz.getEnclosedElements())) {
+			if(f.getAnnotation(InnerOptions.class) == null)
+				continue;
+			TypeMirror type = f.asType();
+			if(type.getKind() != TypeKind.DECLARED)
+				valid = error(f, "Inner options " + f.getSimpleName() + " must be an option class");
+			else
+				valid &= collectOptionFields((TypeElement) ((DeclaredType) type).asElement(), optionFields, visiting, f);
+		}
+
+		for(VariableElement f : ElementFilter.fieldsIn(clazz.getEnclosedElements())) {
+			Option opt = f.getAnnotation(Option.class);
+			if(opt == null)
+				continue;
+			String name = opt.name();
+			String shorthand = opt.shorthand();
+			boolean isCollection = isDeclaredAs(f.asType(), List.class, Set.class);
+			TypeMirror elementType = isCollection ? getElementType(f.asType()) : null;
+			if(isCollection ? elementType == null || !canBeArgumentType(elementType, false, false) : !canBeArgumentType(f.asType(), true, true))
+				valid = error(f, "Option of field " + f.getSimpleName() + " in option class " + clazz + " has invalid type " + f.asType());
+			if(!ArgParserHelper.canBeOptionName(name))
+				valid = error(f, "Name " + name + " in option class " + clazz + " cannot be an option on field " + f.getSimpleName());
+			if(!shorthand.isEmpty() && !ArgParserHelper.canBeOptionShortand(shorthand))
+				valid = error(f, "Name " + shorthand + " in option class " + clazz + " cannot be a shortand on field " + f.getSimpleName());
+			valid &= addOptionField(optionFields, name, f);
+			if(!shorthand.isEmpty())
+				valid &= addOptionField(optionFields, shorthand, f);
+		}
+
+		visiting.remove(clazz);
+		return valid;
+	}
+
+	/**
+	 * Mirrors {@code ProcessOptions#collectHolders}, every field which type is an
+	 * option class is instantiated and assigned, not only inner options.
+	 */
+	private boolean validateHolders(TypeElement clazz, Set<TypeElement> visiting, Element usage) {
+		if(!visiting.add(clazz))
+			return error(usage, "Option class " + clazz + " contains itself");
+		boolean valid = validateOptionClass(clazz, usage);
+		for(VariableElement f : ElementFilter.fieldsIn(clazz.getEnclosedElements())) {
+			if(f.getModifiers().contains(Modifier.STATIC) || !isOptionClass(f.asType()))
+				continue;
+			if(f.getAnnotation(InnerOptions.class) == null && (!f.getModifiers().contains(Modifier.PUBLIC) || f.getModifiers().contains(Modifier.FINAL)))
+				valid = error(f, "Option field " + f.getSimpleName() + " must be public and not final");
+			valid &= validateHolders((TypeElement) ((DeclaredType) f.asType()).asElement(), visiting, f);
+		}
+		visiting.remove(clazz);
+		return valid;
+	}
+
+	private boolean addOptionField(Map<String, VariableElement> optionFields, String name, VariableElement field) {
+		VariableElement overridenField = optionFields.put(name, field);
+		if(overridenField != null && !overridenField.equals(field))
+			return error(field, "Name '" + name + "' of field '" + field.getSimpleName() + "' collides with field '"
+					+ overridenField.getEnclosingElement() + "." + overridenField.getSimpleName() + "'");
+		return true;
+	}
+
+	/** Returns true if {@code type} is one of {@code classes}, regardless of its type arguments */
+	private static boolean isDeclaredAs(TypeMirror type, Class<?>... classes) {
+		if(type.getKind() != TypeKind.DECLARED)
+			return false;
+		String name = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+		for(Class<?> clazz : classes) {
+			if(name.equals(clazz.getName()))
+				return true;
+		}
+		return false;
+	}
+
+	/** Mirrors {@link ArgParserHelper#getElementType(java.lang.reflect.Type)} */
+	private static TypeMirror getElementType(TypeMirror type) {
+		List<? extends TypeMirror> typeArguments = ((DeclaredType) type).getTypeArguments();
+		TypeMirror elementType = typeArguments.isEmpty() ? null : typeArguments.get(0);
+		if(elementType != null && elementType.getKind() == TypeKind.WILDCARD)
+			elementType = ((WildcardType) elementType).getExtendsBound();
+		return elementType;
+	}
+
+	/** Mirrors {@link ArgParserHelper#canBeArgumentType(Class, boolean, boolean)} */
+	private boolean canBeArgumentType(TypeMirror type, boolean acceptsOptionClass, boolean acceptsArray) {
+		if(type.getKind().isPrimitive())
+			return true;
+		if(type.getKind() == TypeKind.ARRAY)
+			return acceptsArray && canBeArgumentType(((ArrayType) type).getComponentType(), false, false);
+		if(type.getKind() != TypeKind.DECLARED)
+			return false;
+		TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+		String name = element.getQualifiedName().toString();
+		return BUILTIN_TYPES.contains(name) ||
+				element.getKind() == ElementKind.ENUM ||
+				isBoxedPrimitive(type) ||
+				(acceptsOptionClass && isOptionClass(type)) ||
+				hasFactory(element) ||
+				getRegisteredConverters().contains(name);
+	}
+
+	/** Returns true if {@link ValueConverters} can discover a factory for {@code type} */
+	private boolean hasFactory(TypeElement type) {
+		if(!type.getModifiers().contains(Modifier.PUBLIC))
+			return false;
+		for(ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			if(!FACTORY_NAMES.contains(method.getSimpleName().toString()) ||
+					!method.getModifiers().contains(Modifier.PUBLIC) ||
+					!method.getModifiers().contains(Modifier.STATIC) ||
+					method.getParameters().size() != 1 ||
+					!processingEnv.getTypeUtils().isAssignable(method.getReturnType(), processingEnv.getTypeUtils().erasure(type.asType())))
+				continue;
+			TypeMirror parameter = method.getParameters().get(0).asType();
+			if(isDeclaredAs(parameter, String.class) ||
+					(method.getSimpleName().contentEquals("parse") && isDeclaredAs(parameter, CharSequence.class)))
+				return true;
+		}
+		return false;
+	}
+
+	private Set<String> getRegisteredConverters() {
+		String types = processingEnv.getOptions().get(CONVERTERS_OPTION);
+		return types == null ? Set.of() : Set.copyOf(List.of(types.trim().split("\\s*,\\s*")));
+	}
+
+	/** Mirrors the checks of the built-in {@link ValueConverters} for types that can be verified statically */
+	private boolean isValidDefaultValue(String value, TypeMirror type) {
+		boolean isEmpty = Argument.DEFAULT_EMPTY.equals(value);
+		TypeKind kind = isBoxedPrimitive(type) ? processingEnv.getTypeUtils().unboxedType(type).getKind() : type.getKind();
+		try {
+			switch(kind) {
+			case BOOLEAN: return BOOLEAN_VALUES.contains(value);
+			case FLOAT:
+			case DOUBLE: Double.parseDouble(value); return !isEmpty;
+			case INT:
+			case LONG:
+			case SHORT:
+			case BYTE:
+			case CHAR: Long.parseLong(value); return !isEmpty;
+			case DECLARED:
+				Element element = ((DeclaredType) type).asElement();
+				if(element.getKind() != ElementKind.ENUM)
+					return true;
+				for(Element c : element.getEnclosedElements())
+					if(c.getKind() == ElementKind.ENUM_CONSTANT && c.getSimpleName().toString().equalsIgnoreCase(value))
+						return true;
+				return false;
+			default:
+				return true;
+			}
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private boolean isBoxedPrimitive(TypeMirror type) {
+		try {
+			processingEnv.getTypeUtils().unboxedType(type);
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private static boolean isOptionClass(TypeMirror type) {
+		return type.getKind() == TypeKind.DECLARED &&
+				((DeclaredType) type).asElement().getAnnotation(OptionClass.class) != null;
+	}
+
+	private static TypeElement getOptionClass(ExecutableElement m) {
+		List<? extends VariableElement> params = m.getParameters();
+		if(params.isEmpty() || !isOptionClass(params.get(0).asType()))
+			return null;
+		return (TypeElement) ((DeclaredType) params.get(0).asType()).asElement();
+	}
+
+	private static boolean hasPublicDefaultConstructor(TypeElement clazz) {
+		for(ExecutableElement c : ElementFilter.constructorsIn(clazz.getEnclosedElements())) {
+			if(c.getParameters().isEmpty() && c.getModifiers().contains(Modifier.PUBLIC))
+				return true;
+		}
+		return false;
+	}
+
+	/** Always returns false, so that callers can write {@code return error(...)} */
+	private boolean error(Element element, String message) {
+		Messager messager = processingEnv.getMessager();
+		messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+		errorCount++;
+		return false;
+	}
+
+	private static class PathNode {
+
+		final Map<String, PathNode> subBranches = new HashMap<>(0);
+		boolean hasEntryPoint;
+
+	}
+
+}
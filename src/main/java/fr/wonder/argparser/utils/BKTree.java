@@ -0,0 +1,185 @@
+package fr.wonder.argparser.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable Burkhard-Keller tree indexing a set of words by their Levenshtein
+ * distance, used to suggest the nearest names of a mistyped one.
+ *
+ * <p>
+ * Each node holds a word and its children by their distance to that word. The
+ * distance being a metric, the words within {@code k} edits of a searched word at
+ * distance {@code d} of a node can only be in the children at distances
+ * {@code [d-k, d+k]}, a search with a small {@code k} only visits a small part of
+ * the tree instead of comparing the word with every indexed word.
+ */
+public final class BKTree {
+
+	private static final int[] NO_DISTANCES = {};
+	private static final Node[] NO_CHILDREN = {};
+
+	private final Node root;
+	private final boolean ignoreCase;
+	private final int size;
+
+	/**
+	 * Builds the tree of {@code words}, the array is not modified.
+	 *
+	 * @param ignoreCase whether letters that only differ by case are equal, as
+	 *        for {@link String#equalsIgnoreCase(String)}
+	 */
+	public BKTree(String[] words, boolean ignoreCase) {
+		this.ignoreCase = ignoreCase;
+		this.size = words.length;
+		if(words.length == 0) {
+			this.root = null;
+			return;
+		}
+		this.root = new Node(words[0]);
+		Distance distance = new Distance();
+		for(int i = 1; i < words.length; i++) {
+			Node node = root;
+			while(true) {
+				int d = distance.compute(words[i], node.word, ignoreCase);
+				Node child = node.getChild(d);
+				if(child == null) {
+					node.addChild(d, new Node(words[i]));
+					break;
+				}
+				node = child;
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the words nearest to {@code word} that are at most
+	 * {@code maxDistance} edits away, sorted. Only the words at the smallest
+	 * distance found are returned, at most {@code limit} of them.
+	 */
+	public List<String> nearest(CharSequence word, int maxDistance, int limit) {
+		if(root == null || limit <= 0)
+			return Collections.emptyList();
+		Search search = new Search(word, maxDistance);
+		search.visit(root);
+		if(search.found.isEmpty())
+			return Collections.emptyList();
+		Collections.sort(search.found);
+		return search.found.size() > limit ? List.copyOf(search.found.subList(0, limit)) : search.found;
+	}
+
+	private final class Search {
+
+		final CharSequence word;
+		final Distance distance = new Distance();
+		final List<String> found = new ArrayList<>();
+		/** The distance of the words found, the bound of the search once a word was found */
+		int bound;
+
+		Search(CharSequence word, int maxDistance) {
+			this.word = word;
+			this.bound = maxDistance;
+		}
+
+		void visit(Node node) {
+			int d = distance.compute(word, node.word, ignoreCase);
+			if(d < bound && !found.isEmpty())
+				found.clear();
+			if(d <= bound) {
+				bound = d;
+				found.add(node.word);
+			}
+			// children are sorted by distance, only visit [d-bound, d+bound]
+			for(int i = 0; i < node.childCount; i++) {
+				int childDistance = node.distances[i];
+				if(childDistance > d + bound)
+					break;
+				if(childDistance >= d - bound)
+					visit(node.children[i]);
+			}
+		}
+
+	}
+
+	/**
+	 * Computes Levenshtein distances with two rows reused from one computation to
+	 * the next.
+	 */
+	private static final class Distance {
+
+		private int[] previous = new int[16];
+		private int[] current = new int[16];
+
+		int compute(CharSequence a, String b, boolean ignoreCase) {
+			int n = b.length();
+			if(previous.length <= n) {
+				previous = new int[n+1];
+				current = new int[n+1];
+			}
+			for(int j = 0; j <= n; j++)
+				previous[j] = j;
+			for(int i = 1; i <= a.length(); i++) {
+				char ca = a.charAt(i-1);
+				current[0] = i;
+				for(int j = 1; j <= n; j++) {
+					int cost = equal(ca, b.charAt(j-1), ignoreCase) ? 0 : 1;
+					current[j] = Math.min(Math.min(current[j-1], previous[j]) + 1, previous[j-1] + cost);
+				}
+				int[] row = previous;
+				previous = current;
+				current = row;
+			}
+			return previous[n];
+		}
+
+		private static boolean equal(char a, char b, boolean ignoreCase) {
+			if(a == b)
+				return true;
+			if(!ignoreCase)
+				return false;
+			char ua = Character.toUpperCase(a);
+			char ub = Character.toUpperCase(b);
+			return ua == ub || Character.toLowerCase(ua) == Character.toLowerCase(ub);
+		}
+
+	}
+
+	private static final class Node {
+
+		final String word;
+		/** The distances of the children to this node's word, sorted */
+		int[] distances = NO_DISTANCES;
+		Node[] children = NO_CHILDREN;
+		int childCount;
+
+		Node(String word) {
+			this.word = word;
+		}
+
+		Node getChild(int distance) {
+			int index = Arrays.binarySearch(distances, 0, childCount, distance);
+			return index < 0 ? null : children[index];
+		}
+
+		void addChild(int distance, Node child) {
+			if(childCount == distances.length) {
+				distances = Arrays.copyOf(distances, Math.max(4, childCount * 2));
+				children = Arrays.copyOf(children, distances.length);
+			}
+			int index = -Arrays.binarySearch(distances, 0, childCount, distance) - 1;
+			System.arraycopy(distances, index, distances, index+1, childCount - index);
+			System.arraycopy(children, index, children, index+1, childCount - index);
+			distances[index] = distance;
+			children[index] = child;
+			childCount++;
+		}
+
+	}
+
+}
@@ -0,0 +1,379 @@
+package fr.wonder.argparser.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A reusable command line tokenizer that records token boundaries instead of
+ * creating a string per token.
+ *
+ * <p>
+ * Tokens are separated by spaces or tabs, simple or double quotes delimit regions
+ * in which separators are part of the token, a quote can be escaped with a
+ * backslash to be used as a regular character. Other backslashes are kept as-is,
+ * so that windows paths do not need to be escaped.
+ *
+ * <blockquote><pre>
+ * git add --verbose "some dir/foo" 'it\'s' a"b c"d
+ * = { "git", "add", "--verbose", "some dir/foo", "it's", "ab cd" }
+ * </pre></blockquote>
+ *
+ * <p>
+ * After {@link #tokenize(CharSequence)} each token is known by its offsets in the
+ * tokenized line. Tokens that contain quotes or escapes are flagged as
+ * {@link #isEscaped(int) escaped}, their value differs from the raw text between
+ * their offsets. A token entirely wrapped in one pair of quotes is not escaped,
+ * its offsets exclude the quotes. Strings are only created by
+ * {@link #getToken(int)}, numbers can be parsed in place with
+ * {@link #parseInt(int)}, {@link #parseLong(int)} and {@link #parseDouble(int)}.
+ *
+ * <p>
+ * UTF-8 encoded lines can be tokenized without being decoded first using
+ * {@link #tokenize(ByteBuffer)}, separators and quotes are ascii characters so they
+ * never appear inside multi-byte sequences. Only the tokens that are materialized
+ * are decoded, ascii tokens can be compared without being decoded through
+ * {@link #getTokenText(int)}.
+ *
+ * <p>
+ * Instances are not thread safe, a tokenizer is meant to be reused by a single
+ * thread for every line it reads.
+ */
+public final class CommandTokenizer {
+
+	private static final int STRIDE = 3;
+	private static final int FLAG_ESCAPED = 1;
+
+	private CharSequence line = "";
+	/** {@code (start, end, flags)} triplets, one per token */
+	private int[] tokens = new int[8 * STRIDE];
+	private int tokenCount;
+
+	/**
+	 * Splits {@code line} into tokens, discarding the tokens of the previously
+	 * tokenized line. The line is not copied, it must not be modified until its
+	 * tokens have been read.
+	 *
+	 * @return the number of tokens read
+	 */
+	public int tokenize(CharSequence line) {
+		return tokenizeLine(line);
+	}
+	
+	/**
+	 * Splits the UTF-8 encoded line contained between the position and the limit of
+	 * {@code buffer} into tokens. Neither the buffer content nor its position are
+	 * modified, the buffer must not be modified until its tokens have been read.
+	 * 
+	 * @return the number of tokens read
+	 */
+	public int tokenize(ByteBuffer buffer) {
+		return tokenizeLine(new Utf8Line(buffer.slice()));
+	}
+	
+	/**
+	 * Splits the UTF-8 encoded line {@code bytes[offset..offset+length]} into tokens.
+	 * 
+	 * @return the number of tokens read
+	 * @see #tokenize(ByteBuffer)
+	 */
+	public int tokenize(byte[] bytes, int offset, int length) {
+		return tokenize(ByteBuffer.wrap(bytes, offset, length));
+	}
+	
+	private int tokenizeLine(CharSequence line) {
+		this.line = line;
+		this.tokenCount = 0;
+
+		int length = line.length();
+		int i = 0;
+		while(true) {
+			while(i < length && isSeparator(line.charAt(i)))
+				i++;
+			if(i >= length)
+				break;
+
+			int start = i;
+			int specialCount = 0;
+			char openQuote = 0;
+			for( ; i < length; i++) {
+				char c = line.charAt(i);
+				if(openQuote == 0 && isSeparator(c)) {
+					break;
+				} else if(c == '\\' && i+1 < length && isQuote(line.charAt(i+1))) {
+					specialCount += 2; // an escape always requires unescaping
+					i++;
+				} else if(openQuote == 0 && isQuote(c)) {
+					openQuote = c;
+					specialCount++;
+				} else if(c == openQuote) {
+					openQuote = 0;
+					specialCount++;
+				}
+			}
+
+			if(specialCount == 0)
+				addToken(start, i, 0);
+			else if(specialCount == 2 && isQuote(line.charAt(start)) && line.charAt(i-1) == line.charAt(start) && i-start >= 2)
+				addToken(start+1, i-1, 0); // "quoted text", the value is the text between the quotes
+			else
+				addToken(start, i, FLAG_ESCAPED);
+		}
+		return tokenCount;
+	}
+
+	private void addToken(int start, int end, int flags) {
+		int offset = tokenCount * STRIDE;
+		if(offset == tokens.length)
+			tokens = Arrays.copyOf(tokens, tokens.length * 2);
+		tokens[offset] = start;
+		tokens[offset+1] = end;
+		tokens[offset+2] = flags;
+		tokenCount++;
+	}
+
+	private static boolean isSeparator(char c) {
+		return c == ' ' || c == '\t';
+	}
+
+	private static boolean isQuote(char c) {
+		return c == '"' || c == '\'';
+	}
+
+	/**
+	 * Returns the tokenized line, for byte input the returned sequence has one char
+	 * per byte and non-ascii characters are not decoded.
+	 */
+	public CharSequence getLine() {
+		return line;
+	}
+
+	public int tokenCount() {
+		return tokenCount;
+	}
+
+	public int tokenStart(int token) {
+		return tokens[checkIndex(token) * STRIDE];
+	}
+
+	public int tokenEnd(int token) {
+		return tokens[checkIndex(token) * STRIDE + 1];
+	}
+
+	/**
+	 * Returns {@code true} if the token contains quotes or escape sequences, in
+	 * which case its value is not the raw text between its offsets.
+	 */
+	public boolean isEscaped(int token) {
+		return (tokens[checkIndex(token) * STRIDE + 2] & FLAG_ESCAPED) != 0;
+	}
+
+	private int checkIndex(int token) {
+		if(token < 0 || token >= tokenCount)
+			throw new IndexOutOfBoundsException("Token " + token + " out of bounds for " + tokenCount + " tokens");
+		return token;
+	}
+
+	/**
+	 * Materializes the value of a token.
+	 */
+	public String getToken(int token) {
+		int start = tokenStart(token);
+		int end = tokenEnd(token);
+		CharSequence text = line;
+		if(line instanceof Utf8Line) {
+			String decoded = ((Utf8Line) line).decode(start, end);
+			if(!isEscaped(token))
+				return decoded;
+			text = decoded;
+			start = 0;
+			end = decoded.length();
+		} else if(!isEscaped(token)) {
+			return line.subSequence(start, end).toString();
+		}
+
+		StringBuilder sb = new StringBuilder(end - start);
+		char openQuote = 0;
+		for(int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if(c == '\\' && i+1 < end && isQuote(text.charAt(i+1))) {
+				sb.append(text.charAt(++i));
+			} else if(openQuote == 0 && isQuote(c)) {
+				openQuote = c;
+			} else if(c == openQuote) {
+				openQuote = 0;
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the value of a token as a char sequence, without copying or decoding
+	 * it when it is not escaped and, for byte input, when it is made of ascii
+	 * characters only. The sequence reads the tokenized line, it must not be used
+	 * once another line is tokenized.
+	 */
+	public CharSequence getTokenText(int token) {
+		int start = tokenStart(token);
+		int end = tokenEnd(token);
+		if(isEscaped(token))
+			return getToken(token);
+		if(line instanceof Utf8Line) {
+			for(int i = start; i < end; i++)
+				if(line.charAt(i) >= 0x80)
+					return getToken(token);
+		}
+		return new TokenText(line, start, end);
+	}
+
+	/**
+	 * Materializes the values of all tokens.
+	 */
+	public String[] getTokens() {
+		String[] values = new String[tokenCount];
+		for(int i = 0; i < tokenCount; i++)
+			values[i] = getToken(i);
+		return values;
+	}
+
+	/**
+	 * Returns {@code true} if the value of the token is {@code text}, without
+	 * materializing the token.
+	 */
+	public boolean tokenEquals(int token, String text) {
+		if(isEscaped(token) || (line instanceof Utf8Line && !isAscii(text)))
+			return getToken(token).equals(text);
+		int start = tokenStart(token);
+		int end = tokenEnd(token);
+		if(end - start != text.length())
+			return false;
+		for(int i = start; i < end; i++)
+			if(line.charAt(i) != text.charAt(i - start))
+				return false;
+		return true;
+	}
+
+	private static boolean isAscii(String text) {
+		for(int i = 0; i < text.length(); i++)
+			if(text.charAt(i) >= 0x80)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Parses the token as a base 10 int, in place if it is not escaped.
+	 *
+	 * @throws NumberFormatException if the token is not a valid int
+	 */
+	public int parseInt(int token) throws NumberFormatException {
+		if(isEscaped(token))
+			return Integer.parseInt(getToken(token));
+		return Integer.parseInt(line, tokenStart(token), tokenEnd(token), 10);
+	}
+
+	/**
+	 * Parses the token as a base 10 long, in place if it is not escaped.
+	 *
+	 * @throws NumberFormatException if the token is not a valid long
+	 */
+	public long parseLong(int token) throws NumberFormatException {
+		if(isEscaped(token))
+			return Long.parseLong(getToken(token));
+		return Long.parseLong(line, tokenStart(token), tokenEnd(token), 10);
+	}
+
+	/**
+	 * Parses the token as a double, the jdk does not provide an in-place parser for
+	 * floating point numbers so the token is materialized.
+	 *
+	 * @throws NumberFormatException if the token is not a valid double
+	 */
+	public double parseDouble(int token) throws NumberFormatException {
+		return Double.parseDouble(getToken(token));
+	}
+
+	/**
+	 * A window over the tokenized line, its chars are the chars of the line so it
+	 * must only be used for lines and tokens that do not require decoding.
+	 */
+	private static final class TokenText implements CharSequence {
+
+		private final CharSequence line;
+		private final int start, end;
+
+		TokenText(CharSequence line, int start, int end) {
+			this.line = line;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return line.charAt(start + Objects.checkIndex(index, end - start));
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			Objects.checkFromToIndex(from, to, end - start);
+			return new TokenText(line, start + from, start + to);
+		}
+
+		@Override
+		public String toString() {
+			return line.subSequence(start, end).toString();
+		}
+
+	}
+
+	/**
+	 * A view of UTF-8 bytes as a char sequence, each byte is seen as one char.
+	 * Multi-byte sequences are made of bytes with their high bit set, they are
+	 * never mistaken for separators, quotes or digits.
+	 */
+	private static final class Utf8Line implements CharSequence {
+		
+		private final ByteBuffer bytes;
+		
+		Utf8Line(ByteBuffer bytes) {
+			this.bytes = bytes;
+		}
+		
+		@Override
+		public int length() {
+			return bytes.limit();
+		}
+		
+		@Override
+		public char charAt(int index) {
+			return (char) (bytes.get(index) & 0xff);
+		}
+		
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new Utf8Line(bytes.slice(start, end - start));
+		}
+		
+		String decode(int start, int end) {
+			if(bytes.hasArray())
+				return new String(bytes.array(), bytes.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+			byte[] copy = new byte[end - start];
+			bytes.get(start, copy);
+			return new String(copy, StandardCharsets.UTF_8);
+		}
+		
+		@Override
+		public String toString() {
+			return decode(0, length());
+		}
+		
+	}
+
+}
@@ -1,10 +1,9 @@
 package fr.wonder.argparser.utils;
 
 import java.io.PrintStream;
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Useful class for error handling, a common use of an error wrapper is as follow:
@@ -29,15 +28,24 @@ import java.util.List;
  *   ...
  * }
  * </pre></blockquote>
+ * 
+ * <p>
+ * Errors are only rendered when they are dumped, messages that are expensive to
+ * build can be given as {@link Supplier}s. A fail-fast wrapper stops at its first
+ * error, see {@link #checkFailFast()}.
  */
 public class ErrorWrapper {
 	
+	private static final String NEWLINE = System.lineSeparator();
+	
 	private final boolean logTraces;
 	private final ErrorWrapper parent;
 	
 	private final String header;
-	private final List<String> errors = new ArrayList<>();
+	/** The errors, either strings, suppliers of strings or traces, rendered by {@link #dump(PrintStream)} */
+	private final List<Object> errors = new ArrayList<>();
 	private boolean parentContainsThis = false;
+	private boolean failFast;
 	
 	private final List<ErrorWrapper> subErrors = new ArrayList<>();
 
@@ -54,18 +62,39 @@ public class ErrorWrapper {
 		this.parent = parent;
 		this.header = header;
 		this.logTraces = logTraces;
+		this.failFast = parent != null && parent.failFast;
+	}
+	
+	/**
+	 * Makes {@link #checkFailFast()} throw as soon as an error was added, sub
+	 * wrappers created afterwards inherit this setting.
+	 */
+	public ErrorWrapper setFailFast(boolean failFast) {
+		this.failFast = failFast;
+		return this;
+	}
+	
+	public boolean isFailFast() {
+		return failFast;
 	}
 	
 	public void add(String s) {
+		addEntry(s);
+	}
+	
+	/**
+	 * Adds an error which message is only built if the errors are dumped.
+	 */
+	public void add(Supplier<String> message) {
+		addEntry(message);
+	}
+	
+	private void addEntry(Object error) {
 		if(errors.isEmpty() && parent != null)
 			addToParentChildren();
-		for(String l : s.split("\n"))
-			errors.add(l);
-		if(logTraces) {
-			StackTraceElement[] trace = new Exception().getStackTrace();
-			for(int i = 1; i < trace.length; i++)
-				errors.add(" from " + trace[i].toString());
-		}
+		errors.add(error);
+		if(logTraces)
+			errors.add(new Trace());
 	}
 	
 	public void addAndThrow(String s) throws WrappedException {
@@ -73,6 +102,11 @@ public class ErrorWrapper {
 		assertNoErrors();
 	}
 	
+	public void addAndThrow(Supplier<String> message) throws WrappedException {
+		add(message);
+		assertNoErrors();
+	}
+	
 	private void addToParentChildren() {
 		if(!parentContainsThis) {
 			parent.addToParentChildren();
@@ -82,15 +116,34 @@ public class ErrorWrapper {
 	}
 
 	public void trace(String s) {
-		StringWriter w = new StringWriter();
-		new Error().printStackTrace(new PrintWriter(w));
-		add(s + w.toString());
+		addEntry(s);
+		if(!logTraces)
+			errors.add(new Trace());
 	}
 	
 	public ErrorWrapper subErrors(String header) {
 		return new ErrorWrapper(this, header, logTraces);
 	}
 	
+	/**
+	 * Returns the errors of this wrapper and of its sub wrappers that are instances
+	 * of {@code type}, in the order they were added, without rendering any of them.
+	 */
+	public <T> List<T> getErrors(Class<T> type) {
+		List<T> found = new ArrayList<>();
+		collectErrors(type, found);
+		return found;
+	}
+	
+	private <T> void collectErrors(Class<T> type, List<T> found) {
+		for(Object e : errors) {
+			if(type.isInstance(e))
+				found.add(type.cast(e));
+		}
+		for(ErrorWrapper sub : subErrors)
+			sub.collectErrors(type, found);
+	}
+	
 	public boolean noErrors() {
 		return errors.isEmpty() && subErrors.isEmpty();
 	}
@@ -99,22 +152,57 @@ public class ErrorWrapper {
 		dump(System.err);
 	}
 	
+	/**
+	 * Prints the errors of the root wrapper, they are rendered first and printed
+	 * with a single {@link PrintStream#print(String)} so that errors dumped
+	 * concurrently to the same stream do not interleave.
+	 */
 	public void dump(PrintStream out) {
 		if(parent != null) {
 			parent.dump(out);
 		} else {
-			dump(out, 0);
+			StringBuilder sb = new StringBuilder();
+			dump(sb, 0);
+			out.print(sb);
 		}
 	}
 	
-	private void dump(PrintStream out, int level) {
+	private void dump(StringBuilder sb, int level) {
 		if(noErrors())
 			return;
-		out.println("| ".repeat(level) + header+":");
-		for(String e : errors)
-			out.println("| ".repeat(level+1) + e);
+		appendIndent(sb, level).append(header).append(':').append(NEWLINE);
+		for(Object e : errors) {
+			String error = render(e);
+			// one line per line of the error, trailing empty lines are dropped
+			int length = error.length();
+			while(length > 0 && error.charAt(length-1) == '\n')
+				length--;
+			int start = 0;
+			while(true) {
+				int end = error.indexOf('\n', start);
+				if(end < 0 || end >= length) {
+					appendIndent(sb, level+1).append(error, start, length).append(NEWLINE);
+					break;
+				}
+				appendIndent(sb, level+1).append(error, start, end).append(NEWLINE);
+				start = end+1;
+			}
+		}
 		for(ErrorWrapper sub : subErrors)
-			sub.dump(out, level+1);
+			sub.dump(sb, level+1);
+	}
+	
+	private static StringBuilder appendIndent(StringBuilder sb, int level) {
+		for(int i = 0; i < level; i++)
+			sb.append("| ");
+		return sb;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static String render(Object error) {
+		if(error instanceof Supplier)
+			return ((Supplier<String>) error).get();
+		return error.toString();
 	}
 	
 	/**
@@ -128,9 +216,42 @@ public class ErrorWrapper {
 			throw new WrappedException(this);
 	}
 	
+	/**
+	 * Throws if this wrapper is fail-fast and an error was added, loops reporting
+	 * several errors should call it after each one.
+	 */
+	public void checkFailFast() throws WrappedException {
+		if(failFast)
+			assertNoErrors();
+	}
+	
+	/**
+	 * The stack trace of the code that added an error, formatted when dumped.
+	 */
+	private static final class Trace {
+		
+		private final StackTraceElement[] trace = new Throwable().getStackTrace();
+		
+		@Override
+		public String toString() {
+			// skip the frames of the error wrapper itself
+			StringBuilder sb = new StringBuilder();
+			for(StackTraceElement element : trace) {
+				if(element.getClassName().equals(ErrorWrapper.class.getName()) || element.getClassName().equals(Trace.class.getName()))
+					continue;
+				if(sb.length() > 0)
+					sb.append('\n');
+				sb.append(" from ").append(element);
+			}
+			return sb.toString();
+		}
+		
+	}
+	
 	/**
 	 * The exception thrown by {@link ErrorWrapper#assertNoErrors()}, it contains
-	 * the error wrapper that throw the exception
+	 * the error wrapper that throw the exception. The exception does not capture
+	 * its stack trace, it is a control flow exception.
 	 */
 	public static class WrappedException extends Exception {
 
@@ -139,7 +260,7 @@ public class ErrorWrapper {
 		public final ErrorWrapper errors;
 		
 		private WrappedException(ErrorWrapper wrapper) {
-			super("Errors occured");
+			super("Errors occured", null, false, false);
 			this.errors = wrapper;
 		}
 		
@@ -0,0 +1,203 @@
+package fr.wonder.argparser.utils;
+
+import java.util.Arrays;
+
+/**
+ * An immutable radix trie indexing a set of words, used to route command words.
+ *
+ * <p>
+ * The trie is built once from its words, which are sorted and given an index in
+ * that order, see {@link #getWords()}. Chains of nodes with a single child are
+ * compressed into one node which label contains several characters, nodes store
+ * their children in arrays sorted by their first character.
+ *
+ * <p>
+ * Because the words are sorted, the words starting with a given prefix have
+ * consecutive indices, a lookup by prefix returns the range of these indices.
+ * This is what makes unique-prefix abbreviations cheap: a prefix is an
+ * abbreviation if its range contains a single word.
+ *
+ * <p>
+ * A lookup reads each character of the searched word at most once and stops at
+ * the first character that cannot be matched, no string is created or hashed.
+ */
+public final class RadixTrie {
+
+	private static final Node[] NO_CHILDREN = {};
+
+	private final String[] words;
+	private final Node root;
+
+	/**
+	 * Builds the trie of {@code words}, the array is not modified.
+	 *
+	 * @throws IllegalArgumentException if a word appears twice
+	 */
+	public RadixTrie(String[] words) {
+		this.words = words.clone();
+		Arrays.sort(this.words);
+		for(int i = 1; i < this.words.length; i++) {
+			if(this.words[i].equals(this.words[i-1]))
+				throw new IllegalArgumentException("Duplicate word " + this.words[i]);
+		}
+		this.root = build(this.words, 0, this.words.length, 0);
+	}
+
+	private static Node build(String[] words, int from, int to, int depth) {
+		if(from == to)
+			return new Node(new char[0], -1, from, to, NO_CHILDREN);
+
+		// words are sorted, the common prefix of the range is the one of its first and last words
+		String first = words[from];
+		String last = words[to-1];
+		int end = depth;
+		while(end < first.length() && end < last.length() && first.charAt(end) == last.charAt(end))
+			end++;
+		char[] label = first.substring(depth, end).toCharArray();
+
+		int wordIndex = -1;
+		int childrenFrom = from;
+		if(first.length() == end) {
+			wordIndex = from; // the shortest word of the range is sorted first
+			childrenFrom++;
+		}
+
+		int childCount = 0;
+		for(int i = childrenFrom; i < to; i++) {
+			if(i == childrenFrom || words[i].charAt(end) != words[i-1].charAt(end))
+				childCount++;
+		}
+		Node[] children = new Node[childCount];
+		for(int i = childrenFrom, c = 0; i < to; c++) {
+			int j = i+1;
+			while(j < to && words[j].charAt(end) == words[i].charAt(end))
+				j++;
+			children[c] = build(words, i, j, end);
+			i = j;
+		}
+		return new Node(label, wordIndex, from, to, children);
+	}
+
+	/** Returns the indexed words, sorted */
+	public String[] getWords() {
+		return words.clone();
+	}
+
+	public int size() {
+		return words.length;
+	}
+
+	public String getWord(int index) {
+		return words[index];
+	}
+
+	/**
+	 * Returns the index of {@code word}, or -1 if it is not indexed.
+	 */
+	public int indexOf(CharSequence word) {
+		Node node = root;
+		int position = 0;
+		int length = word.length();
+		while(true) {
+			char[] label = node.label;
+			if(length - position < label.length)
+				return -1;
+			for(char c : label) {
+				if(word.charAt(position++) != c)
+					return -1;
+			}
+			if(position == length)
+				return node.wordIndex;
+			node = node.getChild(word.charAt(position));
+			if(node == null)
+				return -1;
+		}
+	}
+
+	/**
+	 * Returns the node which subtree contains exactly the words starting with
+	 * {@code prefix}, or {@code null} if there are none.
+	 */
+	private Node findPrefix(CharSequence prefix) {
+		Node node = root;
+		int position = 0;
+		int length = prefix.length();
+		while(true) {
+			for(char c : node.label) {
+				if(position == length)
+					return node; // the prefix ends in the middle of the label
+				if(prefix.charAt(position++) != c)
+					return null;
+			}
+			if(position == length)
+				return node;
+			node = node.getChild(prefix.charAt(position));
+			if(node == null)
+				return null;
+		}
+	}
+
+	/**
+	 * Returns the index of the first word starting with {@code prefix}, the words
+	 * starting with it are at indices {@code [firstPrefixed, firstPrefixed+countPrefixed)}.
+	 * If no word starts with the prefix, the returned index is undefined.
+	 */
+	public int firstPrefixed(CharSequence prefix) {
+		Node node = findPrefix(prefix);
+		return node == null ? 0 : node.from;
+	}
+
+	/**
+	 * Returns the number of words starting with {@code prefix}.
+	 */
+	public int countPrefixed(CharSequence prefix) {
+		Node node = findPrefix(prefix);
+		return node == null ? 0 : node.to - node.from;
+	}
+
+	/**
+	 * Returns the index of {@code word} if it is indexed, otherwise the index of the
+	 * only word starting with {@code word}. Returns -1 if the word is not indexed
+	 * and is not the prefix of exactly one word.
+	 */
+	public int indexOfAbbreviation(CharSequence word) {
+		Node node = findPrefix(word);
+		if(node == null)
+			return -1;
+		if(node.to - node.from == 1)
+			return node.from;
+		int index = node.from;
+		return words[index].contentEquals(word) ? index : -1;
+	}
+
+	private static final class Node {
+
+		/** The characters between the parent node and this one */
+		final char[] label;
+		/** The index of the word ending at this node, or -1 */
+		final int wordIndex;
+		/** The range of indices of the words of this subtree */
+		final int from, to;
+		/** The children, sorted by the first character of their label */
+		final Node[] children;
+		final char[] firstChars;
+
+		Node(char[] label, int wordIndex, int from, int to, Node[] children) {
+			this.label = label;
+			this.wordIndex = wordIndex;
+			this.from = from;
+			this.to = to;
+			this.children = children;
+			this.firstChars = new char[children.length];
+			for(int i = 0; i < children.length; i++)
+				firstChars[i] = children[i].label[0];
+		}
+
+		Node getChild(char c) {
+			int index = Arrays.binarySearch(firstChars, c);
+			return index < 0 ? null : children[index];
+		}
+
+	}
+
+}
@@ -295,17 +295,19 @@ public class StringUtils {
 	
 	/**
 	 * Splits a command-line-like line to a list of command parts, preserving quoted strings
-	 * and unescaping escaped characters.
+	 * and unescaping escaped quotes.
 	 * 
 	 * <code><pre>
-	 * splitCLIArgs("git add --verbose "some dir with spaces/foo" "text\\twith\\ttabs")
-	 * = new String[] { "git", "add", "--verbose", "some dir with spaces/foo", "text\twith\ttabs" }
+	 * splitCLIArgs("git add --verbose "some dir with spaces/foo" 'it\\'s'")
+	 * = new String[] { "git", "add", "--verbose", "some dir with spaces/foo", "it's" }
 	 * </pre></code>
 	 * 
-	 * @see #splitWithQuotes(String, String, char[])
+	 * @see CommandTokenizer
 	 */
 	public static String[] splitCLIArgs(String cliLine) {
-		return splitWithQuotes(cliLine, " ");
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		tokenizer.tokenize(cliLine);
+		return tokenizer.getTokens();
 	}
 	
 	/**
@@ -0,0 +1,58 @@
+package fr.wonder.argparser;
+
+import fr.wonder.argparser.annotations.EntryPoint;
+
+/**
+ * Measures how parsing scales with the number of arguments, parsing should be
+ * linear: the time per argument must stay roughly constant from 10^3 to 10^6
+ * arguments.
+ * <p>
+ * This is not a unit test, run its main function directly.
+ */
+public class ArgumentsBenchmark {
+
+	private static long checksum;
+
+	@EntryPoint(path = "files")
+	public static void files(String... files) {
+		checksum += files.length;
+	}
+
+	@EntryPoint(path = "numbers")
+	public static void numbers(int... numbers) {
+		checksum += numbers.length;
+	}
+
+	public static void main(String[] args) throws InvalidDeclarationError {
+		ArgParser parser = new ArgParser("benchmark", ArgumentsBenchmark.class);
+
+		// warm up
+		for(int i = 0; i < 20; i++) {
+			parser.run(command("files", 10_000));
+			parser.run(command("numbers", 10_000));
+		}
+
+		for(String entry : new String[] { "files", "numbers" }) {
+			for(int count = 1_000; count <= 1_000_000; count *= 10) {
+				String[] command = command(entry, count);
+				int repetitions = Math.max(1, 1_000_000 / count);
+				long start = System.nanoTime();
+				for(int i = 0; i < repetitions; i++)
+					parser.run(command);
+				long elapsed = (System.nanoTime() - start) / repetitions;
+				System.out.printf("%-8s %,10d args: %,12d us, %6.1f ns/arg%n",
+						entry, count, elapsed / 1000, (double) elapsed / count);
+			}
+		}
+		System.out.println("checksum " + checksum);
+	}
+
+	private static String[] command(String entry, int count) {
+		String[] command = new String[count+1];
+		command[0] = entry;
+		for(int i = 1; i <= count; i++)
+			command[i] = entry.equals("files") ? "src/file" + i + ".java" : Integer.toString(i);
+		return command;
+	}
+
+}
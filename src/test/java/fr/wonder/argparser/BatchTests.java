@@ -0,0 +1,171 @@
+package fr.wonder.argparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.wonder.argparser.annotations.EntryPoint;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BatchTests {
+
+	private final AtomicInteger total = new AtomicInteger();
+
+	public BatchTests() {}
+
+	@EntryPoint(path = "add")
+	public void add(int value) {
+		total.addAndGet(value);
+	}
+
+	@EntryPoint(path = "sum")
+	public void sum(int... values) {
+		for(int value : values)
+			total.addAndGet(value);
+	}
+
+	@EntryPoint(path = "fail")
+	public void fail(String message) {
+		throw new IllegalStateException(message);
+	}
+
+	public static class FatalCommands {
+
+		@EntryPoint(path = "overflow")
+		public static void overflow() {
+			throw new StackOverflowError();
+		}
+
+		@EntryPoint(path = "assert")
+		public static void assertion() {
+			throw new AssertionError("unreachable");
+		}
+
+		@EntryPoint(path = "ok")
+		public static void ok() {}
+
+	}
+
+	// ----------------- Tests for the above methods -----------------
+
+	@Test
+	public void test_runAll() throws InvalidDeclarationError {
+		ArgParser parser = new ArgParser("batch", BatchTests.class, this);
+		List<CommandResult> results = parser.runAll(List.of(
+				new String[] { "add", "3" },
+				new String[] { "add", "x" },
+				new String[] { "fail", "boom" },
+				new String[] { "add", "4" }));
+		
+		assertEquals(4, results.size());
+		assertTrue(results.get(0).isSuccess());
+		assertTrue(results.get(1).hasParsingErrors());
+		assertTrue(results.get(1).getErrors().contains("got 'x'"));
+		assertFalse(results.get(2).isSuccess());
+		assertEquals("boom", results.get(2).getFailure().getMessage());
+		assertTrue(results.get(3).isSuccess());
+		assertEquals("4", results.get(3).getArguments()[1]);
+		assertEquals(7, total.get());
+	}
+
+	@Test
+	public void test_fatalErrors() throws InvalidDeclarationError {
+		ArgParser parser = new ArgParser("batch", FatalCommands.class, null);
+		assertTrue(parser.execute(new String[] { "assert" }).getFailure() instanceof AssertionError);
+		assertThrows(StackOverflowError.class, () -> parser.execute(new String[] { "overflow" }));
+		assertThrows(StackOverflowError.class, () -> parser.runAll(List.of(
+				new String[] { "ok" },
+				new String[] { "overflow" },
+				new String[] { "ok" })));
+	}
+
+	@Test
+	public void test_failFast() throws InvalidDeclarationError {
+		ArgParser parser = new ArgParser("batch", BatchTests.class, this);
+		String[] command = { "sum", "x", "1", "y" };
+		String errors = parser.execute(command).getErrors();
+		assertTrue(errors.contains("got 'x'"));
+		assertTrue(errors.contains("got 'y'"));
+		
+		parser.setFailFast(true);
+		errors = parser.execute(command).getErrors();
+		assertTrue(errors.contains("got 'x'"));
+		assertFalse(errors.contains("got 'y'"));
+		assertEquals(0, total.get());
+	}
+
+	@Test
+	public void test_diagnostics() throws InvalidDeclarationError {
+		ArgParser parser = new ArgParser("batch", BatchTests.class, this);
+		
+		List<Diagnostic> diagnostics = parser.execute(new String[] { "sum", "x", "1", "y" }).getDiagnostics();
+		assertEquals(2, diagnostics.size());
+		assertEquals(Diagnostic.Code.INVALID_VALUE, diagnostics.get(0).getCode());
+		assertEquals(1, diagnostics.get(0).getTokenIndex());
+		assertEquals("x", diagnostics.get(0).getValue());
+		assertEquals("int", diagnostics.get(0).getExpected());
+		assertEquals(3, diagnostics.get(1).getTokenIndex());
+		assertTrue(diagnostics.get(1).getMessage().contains("got 'y'"));
+		
+		Diagnostic diagnostic = parser.execute(new String[] { "ad", "1" }).getDiagnostics().get(0);
+		assertEquals(Diagnostic.Code.UNKNOWN_COMMAND, diagnostic.getCode());
+		assertEquals(0, diagnostic.getTokenIndex());
+		assertEquals("ad", diagnostic.getValue());
+		assertEquals("add|fail|sum", diagnostic.getExpected());
+		assertEquals(List.of("add"), diagnostic.getSuggestions());
+		assertTrue(diagnostic.getMessage().startsWith("Unknown usage - ad, did you mean 'add'?\n"));
+		assertEquals(List.of("sum"), parser.execute(new String[] { "sun" }).getDiagnostics().get(0).getSuggestions());
+		assertEquals(List.of(), parser.execute(new String[] { "commit" }).getDiagnostics().get(0).getSuggestions());
+		
+		diagnostic = parser.execute(new String[] { "add" }).getDiagnostics().get(0);
+		assertEquals(Diagnostic.Code.MISSING_ARGUMENT, diagnostic.getCode());
+		assertEquals(-1, diagnostic.getTokenIndex());
+		assertEquals("int", diagnostic.getExpected());
+		
+		CommandResult result = parser.execute(new String[] { "add", "1", "2" });
+		diagnostic = result.getDiagnostics().get(0);
+		assertEquals(Diagnostic.Code.TOO_MANY_ARGUMENTS, diagnostic.getCode());
+		assertEquals(2, diagnostic.getTokenIndex());
+		assertTrue(result.getErrors().contains("Too many arguments given\n"));
+		
+		diagnostic = parser.execute(new String[] { "add", "--verbose", "1" }).getDiagnostics().get(0);
+		assertEquals(Diagnostic.Code.UNEXPECTED_OPTION, diagnostic.getCode());
+		assertEquals(1, diagnostic.getTokenIndex());
+		assertEquals("--verbose", diagnostic.getSubject());
+		
+		assertTrue(parser.execute(new String[] { "add", "1" }).getDiagnostics().isEmpty());
+	}
+
+	@Test
+	public void test_argumentErrors() {
+		ArgumentError error = new ArgumentError("Expected {} for <{}>, got '{}'", "an integer", "x", "{}");
+		assertEquals("Expected an integer for <x>, got '{}'", error.getMessage());
+		assertEquals(0, error.getStackTrace().length);
+		assertEquals("plain {}", new ArgumentError("plain {}").getMessage());
+	}
+
+	@Test
+	public void test_serializedArgumentErrors() throws Exception {
+		// the argument is not serializable, only the formatted message is written
+		Object value = new Object() {
+			@Override
+			public String toString() {
+				return "x";
+			}
+		};
+		ArgumentError error = new ArgumentError("Expected {} for <{}>", "an integer", value);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(error);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			assertEquals("Expected an integer for <x>", ((ArgumentError) in.readObject()).getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package fr.wonder.argparser;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import fr.wonder.argparser.annotations.EntryPoint;
+import fr.wonder.argparser.annotations.Option;
+import fr.wonder.argparser.annotations.OptionClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompletionTests {
+
+	public enum Mode { FAST, Fair, full }
+
+	@OptionClass
+	public static class RemoteOptions {
+		@Option(name = "--mode", shorthand = "-m")
+		public Mode mode;
+		@Option(name = "--verbose", shorthand = "-v")
+		public boolean verbose;
+		@Option(name = "--version")
+		public int version;
+	}
+
+	@EntryPoint(path = "remote add")
+	public static void remoteAdd(RemoteOptions options, String name, Mode mode) {}
+
+	@EntryPoint(path = "remote remove")
+	public static void remoteRemove(String name) {}
+
+	@EntryPoint(path = "rebase")
+	public static void rebase(boolean interactive) {}
+
+	@EntryPoint(path = "push")
+	public static void push(File... files) {}
+
+	// ----------------- Tests for the above methods -----------------
+
+	private static List<String> complete(ArgParser parser, String line) {
+		return parser.complete(line, line.length());
+	}
+
+	@Test
+	public void test_paths() throws InvalidDeclarationError {
+		ArgParser parser = new ArgParser(new CommandSchema("git", CompletionTests.class));
+		assertEquals(List.of("push", "rebase", "remote"), complete(parser, ""));
+		assertEquals(List.of("rebase", "remote"), complete(parser, "re"));
+		assertEquals(List.of("add", "remove"), complete(parser, "remote "));
+		assertEquals(List.of("remove"), complete(parser, "--help remote rem"));
+		assertEquals(List.of(), complete(parser, "unknown "));
+		assertEquals(List.of("rebase", "remote"), parser.complete("re push", 2));
+		
+		parser.setAllowAbbreviations(true);
+		assertEquals(List.of("add"), complete(parser, "rem a"));
+	}
+
+	@Test
+	public void test_options() throws InvalidDeclarationError {
+		ArgParser parser = new ArgParser(new CommandSchema("git", CompletionTests.class));
+		assertEquals(List.of("--verbose", "--version"), complete(parser, "remote add --ver"));
+		assertEquals(List.of("--mode", "--verbose", "--version", "-m", "-v"), complete(parser, "remote add -"));
+		assertEquals(List.of("--verbose", "--version"), complete(parser, "--ver"));
+		assertEquals(List.of("Fair", "FAST", "full"), complete(parser, "remote add --mode "));
+		assertEquals(List.of("Fair"), complete(parser, "remote add -vm fai"));
+		assertEquals(List.of(), complete(parser, "remote add --version "));
+	}
+
+	@Test
+	public void test_arguments() throws Exception {
+		ArgParser parser = new ArgParser(new CommandSchema("git", CompletionTests.class));
+		assertEquals(List.of(), complete(parser, "remote add origin"));
+		assertEquals(List.of("Fair", "FAST", "full"), complete(parser, "remote add --verbose origin F"));
+		assertEquals(List.of("full"), complete(parser, "remote add origin \"fu"));
+		assertEquals(List.of(), complete(parser, "remote add origin fast "));
+		assertEquals(List.of("true"), complete(parser, "rebase t"));
+		
+		Path directory = Files.createTempDirectory("completion");
+		Files.createDirectory(directory.resolve("src"));
+		Files.createFile(directory.resolve("src/Main.java"));
+		Files.createFile(directory.resolve("setup.txt"));
+		Files.createFile(directory.resolve(".hidden"));
+		CommandContext context = new CommandContext(directory, Map.of(), InputStream.nullInputStream(), System.out, System.err);
+		assertEquals(List.of("setup.txt", "src/"), context.call(() -> complete(parser, "push ")));
+		assertEquals(List.of("src/Main.java"), context.call(() -> complete(parser, "push setup.txt src/")));
+		assertEquals(List.of(".hidden"), context.call(() -> complete(parser, "push .h")));
+	}
+
+}
@@ -0,0 +1,208 @@
+package fr.wonder.argparser;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import fr.wonder.argparser.annotations.Argument;
+import fr.wonder.argparser.annotations.EntryPoint;
+import fr.wonder.argparser.annotations.Option;
+import fr.wonder.argparser.annotations.OptionClass;
+import org.junit.Test;
+
+import static fr.wonder.argparser.TestUtils.*;
+import static org.junit.Assert.*;
+
+public class ConverterTests {
+
+	/** Discovered through its {@code of(String)} factory */
+	public static final class UserId {
+		final int id;
+		
+		private UserId(int id) {
+			this.id = id;
+		}
+		
+		public static UserId of(String text) {
+			if(!text.startsWith("u"))
+				throw new IllegalArgumentException("user ids start with 'u'");
+			return new UserId(Integer.parseInt(text.substring(1)));
+		}
+	}
+	
+	/** Has no factory, converted by a registered converter */
+	public static final class Color {
+		final int rgb;
+		
+		Color(int rgb) {
+			this.rgb = rgb;
+		}
+	}
+	
+	static {
+		ValueConverters.register(Color.class, (value, argName) -> {
+			if(!value.matches("#[0-9a-fA-F]{6}"))
+				throw new ArgumentError("Expected a #rrggbb color for <" + argName + ">, got '" + value + "'");
+			return new Color(Integer.parseInt(value.substring(1), 16));
+		});
+	}
+	
+	@OptionClass
+	public static class ConverterOptions {
+		@Option(name = "--timeout", shorthand = "-t")
+		public Duration timeout = Duration.ZERO;
+		@Option(name = "--user", shorthand = "-u")
+		public List<UserId> users;
+	}
+	
+	private static Object[] lastValues;
+	
+	public ConverterTests() {}
+	
+	@EntryPoint(path = "uuid")
+	public static void uuid(UUID id) {
+		lastValues = new Object[] { id };
+	}
+	
+	@EntryPoint(path = "users")
+	@Argument(name = "color", defaultValue = "#00ff00")
+	@Argument(name = "ids", defaultValue = "u1 u2")
+	public static void users(ConverterOptions options, Color color, UserId... ids) {
+		lastValues = new Object[] { options, color, ids };
+	}
+	
+	@Test
+	public void test_discoveredConverters() {
+		UUID id = UUID.randomUUID();
+		runWithInstance(true, "uuid " + id);
+		assertEquals(id, lastValues[0]);
+		runWithInstance(false, "uuid not-a-uuid");
+		
+		runWithInstance(true, "users -t PT5S -u u3 -u u4 #ff0000 u5");
+		ConverterOptions options = (ConverterOptions) lastValues[0];
+		assertEquals(Duration.ofSeconds(5), options.timeout);
+		assertEquals(2, options.users.size());
+		assertEquals(4, options.users.get(1).id);
+		assertEquals(5, ((UserId[]) lastValues[2])[0].id);
+		runWithInstance(false, "users --timeout 5s");
+		runWithInstance(false, "users -u 3");
+	}
+	
+	@Test
+	public void test_registeredConverters() {
+		runWithInstance(true, "users");
+		assertEquals(0x00ff00, ((Color) lastValues[1]).rgb);
+		assertEquals(2, ((UserId[]) lastValues[2]).length);
+		runWithInstance(true, "users #123456");
+		assertEquals(0x123456, ((Color) lastValues[1]).rgb);
+		runWithInstance(false, "users red");
+	}
+	
+	@Test
+	public void test_paths() throws Exception {
+		Path directory = Files.createTempDirectory("converters").toRealPath();
+		Path first = Files.createDirectory(directory.resolve("first"));
+		Path second = Files.createDirectory(directory.resolve("second"));
+		Path link = Files.createSymbolicLink(directory.resolve("link"), first);
+		CommandContext context = new CommandContext(directory, Map.of(), InputStream.nullInputStream(), System.out, System.err);
+		
+		assertEquals(directory.resolve("link/../second"), convert(context, Path.class, "link/../second"));
+		assertEquals(second, convert(context, Path.class, "link/../second").toRealPath());
+		File file = convert(context, File.class, "./link");
+		assertEquals(directory.resolve("./link").toString(), file.getPath());
+		assertEquals(first.toFile(), file.getCanonicalFile());
+		
+		// '..' after a link goes to the parent of the link target, not back to the working directory
+		Path other = Files.createDirectories(directory.resolve("other/x"));
+		Path sibling = Files.createDirectory(directory.resolve("other/y"));
+		Files.createDirectory(directory.resolve("y"));
+		Files.createSymbolicLink(directory.resolve("otherlink"), other);
+		assertEquals(sibling.toFile(), convert(context, File.class, "otherlink/../y").getCanonicalFile());
+		assertEquals(sibling, convert(context, Path.class, "otherlink/../y").toRealPath());
+		
+		ValueConverters.setCanonicalPathCacheSize(16);
+		try {
+			assertEquals(first.toFile(), convert(context, File.class, "link").getCanonicalFile());
+			Files.delete(link);
+			Files.createSymbolicLink(link, second);
+			// the canonical path of the same raw path in the same directory is cached
+			assertEquals(first.toFile(), convert(context, File.class, "link").getCanonicalFile());
+			assertEquals(second.toFile(), convert(context, File.class, "./link").getCanonicalFile());
+		} finally {
+			ValueConverters.setCanonicalPathCacheSize(0);
+		}
+		assertEquals(second.toFile(), convert(context, File.class, "link").getCanonicalFile());
+	}
+	
+	private static <T> T convert(CommandContext context, Class<T> type, String value) {
+		return context.call(() -> {
+			try {
+				return type.cast(ValueConverters.get(type).convert(value, "path"));
+			} catch (ArgumentError e) {
+				throw new AssertionError(e);
+			}
+		});
+	}
+	
+	public enum Region { EU_WEST, us_east, Local, local }
+	
+	@Test
+	public void test_enums() throws ArgumentError {
+		ValueConverter<?> converter = ValueConverters.get(Region.class);
+		assertSame(converter, ValueConverters.get(Region.class));
+		assertEquals(Region.EU_WEST, converter.convert("eu_west", "region"));
+		assertEquals(Region.us_east, converter.convert("US_EAST", "region"));
+		assertEquals(Region.Local, converter.convert("Local", "region"));
+		assertEquals(Region.local, converter.convert("local", "region"));
+		try {
+			converter.convert("LOCAL", "region");
+			fail("Expected an ambiguous value");
+		} catch (ArgumentError e) {
+			assertTrue(e.getMessage().contains("Ambiguous"));
+		}
+		try {
+			converter.convert("mars", "region");
+			fail("Expected an unknown value");
+		} catch (ArgumentError e) {
+			assertEquals("Expected one of EU_WEST|us_east|Local|local for <region>, got 'mars'", e.getMessage());
+		}
+		try {
+			converter.convert("us-east", "region");
+			fail("Expected an unknown value");
+		} catch (ArgumentError e) {
+			assertEquals("Expected one of EU_WEST|us_east|Local|local for <region>, got 'us-east', did you mean 'us_east'?", e.getMessage());
+		}
+		assertEquals(List.of("Local", "local"), ((EnumConverter) converter).suggest("locl"));
+	}
+	
+	@Test
+	public void test_inetAddresses() throws ArgumentError {
+		ValueConverter<?> converter = ValueConverters.get(InetAddress.class);
+		assertArrayEquals(new byte[] { 10, 0, 0, (byte) 255 }, ((InetAddress) converter.convert("10.0.0.255", "host")).getAddress());
+		assertTrue(((InetAddress) converter.convert("::1", "host")).isLoopbackAddress());
+		assertTrue(((InetAddress) converter.convert("[::1]", "host")).isLoopbackAddress());
+		assertArrayEquals(new byte[] { 1, 2, 3, 4 }, ((InetAddress) converter.convert("::ffff:1.2.3.4", "host")).getAddress());
+		assertEquals(16, ((InetAddress) converter.convert("fe80:0:0:0:0:0:0:1", "host")).getAddress().length);
+		// host names are not resolved, even with a colon which getByName would look up
+		for(String invalid : new String[] { "localhost", "example.com", "1.2.3", "1.2.3.4.5", "256.0.0.1", "01.2.3.4", "1..2.3", "1.2.3.", ":::x",
+				"zz:1", "host:8080", "1:2:3:4:5:6:7", "1::2::3", "12345::1", "::1%", "[::1", "::1.2.3" })
+			assertThrows(invalid, ArgumentError.class, () -> converter.convert(invalid, "host"));
+	}
+	
+	@Test
+	public void test_converterLookup() {
+		assertNotNull(ValueConverters.get(int.class));
+		assertSame(ValueConverters.get(int.class), ValueConverters.get(Integer.class));
+		assertSame(ValueConverters.get(UUID.class), ValueConverters.get(UUID.class));
+		assertNull(ValueConverters.get(Object.class));
+		assertNull(ValueConverters.get(int[][].class));
+		assertThrows(IllegalArgumentException.class, () -> ValueConverters.register(int.class, (v, n) -> 0));
+	}
+	
+}
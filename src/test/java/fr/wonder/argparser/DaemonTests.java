@@ -0,0 +1,141 @@
+package fr.wonder.argparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import fr.wonder.argparser.annotations.EntryPoint;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DaemonTests {
+
+	@EntryPoint(path = "greet")
+	public static void greet(String name) {
+		System.out.println("hello " + name + " from " + CommandContext.current().getEnvironment("GREETER"));
+	}
+
+	@EntryPoint(path = "where")
+	public static void where(File file) {
+		System.out.print(file.getPath());
+	}
+
+	@EntryPoint(path = "cat")
+	public static void cat() throws IOException {
+		CommandContext.current().getInput().transferTo(System.out);
+	}
+
+	@EntryPoint(path = "exit")
+	public static void exit(int status) {
+		System.err.println("exiting");
+		CommandContext.current().setExitStatus(status);
+	}
+
+	@EntryPoint(path = "throw")
+	public static void throwing() {
+		throw new IllegalStateException("boom");
+	}
+
+	// ----------------- Tests for the above methods -----------------
+
+	private static final Path CWD = Path.of(System.getProperty("java.io.tmpdir")).toAbsolutePath();
+
+	private static String[] run(CommandServer server, String input, String... args) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		InputStream in = new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+		int status = CommandClient.run(server.getAddress(), args, CWD, Map.of("GREETER", "daemon"), in, out, err);
+		return new String[] { String.valueOf(status), out.toString(StandardCharsets.UTF_8), err.toString(StandardCharsets.UTF_8) };
+	}
+
+	@Test
+	public void test_loopbackServer() throws Exception {
+		CommandSchema schema = new CommandSchema("daemon", DaemonTests.class);
+		try (CommandServer server = CommandServer.start(schema, null, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+			assertArrayEquals(new String[] { "0", "hello bob from daemon\n", "" }, run(server, "", "greet", "bob"));
+			assertArrayEquals(new String[] { "0", CWD.resolve("some.txt").toString(), "" }, run(server, "", "where", "some.txt"));
+			assertArrayEquals(new String[] { "0", "line 1\nline 2", "" }, run(server, "line 1\nline 2", "cat"));
+			assertArrayEquals(new String[] { "3", "", "exiting\n" }, run(server, "", "exit", "3"));
+			
+			String[] failed = run(server, "", "greet");
+			assertEquals("1", failed[0]);
+			assertTrue(failed[2].contains("Missing argument"));
+			String[] thrown = run(server, "", "throw");
+			assertEquals("1", thrown[0]);
+			assertTrue(thrown[2].contains("IllegalStateException: boom"));
+		}
+	}
+
+	@Test
+	public void test_unixDomainServer() throws Exception {
+		Path directory = Files.createTempDirectory("argparser");
+		UnixDomainSocketAddress address = UnixDomainSocketAddress.of(directory.resolve("daemon.sock"));
+		try (CommandServer server = CommandServer.start(new CommandSchema("daemon", DaemonTests.class), null, address)) {
+			assertArrayEquals(new String[] { "0", "hello alice from daemon\n", "" }, run(server, "", "greet", "alice"));
+		} finally {
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void test_invalidHeaders() throws Exception {
+		CommandSchema schema = new CommandSchema("daemon", DaemonTests.class);
+		try (CommandServer server = CommandServer.start(schema, null, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+			assertRejected(server, DaemonProtocol.MAGIC, -1);
+			assertRejected(server, DaemonProtocol.MAGIC, Integer.MAX_VALUE);
+			assertRejected(server, DaemonProtocol.MAGIC, 1, Integer.MAX_VALUE);
+			assertRejected(server, DaemonProtocol.MAGIC, 0, 1, '.');
+			assertRejected(server, DaemonProtocol.MAGIC, 0, 0, -5);
+			assertArrayEquals(new String[] { "0", "hello bob from daemon\n", "" }, run(server, "", "greet", "bob"));
+		}
+	}
+
+	/** Sends a header made of {@code ints} and expects the server to close the connection */
+	private static void assertRejected(CommandServer server, int... ints) throws IOException {
+		try (SocketChannel socket = SocketChannel.open(server.getAddress())) {
+			DataOutputStream out = new DataOutputStream(Channels.newOutputStream(socket));
+			for(int i : ints)
+				out.writeInt(i);
+			out.flush();
+			assertEquals(-1, Channels.newInputStream(socket).read());
+		}
+	}
+
+	@Test
+	public void test_systemStreamsRestored() throws Exception {
+		PrintStream out = System.out, err = System.err;
+		CommandSchema schema = new CommandSchema("daemon", DaemonTests.class);
+		InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+		CommandServer first = CommandServer.start(schema, null, address);
+		CommandServer second = CommandServer.start(schema, null, address);
+		assertNotSame(out, System.out);
+		assertNotSame(err, System.err);
+		first.close();
+		first.close();
+		assertNotSame(out, System.out);
+		second.close();
+		assertSame(out, System.out);
+		assertSame(err, System.err);
+	}
+
+	@Test
+	public void test_remoteAddressRejected() {
+		assertThrows(IllegalArgumentException.class, () -> CommandServer.start(
+				new CommandSchema("daemon", DaemonTests.class), null, new InetSocketAddress("8.8.8.8", 0)));
+	}
+
+}
@@ -1,5 +1,13 @@
 package fr.wonder.argparser;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
 import fr.wonder.argparser.annotations.Argument;
 import fr.wonder.argparser.annotations.EntryPoint;
 import fr.wonder.argparser.annotations.Option;
@@ -8,6 +16,7 @@ import fr.wonder.argparser.utils.StringUtils;
 import org.junit.Test;
 
 import static fr.wonder.argparser.TestUtils.*;
+import static org.junit.Assert.*;
 
 public class ExoticArgumentsTests {
 
@@ -55,6 +64,79 @@ public class ExoticArgumentsTests {
 		System.out.println("Options: " + text + " - " + StringUtils.join(",", options.stringList));
 	}
 
+	@OptionClass
+	public static class ToggleOptions {
+		@Option(name = "--list", shorthand = "-l")
+		public boolean list;
+		@Option(name = "--all", shorthand = "-a")
+		public boolean all;
+	}
+	
+	@EntryPoint(path = "toggles")
+	public static void togglesEntry(ToggleOptions options) {
+		System.out.println("Toggles: " + options.list + " " + options.all);
+	}
+
+	@OptionClass
+	public static class RepeatedOptions {
+		@Option(name = "--include", shorthand = "-i")
+		public List<String> includes;
+		@Option(name = "--level")
+		public Set<Integer> levels;
+		@Option(name = "--weight", shorthand = "-w")
+		public int[] weights = { 1 };
+	}
+	
+	private static RepeatedOptions lastRepeated;
+	
+	@EntryPoint(path = "repeated")
+	public static void repeatedEntry(RepeatedOptions options) {
+		lastRepeated = options;
+		System.out.println("Repeated: " + options.includes + " " + options.levels + " " + Arrays.toString(options.weights));
+	}
+
+	@OptionClass
+	public static class SharedOptions {
+		@Option(name = "--y")
+		public int y;
+		/** Not an instance member, it is neither instantiated nor assigned */
+		public static ToggleOptions shared;
+	}
+	
+	private static int lastSharedY;
+	
+	@EntryPoint(path = "shared")
+	public static void sharedEntry(SharedOptions options) {
+		lastSharedY = options.y;
+		System.out.println("Shared: y=" + options.y);
+	}
+
+	@EntryPoint(path = "byte")
+	public static void byteEntry(byte b, short... shorts) {
+		System.out.println("Byte: " + b + " " + shorts.length);
+	}
+	
+	@EntryPoint(path = "lazy sum")
+	public static void lazySum(Stream<Integer> numbers) {
+		System.out.println("Lazy sum: " + numbers.mapToInt(Integer::intValue).sum());
+	}
+	
+	@EntryPoint(path = "lazy first")
+	public static void lazyFirst(Iterator<Integer> numbers) {
+		System.out.println("Lazy first: " + numbers.next());
+	}
+	
+	@EntryPoint(path = "lazy join")
+	@Argument(name = "words", defaultValue = "a b")
+	public static void lazyJoin(Iterable<String> words) {
+		System.out.println("Lazy join: " + String.join(",", words));
+	}
+
+	@EntryPoint(path = "throwing")
+	public static void throwing() {
+		throw new UnsupportedOperationException("thrown by the entry point");
+	}
+
 	// ----------------- Tests for the above methods -----------------
 
 	@Test
@@ -85,4 +167,113 @@ public class ExoticArgumentsTests {
 		runWithInstance(true, "options -l 1 -l 2");
 		runWithInstance(true, "options -l 1 text -l 2");
 	}
+
+	@Test
+	public void test_staticOptionClassField() {
+		runWithInstance(true, "shared --y 3");
+		assertEquals(3, lastSharedY);
+		assertNull(SharedOptions.shared);
+	}
+
+	@Test
+	public void test_repeatedOptions() throws InvalidDeclarationError {
+		runWithInstance(true, "repeated -i a --include b -i a --level 2 --level 1 --level 2 -w 3 -w 4");
+		assertEquals(List.of("a", "b", "a"), lastRepeated.includes);
+		assertEquals(List.of(2, 1), List.copyOf(lastRepeated.levels));
+		assertArrayEquals(new int[] { 1, 3, 4 }, lastRepeated.weights);
+		
+		runWithInstance(true, "repeated");
+		assertNull(lastRepeated.includes);
+		assertArrayEquals(new int[] { 1 }, lastRepeated.weights);
+		
+		StringBuilder command = new StringBuilder("repeated");
+		for(int i = 0; i < 10000; i++)
+			command.append(" -w ").append(i);
+		runWithInstance(true, command.toString());
+		assertEquals(10001, lastRepeated.weights.length);
+		assertEquals(9999, lastRepeated.weights[10000]);
+		
+		runWithInstance(false, "repeated --level 1 --level x");
+		runWithInstance(false, "repeated -w 1 -w 1.5");
+		
+		ArgParser parser = new ArgParser("test", ExoticArgumentsTests.class, new ExoticArgumentsTests());
+		List<Diagnostic> diagnostics = parser.execute(new String[] { "repeated", "-w", "1", "--level", "x", "-w", "1.5" }).getDiagnostics();
+		assertEquals(2, diagnostics.size());
+		assertEquals(Diagnostic.Code.INVALID_VALUE, diagnostics.get(0).getCode());
+		assertEquals(4, diagnostics.get(0).getTokenIndex());
+		assertEquals("--level", diagnostics.get(0).getSubject());
+		assertEquals("Integer", diagnostics.get(0).getExpected());
+		assertEquals(6, diagnostics.get(1).getTokenIndex());
+		assertEquals("1.5", diagnostics.get(1).getValue());
+		
+		Diagnostic unknown = parser.execute(new String[] { "repeated", "--levle" }).getDiagnostics().get(0);
+		assertEquals(Diagnostic.Code.UNKNOWN_OPTION, unknown.getCode());
+		assertEquals(List.of("--level"), unknown.getSuggestions());
+		assertEquals("Unknown option: --levle, did you mean '--level'?", unknown.getMessage());
+	}
+
+	@Test
+	public void test_sharedOptionNames() {
+		// --list takes a value for 'options' but not for 'toggles'
+		runWithInstance(true, "toggles -al");
+		runWithInstance(true, "toggles --list -a");
+		runWithInstance(true, "-a toggles");
+		runWithInstance(true, "options --list 1 -l 2");
+		runWithInstance(false, "toggles -la1");
+		runWithInstance(false, "-l toggles");
+	}
+
+	@Test
+	public void test_lazyArguments() {
+		runWithInstance(true, "lazy sum 1 2 3");
+		runWithInstance(true, "lazy join");
+		runWithInstance(true, "lazy join x y z");
+		// only the consumed arguments are converted
+		runWithInstance(true, "lazy first 1 x");
+		try {
+			runWithInstance(true, "lazy sum 1 x 3");
+			fail("The conversion error was not thrown");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getCause() instanceof ArgumentError);
+			assertTrue(e.getMessage().contains("'x'"));
+		}
+	}
+
+	@Test
+	public void test_primitiveRanges() {
+		runWithInstance(true, "byte -- 127 -32768 32767");
+		runWithInstance(true, "byte -- -128 0");
+		runWithInstance(false, "byte 128");
+		runWithInstance(false, "byte 1 32768");
+		runWithInstance(false, "byte 1.5");
+	}
+
+	@Test
+	public void test_bytes() throws InvalidDeclarationError {
+		byte[] command = "varargsnonempty 1 2 3".getBytes(StandardCharsets.UTF_8);
+		ArgParser parser = new ArgParser("exotic", ExoticArgumentsTests.class, this);
+		assertTrue(parser.run(command, 0, command.length));
+		assertFalse(parser.run(ByteBuffer.wrap(command, 0, 15)));
+		
+		command = "repeated -i d\u00e9j\u00e0 --level 3 -w 2 -i 'x y' --include \u65e5".getBytes(StandardCharsets.UTF_8);
+		assertTrue(parser.run(command, 0, command.length));
+		assertEquals(List.of("d\u00e9j\u00e0", "x y", "\u65e5"), lastRepeated.includes);
+		assertEquals(Set.of(3), lastRepeated.levels);
+		command = "toggles -la".getBytes(StandardCharsets.UTF_8);
+		assertTrue(parser.run(command, 0, command.length));
+		command = "repeated --levle 3".getBytes(StandardCharsets.UTF_8);
+		assertFalse(parser.run(command, 0, command.length));
+	}
+
+	@Test
+	public void test_throwing() {
+		try {
+			runWithInstance(true, "throwing");
+			fail("The entry point exception was not propagated");
+		} catch (UnsupportedOperationException e) {
+			assertEquals("thrown by the entry point", e.getMessage());
+			for(StackTraceElement el : e.getStackTrace())
+				assertNotEquals(ArgParser.class.getName(), el.getClassName());
+		}
+	}
 }
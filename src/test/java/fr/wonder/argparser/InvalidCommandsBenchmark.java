@@ -0,0 +1,85 @@
+package fr.wonder.argparser;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import fr.wonder.argparser.annotations.EntryPoint;
+import fr.wonder.argparser.annotations.Option;
+import fr.wonder.argparser.annotations.OptionClass;
+
+/**
+ * Measures how many invalid commands per second are rejected, with errors printed
+ * by {@link ArgParser#run(String[])}, captured without being read by
+ * {@link ArgParser#execute(String[])}, and with the fail-fast mode.
+ * <p>
+ * This is not a unit test, run its main function directly.
+ */
+public class InvalidCommandsBenchmark {
+
+	private static long checksum;
+
+	public enum Region { EU_WEST, EU_NORTH, US_EAST, US_WEST, AP_SOUTH }
+
+	@OptionClass
+	public static class DeployOptions {
+		@Option(name = "--replicas", shorthand = "-r")
+		public int replicas = 1;
+		@Option(name = "--region")
+		public Region region = Region.EU_WEST;
+	}
+
+	@EntryPoint(path = "deploy")
+	public static void deploy(DeployOptions options, String service, int... ports) {
+		checksum += ports.length;
+	}
+
+	@EntryPoint(path = "scale")
+	public static void scale(String service, int replicas) {
+		checksum += replicas;
+	}
+
+	private static final String[][] INVALID_COMMANDS = {
+		{ "deploy", "--region", "mars", "api", "80", "443" },
+		{ "deploy", "-r", "many", "api", "http", "https", "ftp", "ssh" },
+		{ "deploy", "--unknown", "api", "80" },
+		{ "dploy", "api" },
+		{ "scale", "api" },
+		{ "scale", "api", "3", "4" },
+	};
+
+	public static void main(String[] args) throws InvalidDeclarationError {
+		PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+		ArgParser parser = new ArgParser("benchmark", InvalidCommandsBenchmark.class)
+				.setErrorStream(discard)
+				.setOutputStream(discard);
+
+		for(int round = 0; round < 3; round++) {
+			parser.setFailFast(false);
+			measure("run (printed)", () -> {
+				for(String[] command : INVALID_COMMANDS)
+					checksum += parser.run(command) ? 1 : 0;
+			});
+			measure("execute", () -> {
+				for(String[] command : INVALID_COMMANDS)
+					checksum += parser.execute(command).hasParsingErrors() ? 1 : 0;
+			});
+			parser.setFailFast(true);
+			measure("execute (fail-fast)", () -> {
+				for(String[] command : INVALID_COMMANDS)
+					checksum += parser.execute(command).hasParsingErrors() ? 1 : 0;
+			});
+		}
+		System.out.println("checksum " + checksum);
+	}
+
+	private static void measure(String name, Runnable batch) {
+		int batches = 200_000;
+		long start = System.nanoTime();
+		for(int i = 0; i < batches; i++)
+			batch.run();
+		long elapsed = System.nanoTime() - start;
+		double commandsPerSecond = (double) batches * INVALID_COMMANDS.length / elapsed * 1e9;
+		System.out.printf("%-20s %,12.0f rejected commands/s%n", name, commandsPerSecond);
+	}
+
+}
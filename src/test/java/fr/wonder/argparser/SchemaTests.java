@@ -0,0 +1,113 @@
+package fr.wonder.argparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import fr.wonder.argparser.annotations.EntryPoint;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SchemaTests {
+
+	private final List<String> calls = new ArrayList<>();
+
+	public SchemaTests() {}
+
+	@EntryPoint(path = "echo")
+	public void echo(String text, int count) {
+		for(int i = 0; i < count; i++)
+			calls.add(text);
+	}
+
+	@EntryPoint(path = "static")
+	public static void staticEntry() {}
+
+	// ----------------- Tests for the above methods -----------------
+
+	@Test
+	public void test_calleeValidation() throws InvalidDeclarationError {
+		CommandSchema schema = new CommandSchema("schema", SchemaTests.class);
+		assertTrue(schema.requiresCalleeInstance());
+		assertThrows(IllegalArgumentException.class, () -> new ArgParser(schema));
+		assertThrows(IllegalArgumentException.class, () -> new ArgParser(schema, "not a callee"));
+		assertThrows(InvalidDeclarationError.class, () -> new ArgParser("schema", SchemaTests.class));
+	}
+
+	@Test
+	public void test_concurrentCallers() throws Exception {
+		CommandSchema schema = new CommandSchema("schema", SchemaTests.class);
+		int callers = 32;
+		int iterations = 200;
+		CountDownLatch start = new CountDownLatch(1);
+		List<Callable<String>> tasks = new ArrayList<>();
+		for(int c = 0; c < callers; c++) {
+			String id = "caller" + c;
+			tasks.add(() -> {
+				SchemaTests callee = new SchemaTests();
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				ByteArrayOutputStream err = new ByteArrayOutputStream();
+				ArgParser parser = new ArgParser(schema, callee)
+						.setOutputStream(new PrintStream(out, true))
+						.setErrorStream(new PrintStream(err, true));
+				start.await();
+				for(int i = 0; i < iterations; i++) {
+					assertTrue(parser.run(new String[] { "echo", id, "1" }));
+					assertFalse(parser.run(new String[] { "echo", id, id }));
+					assertTrue(parser.run(new String[] { "--help", "echo", id }));
+				}
+				for(String call : callee.calls)
+					assertEquals(id, call);
+				assertEquals(iterations, callee.calls.size());
+				assertEquals(iterations, count(err.toString(), "got '" + id + "'"));
+				assertEquals(iterations, count(err.toString(), "got 'caller"));
+				assertEquals(iterations, count(out.toString(), "Usage: schema echo"));
+				return id;
+			});
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> futures = new ArrayList<>();
+			for(Callable<String> task : tasks)
+				futures.add(executor.submit(task));
+			start.countDown();
+			for(Future<String> future : futures)
+				future.get();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void test_sharedHelp() throws Exception {
+		CommandSchema schema = new CommandSchema("schema", SchemaTests.class);
+		Branch echo = schema.treeRoot.getSubBranch("echo", false);
+		assertSame(schema.help.getHelp(echo), schema.help.getHelp(echo));
+		assertSame(schema.help.getEntryUsage(echo.entryPoint), schema.help.getEntryUsage(echo.entryPoint));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ArgParser parser = new ArgParser(schema, new SchemaTests()).setOutputStream(new PrintStream(out, true));
+		assertTrue(parser.run(new String[] { "--help", "echo" }));
+		assertEquals(schema.help.getHelp(echo), out.toString());
+		assertTrue(out.toString().startsWith("Usage: schema echo "));
+		
+		out.reset();
+		assertTrue(parser.run(new String[0]));
+		assertEquals("Usage:  echo|static ...\nUse 'schema --help <cmd>' for help" + System.lineSeparator(), out.toString());
+	}
+
+	private static int count(String text, String part) {
+		int count = 0;
+		for(int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i+1))
+			count++;
+		return count;
+	}
+
+}
@@ -0,0 +1,105 @@
+package fr.wonder.argparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.wonder.argparser.annotations.EntryPoint;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScriptTests {
+
+	private final List<String> calls = new ArrayList<>();
+
+	public ScriptTests() {}
+
+	@EntryPoint(path = "user add")
+	public void userAdd(String name, String... groups) {
+		calls.add("add " + name + " " + String.join(",", groups));
+	}
+
+	@EntryPoint(path = "user remove")
+	public void userRemove(String name) {
+		calls.add("remove " + name);
+	}
+
+	@EntryPoint(path = "user rename")
+	public void userRename(String name, String newName) {
+		calls.add("rename " + name + " " + newName);
+	}
+
+	// ----------------- Tests for the above methods -----------------
+
+	@Test
+	public void test_script() throws InvalidDeclarationError, IOException {
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		ArgParser parser = new ArgParser("script", ScriptTests.class, this)
+				.setErrorStream(new PrintStream(errors, true));
+		String script = ""
+				+ "# comment\n"
+				+ "user add alice admin\n"
+				+ "\n"
+				+ "   # indented comment\n"
+				+ "user add bob \\\n"
+				+ "  dev \"ops team\"\n"
+				+ "user remove\n"
+				+ "user remove alice";
+		int failures = parser.runScript(new StringReader(script));
+		assertEquals(1, failures);
+		assertEquals(List.of("add alice admin", "add bob dev,ops team", "remove alice"), calls);
+		assertTrue(errors.toString().contains("line 7"));
+	}
+
+	@Test
+	public void test_abbreviations() throws InvalidDeclarationError {
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		ArgParser parser = new ArgParser("script", ScriptTests.class, this)
+				.setErrorStream(new PrintStream(errors, true));
+		assertFalse(parser.run("u a alice admin"));
+		
+		parser.setAllowAbbreviations(true);
+		assertTrue(parser.run("u a alice admin"));
+		assertTrue(parser.run("user ren alice bob"));
+		assertTrue(parser.run("user remove bob"));
+		assertFalse(parser.run("user re bob"));
+		assertEquals(List.of("add alice admin", "rename alice bob", "remove bob"), calls);
+		assertTrue(errors.toString().contains("Ambiguous usage - re can be any of remove|rename"));
+	}
+
+	@Test
+	public void test_argumentFiles() throws InvalidDeclarationError, IOException {
+		Path tokens = Files.createTempFile("args", ".txt");
+		Path nul = Files.createTempFile("args", ".bin");
+		try {
+			Files.writeString(tokens, "dev \"ops team\"\r\n\n  qa\n");
+			Files.writeString(nul, "with space\0new\nline\0");
+			ByteArrayOutputStream errors = new ByteArrayOutputStream();
+			ArgParser parser = new ArgParser("script", ScriptTests.class, this)
+					.setErrorStream(new PrintStream(errors, true));
+			
+			assertTrue(parser.run(new String[] { "user", "add", "alice", "@" + tokens }));
+			parser.setArgumentFileMode(ArgumentFileMode.TOKENS);
+			assertTrue(parser.run(new String[] { "user", "add", "bob", "@" + tokens, "@@at" }));
+			parser.setArgumentFileMode(ArgumentFileMode.NUL_DELIMITED);
+			assertTrue(parser.run(new String[] { "user", "add", "carol", "@" + nul }));
+			assertFalse(parser.run(new String[] { "user", "add", "dan", "@" + nul + ".missing" }));
+			
+			assertEquals(List.of(
+					"add alice @" + tokens,
+					"add bob dev,ops team,qa,@at",
+					"add carol with space,new\nline"), calls);
+			assertTrue(errors.toString().contains("Cannot read argument file"));
+		} finally {
+			Files.delete(tokens);
+			Files.delete(nul);
+		}
+	}
+
+}
@@ -0,0 +1,272 @@
+package fr.wonder.argparser.processor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import fr.wonder.argparser.ArgParser;
+import fr.wonder.argparser.CommandResult;
+import fr.wonder.argparser.CommandSchema;
+
+import static org.junit.Assert.*;
+
+public class DeclarationProcessorTest {
+
+	private static final String HEADER = ""
+			+ "import fr.wonder.argparser.annotations.*;\n"
+			+ "public class Decl {\n";
+
+	/** The directory the declarations of the validation tests are compiled into, overwritten by each test */
+	private static Path output;
+
+	private static List<Diagnostic<? extends JavaFileObject>> compile(String body) {
+		try {
+			if(output == null)
+				output = Files.createTempDirectory("declarations");
+			return compile(body, output, true);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Compiles the body of the {@code Decl} class into {@code output}, the binder
+	 * generated by the processor is compiled along with it.
+	 */
+	private static List<Diagnostic<? extends JavaFileObject>> compile(String body, Path output, boolean process) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///Decl.java"), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return HEADER + body + "\n}";
+			}
+		};
+		List<String> options = List.of(process ? "-proc:full" : "-proc:none", "-parameters",
+				"-d", output.toString(), "-s", output.toString(), "-classpath", System.getProperty("java.class.path"));
+		JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null, List.of(source));
+		if(process)
+			task.setProcessors(List.of(new DeclarationProcessor()));
+		task.call();
+		return diagnostics.getDiagnostics();
+	}
+
+	private static void assertValid(String body) {
+		for(Diagnostic<?> d : compile(body))
+			assertNotEquals(d.toString(), Diagnostic.Kind.ERROR, d.getKind());
+	}
+
+	private static void assertInvalid(String body, String expectedMessagePart) {
+		for(Diagnostic<?> d : compile(body)) {
+			if(d.getKind() == Diagnostic.Kind.ERROR && d.getMessage(null).contains(expectedMessagePart))
+				return;
+		}
+		fail("Expected an error containing '" + expectedMessagePart + "'");
+	}
+
+	@Test
+	public void test_validDeclarations() {
+		assertValid(""
+				+ "@OptionClass public static class Opts {\n"
+				+ "  @Option(name = \"--verbose\", shorthand = \"-v\") public boolean verbose;\n"
+				+ "  @Option(name = \"--level\") public int level;\n"
+				+ "}\n"
+				+ "@EntryPoint(path = \"a b\")\n"
+				+ "@Argument(name = \"x\", defaultValue = \"4\")\n"
+				+ "public static void ab(Opts o, int x) {}\n"
+				+ "@EntryPoint(path = \"a c\")\n"
+				+ "public static void ac(String... files) {}\n");
+	}
+
+	@Test
+	public void test_invalidPaths() {
+		assertInvalid(""
+				+ "@EntryPoint(path = \"a\") public static void a() {}\n"
+				+ "@EntryPoint(path = \"a b\") public static void ab() {}\n",
+				"has a declared entry point");
+		assertInvalid("@EntryPoint(path = \"help\") public static void h() {}\n", "cannot be used as a branch path");
+		assertInvalid(""
+				+ "@EntryPoint(path = \"a\") public static void a1() {}\n"
+				+ "@EntryPoint(path = \"a\") public static void a2() {}\n",
+				"already has an entry point");
+	}
+
+	@Test
+	public void test_invalidArguments() {
+		assertInvalid("@EntryPoint(path = \"a\") public static void a(int[] x, int y) {}\n", "only the last argument can be of array type");
+		assertInvalid("@EntryPoint(path = \"a\") public static void a(Object x) {}\n", "has an invalid type");
+		assertValid("@EntryPoint(path = \"a\") public static void a(java.util.UUID x, java.time.Duration... y) {}\n");
+		assertValid("@EntryPoint(path = \"a\") public static void a(int x, java.util.stream.Stream<? extends Integer> y) {}\n");
+		assertInvalid("@EntryPoint(path = \"a\") public static void a(Iterable<Integer> x, int y) {}\n", "only the last argument");
+		assertInvalid("@EntryPoint(path = \"a\") public static void a(java.util.Iterator<Object> x) {}\n", "invalid element type");
+		assertInvalid(""
+				+ "@EntryPoint(path = \"a\")\n"
+				+ "@Argument(name = \"x\", defaultValue = \"1\")\n"
+				+ "@Argument(name = \"y\")\n"
+				+ "public static void a(int x, int y) {}\n",
+				"has a default value but a later parameter does not specify one");
+		assertInvalid(""
+				+ "@EntryPoint(path = \"a\")\n"
+				+ "@Argument(name = \"x\", defaultValue = \"one\")\n"
+				+ "public static void a(int x) {}\n",
+				"Invalid default value");
+	}
+
+	@Test
+	public void test_invalidOptions() {
+		assertInvalid(""
+				+ "@OptionClass public static class Opts {\n"
+				+ "  @Option(name = \"-verbose\") public boolean verbose;\n"
+				+ "}\n"
+				+ "@EntryPoint(path = \"a\") public static void a(Opts o) {}\n",
+				"cannot be an option");
+		assertInvalid(""
+				+ "@OptionClass public static class Inner {\n"
+				+ "  @Option(name = \"--level\") public int level;\n"
+				+ "}\n"
+				+ "@OptionClass public static class Opts {\n"
+				+ "  @Option(name = \"--level\") public int level;\n"
+				+ "  @InnerOptions public Inner inner;\n"
+				+ "}\n"
+				+ "@EntryPoint(path = \"a\") public static void a(Opts o) {}\n",
+				"collides with field");
+		assertInvalid(""
+				+ "@OptionClass public class Opts {\n"
+				+ "  @Option(name = \"--level\") public int level;\n"
+				+ "}\n"
+				+ "@EntryPoint(path = \"a\") public static void a(Opts o) {}\n",
+				"make it static instead");
+		// an option can take a value in one option class and not in another
+		assertValid(""
+				+ "@OptionClass public static class O1 { @Option(name = \"--x\") public int x; }\n"
+				+ "@OptionClass public static class O2 { @Option(name = \"--x\") public boolean x; }\n"
+				+ "@EntryPoint(path = \"a\") public static void a(O1 o) {}\n"
+				+ "@EntryPoint(path = \"b\") public static void b(O2 o) {}\n");
+		assertValid(""
+				+ "@OptionClass public static class Opts {\n"
+				+ "  @Option(name = \"--include\") public java.util.List<String> includes;\n"
+				+ "  @Option(name = \"--level\") public java.util.Set<Integer> levels;\n"
+				+ "}\n"
+				+ "@EntryPoint(path = \"a\") public static void a(Opts o) {}\n");
+		assertInvalid(""
+				+ "@OptionClass public static class Opts {\n"
+				+ "  @Option(name = \"--include\") public java.util.List<Object> includes;\n"
+				+ "}\n"
+				+ "@EntryPoint(path = \"a\") public static void a(Opts o) {}\n",
+				"has invalid type");
+	}
+
+	@Test
+	public void test_invalidHolders() {
+		assertInvalid(""
+				+ "@OptionClass public static class Inner { @Option(name = \"--x\") public int x; }\n"
+				+ "@OptionClass public static class Opts { Inner inner; }\n"
+				+ "@EntryPoint(path = \"a\") public static void a(Opts o) {}\n",
+				"must be public and not final");
+		assertInvalid(""
+				+ "@OptionClass public static class Opts { public Opts self; }\n"
+				+ "@EntryPoint(path = \"a\") public static void a(Opts o) {}\n",
+				"contains itself");
+	}
+
+	private static final String COMMANDS = ""
+			+ "public static final StringBuilder log = new StringBuilder();\n"
+			+ "@OptionClass public static class Inner {\n"
+			+ "  @Option(name = \"--depth\", shorthand = \"-d\", valueName = \"n\", desc = \"The depth\") public int depth = 1;\n"
+			+ "}\n"
+			+ "@OptionClass public static class Opts {\n"
+			+ "  @Option(name = \"--verbose\", shorthand = \"-v\") public boolean verbose;\n"
+			+ "  @Option(name = \"--ratio\") public double ratio;\n"
+			+ "  @Option(name = \"--tag\") public java.util.List<String> tags;\n"
+			+ "  @Option(name = \"--id\") public long[] ids;\n"
+			+ "  @InnerOptions public Inner inner;\n"
+			+ "}\n"
+			+ "@EntryPoint(path = \"add\", help = \"Adds \\\"numbers\\\"\")\n"
+			+ "@Argument(name = \"x\", desc = \"The first number\")\n"
+			+ "@Argument(name = \"y\", defaultValue = \"4\")\n"
+			+ "public static void add(Opts o, int x, int y) {\n"
+			+ "  log.append(o.verbose + \" \" + o.ratio + \" \" + o.tags + \" \" + java.util.Arrays.toString(o.ids)\n"
+			+ "      + \" \" + o.inner.depth + \" \" + (x + y) + \"\\n\");\n"
+			+ "}\n"
+			+ "@EntryPoint(path = \"files list\")\n"
+			+ "public void list(String... files) { log.append(String.join(\",\", files) + \"\\n\"); }\n"
+			+ "@EntryPoint(path = \"files sum\")\n"
+			+ "public static void sum(java.util.stream.Stream<Integer> values) { log.append(values.mapToInt(i -> i).sum() + \"\\n\"); }\n"
+			+ "@EntryPoint(path = \"fail\")\n"
+			+ "public static void fail() throws java.io.IOException { throw new java.io.IOException(\"failed\"); }\n";
+
+	private static final String[][] RUNS = {
+		{ "add", "-v", "--ratio", "0.5", "--tag", "a", "--tag", "b", "--id", "3", "--id", "5", "-d", "7", "2" },
+		{ "add", "1", "2" },
+		{ "add", "one" },
+		{ "add", "--unknown", "1" },
+		{ "files", "list", "a", "b" },
+		{ "files", "sum", "1", "2", "3" },
+		{ "files" },
+		{ "--help" },
+		{ "--help", "add" },
+	};
+
+	/** Runs {@link #RUNS} on the {@code Decl} class compiled in {@code output}, returns the printed texts */
+	private static String run(Path output, boolean expectsBinder) throws Exception {
+		try (URLClassLoader loader = new URLClassLoader(new URL[] { output.toUri().toURL() }, DeclarationProcessorTest.class.getClassLoader())) {
+			Class<?> decl = loader.loadClass("Decl");
+			CommandSchema schema = new CommandSchema("decl", decl);
+			assertEquals(expectsBinder, schema.getBinder() != null);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			PrintStream out = new PrintStream(bytes, true);
+			ArgParser parser = new ArgParser(schema, decl.getConstructor().newInstance()).setOutputStream(out).setErrorStream(out);
+			for(String[] args : RUNS)
+				out.println(parser.run(args));
+			CommandResult failure = parser.execute(new String[] { "fail" });
+			assertEquals("failed", failure.getFailure().getMessage());
+			assertEquals("Decl", failure.getFailure().getStackTrace()[0].getClassName());
+			assertEquals(DeclarationProcessorTest.class.getName(), failure.getFailure().getStackTrace()[1].getClassName());
+			return bytes + "\n" + decl.getField("log").get(null);
+		}
+	}
+
+	@Test
+	public void test_generatedBinder() throws Exception {
+		Path generated = Files.createTempDirectory("generated");
+		Path reflected = Files.createTempDirectory("reflected");
+		for(Diagnostic<?> d : compile(COMMANDS, generated, true))
+			assertNotEquals(d.toString(), Diagnostic.Kind.ERROR, d.getKind());
+		for(Diagnostic<?> d : compile(COMMANDS, reflected, false))
+			assertNotEquals(d.toString(), Diagnostic.Kind.ERROR, d.getKind());
+		assertTrue(Files.exists(generated.resolve("Decl_ArgParserBinder.java")));
+		assertFalse(Files.readString(generated.resolve("Decl_ArgParserBinder.java")).contains("reflect"));
+
+		String output = run(generated, true);
+		assertTrue(output, output.contains("true 0.5 [a, b] [3, 5] 7 6\n"));
+		assertTrue(output, output.contains("a,b\n6\n"));
+		assertEquals(run(reflected, false), output);
+	}
+
+	@Test
+	public void test_inaccessibleDeclarations() {
+		boolean noted = false;
+		for(Diagnostic<?> d : compile("@EntryPoint(path = \"a\") private static void a() {}\n")) {
+			assertNotEquals(d.toString(), Diagnostic.Kind.ERROR, d.getKind());
+			noted |= d.getKind() == Diagnostic.Kind.NOTE && d.getMessage(null).contains("No binder generated for Decl");
+		}
+		assertTrue(noted);
+	}
+
+}
@@ -0,0 +1,84 @@
+package fr.wonder.argparser.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BKTreeTest {
+
+	private static final String[] WORDS = { "status", "stash", "st", "add", "apply", "commit", "a" };
+
+	@Test
+	public void test_nearest() {
+		BKTree tree = new BKTree(WORDS, false);
+		assertEquals(7, tree.size());
+		assertEquals(List.of("status"), tree.nearest("stauts", 2, 3));
+		assertEquals(List.of("stash"), tree.nearest("statsh", 2, 3));
+		assertEquals(List.of("add"), tree.nearest("add", 2, 3));
+		assertEquals(List.of("a", "add"), tree.nearest("ad", 1, 3));
+		assertEquals(List.of("a"), tree.nearest("ad", 1, 1));
+		assertEquals(List.of(), tree.nearest("commands", 2, 3));
+		assertEquals(List.of(), new BKTree(new String[0], false).nearest("add", 2, 3));
+	}
+
+	@Test
+	public void test_ignoreCase() {
+		BKTree tree = new BKTree(new String[] { "RED", "GREEN", "Blue" }, true);
+		assertEquals(List.of("GREEN"), tree.nearest("gren", 1, 3));
+		assertEquals(List.of("Blue"), tree.nearest("BLUE", 1, 3));
+		assertEquals(List.of(), new BKTree(new String[] { "RED" }, false).nearest("red", 1, 3));
+	}
+
+	@Test
+	public void test_matchesScan() {
+		Random random = new Random(42);
+		String[] words = new String[2000];
+		for(int i = 0; i < words.length; i++)
+			words[i] = randomWord(random);
+		BKTree tree = new BKTree(words, false);
+		for(int i = 0; i < 200; i++) {
+			String word = randomWord(random);
+			int best = Integer.MAX_VALUE;
+			for(String w : words)
+				best = Math.min(best, levenshtein(word, w));
+			List<String> expected = new ArrayList<>();
+			if(best <= 2) {
+				for(String w : words) {
+					if(levenshtein(word, w) == best && !expected.contains(w))
+						expected.add(w);
+				}
+			}
+			expected.sort(null);
+			List<String> found = new ArrayList<>(tree.nearest(word, 2, Integer.MAX_VALUE));
+			found = new ArrayList<>(found.stream().distinct().toList());
+			assertEquals(word, expected, found);
+		}
+	}
+
+	private static String randomWord(Random random) {
+		char[] chars = new char[3 + random.nextInt(5)];
+		for(int i = 0; i < chars.length; i++)
+			chars[i] = (char) ('a' + random.nextInt(6));
+		return new String(chars);
+	}
+
+	private static int levenshtein(String a, String b) {
+		int[][] d = new int[a.length()+1][b.length()+1];
+		for(int i = 0; i <= a.length(); i++)
+			d[i][0] = i;
+		for(int j = 0; j <= b.length(); j++)
+			d[0][j] = j;
+		for(int i = 1; i <= a.length(); i++) {
+			for(int j = 1; j <= b.length(); j++) {
+				int cost = a.charAt(i-1) == b.charAt(j-1) ? 0 : 1;
+				d[i][j] = Math.min(Math.min(d[i-1][j], d[i][j-1]) + 1, d[i-1][j-1] + cost);
+			}
+		}
+		return d[a.length()][b.length()];
+	}
+
+}
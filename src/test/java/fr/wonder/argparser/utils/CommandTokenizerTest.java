@@ -0,0 +1,83 @@
+package fr.wonder.argparser.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CommandTokenizerTest {
+
+	private static void assertTokens(String line, String... expected) {
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		assertEquals(expected.length, tokenizer.tokenize(line));
+		assertArrayEquals(expected, tokenizer.getTokens());
+	}
+
+	@Test
+	public void test_split() {
+		assertTokens("");
+		assertTokens("   \t ");
+		assertTokens("git add  --verbose\tx", "git", "add", "--verbose", "x");
+		assertTokens("abc \\\" def \"gh ij\" kl", "abc", "\"", "def", "gh ij", "kl");
+		assertTokens("a\"b c\"d 'it\\'s'", "ab cd", "it's");
+		assertTokens("\"\" x", "", "x");
+		assertTokens("'a \"b\" c'", "a \"b\" c");
+		assertTokens("C:\\dir\\file", "C:\\dir\\file");
+		assertTokens("\"unterminated quote", "unterminated quote");
+	}
+
+	@Test
+	public void test_offsets() {
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		tokenizer.tokenize("run \"quoted\" 'mi'xed 42");
+		assertFalse(tokenizer.isEscaped(0));
+		assertFalse(tokenizer.isEscaped(1));
+		assertEquals(5, tokenizer.tokenStart(1));
+		assertEquals(11, tokenizer.tokenEnd(1));
+		assertTrue(tokenizer.isEscaped(2));
+		assertEquals("mixed", tokenizer.getToken(2));
+		assertTrue(tokenizer.tokenEquals(2, "mixed"));
+		assertTrue(tokenizer.tokenEquals(0, "run"));
+		assertFalse(tokenizer.tokenEquals(0, "ru"));
+		assertEquals(42, tokenizer.parseInt(3));
+	}
+
+	@Test
+	public void test_reuse() {
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		StringBuilder longLine = new StringBuilder();
+		for(int i = 0; i < 100; i++)
+			longLine.append(i).append(' ');
+		assertEquals(100, tokenizer.tokenize(longLine));
+		assertEquals(99, tokenizer.parseLong(99));
+		assertEquals(1, tokenizer.tokenize("single"));
+		assertEquals("single", tokenizer.getToken(0));
+	}
+
+	@Test
+	public void test_bytes() {
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		byte[] line = "xx run \"d\u00e9j\u00e0 vu\" '\u65e5\\'s' 12 yy".getBytes(StandardCharsets.UTF_8);
+		assertEquals(4, tokenizer.tokenize(line, 3, line.length - 6));
+		assertArrayEquals(new String[] { "run", "d\u00e9j\u00e0 vu", "\u65e5's", "12" }, tokenizer.getTokens());
+		assertTrue(tokenizer.tokenEquals(0, "run"));
+		assertTrue(tokenizer.tokenEquals(1, "d\u00e9j\u00e0 vu"));
+		assertEquals(12, tokenizer.parseInt(3));
+		// ascii tokens are read from the bytes, the others are decoded
+		assertFalse(tokenizer.getTokenText(0) instanceof String);
+		assertEquals(0, CharSequence.compare("run", tokenizer.getTokenText(0)));
+		assertEquals("run", tokenizer.getTokenText(0).toString());
+		assertEquals("d\u00e9j\u00e0 vu", tokenizer.getTokenText(1));
+		assertEquals("\u65e5's", tokenizer.getTokenText(2));
+		assertEquals("2", tokenizer.getTokenText(3).subSequence(1, 2).toString());
+		
+		ByteBuffer direct = ByteBuffer.allocateDirect(16);
+		direct.put("  a b".getBytes(StandardCharsets.UTF_8)).flip();
+		assertEquals(2, tokenizer.tokenize(direct));
+		assertEquals("b", tokenizer.getToken(1));
+		assertEquals(0, direct.position());
+	}
+
+}
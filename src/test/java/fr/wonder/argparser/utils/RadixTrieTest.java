@@ -0,0 +1,47 @@
+package fr.wonder.argparser.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RadixTrieTest {
+
+	private static final String[] WORDS = { "status", "stash", "st", "add", "apply", "commit", "a" };
+
+	@Test
+	public void test_exactLookup() {
+		RadixTrie trie = new RadixTrie(WORDS);
+		assertArrayEquals(new String[] { "a", "add", "apply", "commit", "st", "stash", "status" }, trie.getWords());
+		for(String word : WORDS)
+			assertEquals(word, trie.getWord(trie.indexOf(word)));
+		assertEquals(-1, trie.indexOf(""));
+		assertEquals(-1, trie.indexOf("sta"));
+		assertEquals(-1, trie.indexOf("statusx"));
+		assertEquals(-1, trie.indexOf("x"));
+		assertEquals(-1, new RadixTrie(new String[0]).indexOf("x"));
+	}
+
+	@Test
+	public void test_prefixes() {
+		RadixTrie trie = new RadixTrie(WORDS);
+		assertEquals(3, trie.countPrefixed("st"));
+		assertEquals("st", trie.getWord(trie.firstPrefixed("st")));
+		assertEquals(2, trie.countPrefixed("sta"));
+		assertEquals("stash", trie.getWord(trie.firstPrefixed("sta")));
+		assertEquals(WORDS.length, trie.countPrefixed(""));
+		assertEquals(0, trie.countPrefixed("z"));
+
+		assertEquals(trie.indexOf("status"), trie.indexOfAbbreviation("statu"));
+		assertEquals(trie.indexOf("commit"), trie.indexOfAbbreviation("c"));
+		assertEquals(trie.indexOf("st"), trie.indexOfAbbreviation("st")); // exact match wins
+		assertEquals(trie.indexOf("a"), trie.indexOfAbbreviation("a"));
+		assertEquals(-1, trie.indexOfAbbreviation("sta")); // ambiguous
+		assertEquals(-1, trie.indexOfAbbreviation("ap-"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_duplicates() {
+		new RadixTrie(new String[] { "a", "b", "a" });
+	}
+
+}